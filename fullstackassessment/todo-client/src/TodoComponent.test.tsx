@@ -6,6 +6,7 @@ import { FetchItemsAction, CreateItemAction, DeleteItemAction, UpdateItemAction,
 import { TodoItem } from './TodoList';
 import { allMockMethodsOfInstance } from './test/MethodCollectionSubject';
 import { TodoComponent } from './TodoComponent';
+import { TodoConflictError, TodoEvent } from './TodoService';
 
 
 /**
@@ -28,6 +29,14 @@ class MockTodoService {
         return new Response();
     });
     getAll = jest.fn(async () => this.items);
+    getById = jest.fn(async (itemId: number) => this.items.find(item => item.id === itemId) as TodoItem);
+    subscribe = jest.fn((onEvent: (event: TodoEvent) => void, onReconnect: () => void) => {
+        this.onEvent = onEvent;
+        return () => { };
+    });
+
+    /** The event listener passed to {@link subscribe} */
+    public onEvent: (event: TodoEvent) => void = () => { };
 }
 
 describe('listStateReducer', () => {
@@ -49,6 +58,19 @@ describe('listStateReducer', () => {
                 filteredItems: [{ id: 7, description: 'Do thing 1', completed: false }],
             });
         });
+        test('ignores items it already has', async () => {
+            const initialState: TodoListState = {
+                items: [{ id: 7, description: 'Do thing 1', completed: false }],
+                filterType: TodoFilterType.All,
+                filteredItems: [{ id: 7, description: 'Do thing 1', completed: false }],
+            };
+
+            const result = listStateReducer(
+                initialState,
+                new CreateItemAction({ id: 7, description: 'Do thing 1', completed: false }))
+
+            expect(result).toBe(initialState);
+        });
     });
     describe('UpdateItemAction', () => {
         test('updates state', async () => {
@@ -255,6 +277,32 @@ describe('<TodoComponent>', () => {
         });
     });
 
+    test('applies pushed changes', async () => {
+        const todoService = new MockTodoService();
+
+        todoService.items = [
+            { id: 3, description: 'Do 1', completed: true },
+            { id: 7, description: 'Do 2', completed: false },
+        ];
+
+        await act(async () => {
+            render(<TodoComponent todoService={todoService} />);
+        });
+        await waitFor(async () => {
+            expect(screen.getByDisplayValue('Do 2')).toBeInTheDocument();
+        });
+
+        act(() => {
+            todoService.onEvent({ type: 'created', id: 11, description: 'Do 3', completed: false });
+            todoService.onEvent({ type: 'updated', id: 7, completed: true });
+            todoService.onEvent({ type: 'deleted', id: 3 });
+        });
+
+        expect(screen.queryByDisplayValue('Do 1')).not.toBeInTheDocument();
+        expect(screen.getByDisplayValue('Do 3')).toBeInTheDocument();
+        expect(screen.getByText('1 item left')).toBeInTheDocument();
+    });
+
     test('creates items', async () => {
         const todoService = new MockTodoService();
 
@@ -352,6 +400,40 @@ describe('<TodoComponent>', () => {
         expect(todoService.update).toHaveBeenCalledOnceWith({ id: 7, description: 'Do 2', completed: true });
     });
 
+    test('reloads items that someone else changed', async () => {
+        const todoService = new MockTodoService();
+
+        todoService.items = [
+            { id: 3, description: 'Do 1', completed: false, version: 0 },
+        ];
+        todoService.update.mockRejectedValueOnce(new TodoConflictError('Conflict'));
+
+        const user = userEvent.setup();
+
+        await act(async () => {
+            render(<TodoComponent todoService={todoService} />);
+        });
+        await waitFor(async () => {
+            expect(screen.getByDisplayValue('Do 1')).toBeInTheDocument();
+        });
+
+        // Someone else renamed the item, and then we try to complete it:
+        todoService.items = [
+            { id: 3, description: 'Do 1 now', completed: false, version: 1 },
+        ];
+        await user.click(getCheckboxByDescription('Do 1'));
+
+        // Wait for the backend to be contacted, and the frontend
+        // to update:
+        await new Promise(process.nextTick);
+        await new Promise(process.nextTick);
+
+        expect(todoService.update).toHaveBeenCalledOnceWith({ id: 3, description: 'Do 1', completed: true, version: 0 });
+        expect(todoService.getById).toHaveBeenCalledOnceWith(3);
+        expect(getCheckboxByDescription('Do 1')).not.toHaveAttribute('checked');
+        expect(screen.getByText('1 item left')).toBeInTheDocument();
+    });
+
     test('edits item description', async () => {
         const todoService = new MockTodoService();
 
@@ -405,7 +487,7 @@ describe('<TodoComponent>', () => {
         expect(getCheckboxByDescription('Do 2')).not.toHaveAttribute('checked');
         expect(screen.getByText('1 item left')).toBeInTheDocument();
 
-        allMockMethodsOfInstance(todoService).except('getAll')
+        allMockMethodsOfInstance(todoService).except('getAll', 'subscribe')
             .forEach(m => expect(m).not.toHaveBeenCalled());
     });
 
@@ -432,7 +514,7 @@ describe('<TodoComponent>', () => {
         expect(screen.queryByDisplayValue('Do 2')).not.toBeInTheDocument();
         expect(screen.getByText('1 item left')).toBeInTheDocument();
 
-        allMockMethodsOfInstance(todoService).except('getAll')
+        allMockMethodsOfInstance(todoService).except('getAll', 'subscribe')
             .forEach(m => expect(m).not.toHaveBeenCalled());
     });
 
@@ -464,7 +546,7 @@ describe('<TodoComponent>', () => {
         expect(getCheckboxByDescription('Do 2')).not.toHaveAttribute('checked');
         expect(screen.getByText('1 item left')).toBeInTheDocument();
 
-        allMockMethodsOfInstance(todoService).except('getAll')
+        allMockMethodsOfInstance(todoService).except('getAll', 'subscribe')
             .forEach(m => expect(m).not.toHaveBeenCalled());
     });
 });
@@ -1,6 +1,9 @@
 import React from 'react';
 import { TodoItem } from './TodoList';
-import { TodoView, TodoAction, TodoActionType, FetchItemsAction, TodoFilterType } from './TodoView';
+import {
+    TodoView, TodoAction, TodoActionType, FetchItemsAction, TodoFilterType, CreateItemAction, UpdateItemAction,
+    DeleteItemAction
+} from './TodoView';
 import { TodoService } from './TodoService';
 
 export interface TodoListState {
@@ -26,12 +29,17 @@ function getFilteredItems(items: Array<TodoItem>, filterType: TodoFilterType): A
 export function listStateReducer(state: TodoListState, action: TodoAction) {
     switch (action.type) {
         case TodoActionType.CreateItem: {
+            // We hear about our own items both from the server's response and
+            // from its event stream.
+            if (state.items.some(item => item.id === action.item.id)) {
+                return state;
+            }
             const items = [action.item, ...state.items];
             return { ...state, items, filteredItems: getFilteredItems(items, state.filterType) };
         }
         case TodoActionType.UpdateItem: {
             const items = state.items.map(item =>
-                item.id === action.item.id ? action.item : item
+                item.id === action.item.id ? { ...item, ...action.item } : item
             );
             return { ...state, items, filteredItems: getFilteredItems(items, state.filterType) };
         }
@@ -55,8 +63,30 @@ export function TodoComponent(props: { todoService: TodoService }) {
         { items: [], filterType: TodoFilterType.All, filteredItems: [] });
 
     React.useEffect(() => {
-        todoService.getAll()
+        const fetchItems = () => todoService.getAll()
             .then(items => reduceListState(new FetchItemsAction(items)));
+
+        fetchItems();
+
+        // Other people's changes are pushed to us, so we don't have to poll.
+        return todoService.subscribe(
+            ({ type, ...item }) => {
+                switch (type) {
+                    case 'created': {
+                        reduceListState(new CreateItemAction(item as TodoItem));
+                        break;
+                    }
+                    case 'updated': {
+                        reduceListState(new UpdateItemAction(item as TodoItem));
+                        break;
+                    }
+                    case 'deleted': {
+                        reduceListState(new DeleteItemAction(item.id));
+                        break;
+                    }
+                }
+            },
+            fetchItems);
     }, [todoService]);
 
     return <TodoView listState={listState} listStateReducer={reduceListState} todoService={todoService} />;
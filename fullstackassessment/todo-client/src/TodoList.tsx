@@ -1,12 +1,38 @@
 import React from 'react';
 import './TodoList.css';
 import { DeleteItemAction, UpdateItemAction, TodoAction } from './TodoView';
-import { TodoService } from './TodoService';
+import { TodoConflictError, TodoService } from './TodoService';
 
 export interface TodoItem {
     id: number,
     description: string,
     completed: boolean,
+    /** Changes with every write, so updates can tell if they'd overwrite someone else's. */
+    version?: number,
+}
+
+/**
+ * Handles a failed update. If someone else changed the item since we read
+ * it, we reload it and show their changes, and the user can try again.
+ */
+function reloadOnConflict(
+    itemId: number,
+    listStateReducer: React.Dispatch<TodoAction>,
+    todoService: TodoService,
+    showItem: (current: TodoItem) => void,
+) {
+    return (error: Error) => {
+        if (!(error instanceof TodoConflictError)) {
+            console.error(error);
+            return;
+        }
+        todoService.getById(itemId)
+            .then(current => {
+                showItem(current);
+                listStateReducer(new UpdateItemAction(current));
+            })
+            .catch(e => console.error(e));
+    };
 }
 
 function TodoCheckbox(
@@ -19,21 +45,27 @@ function TodoCheckbox(
     const { item, listStateReducer, todoService, ...restProps } = props;
     const getClassName = (completed: boolean) => completed ? 'todo-item-completed' : 'todo-item-not-completed';
 
-    const handleClick = (event: React.MouseEvent<HTMLInputElement>) => {
-        const target = event.currentTarget;
-        const newIsCompleted = !target.classList.contains('todo-item-completed');
-
+    const showCompleted = (target: HTMLInputElement, completed: boolean) => {
         target.classList.remove('todo-item-completed', 'todo-item-not-completed');
-        target.classList.add(getClassName(newIsCompleted));
-        if (newIsCompleted) {
+        target.classList.add(getClassName(completed));
+        if (completed) {
             target.setAttribute('checked', '');
         } else {
             target.removeAttribute('checked');
         }
+    };
+
+    const handleClick = (event: React.MouseEvent<HTMLInputElement>) => {
+        const target = event.currentTarget;
+        const newIsCompleted = !target.classList.contains('todo-item-completed');
+
+        showCompleted(target, newIsCompleted);
 
         todoService.update({ ...item, completed: newIsCompleted })
             .then(newItem =>
-                listStateReducer(new UpdateItemAction(newItem)));
+                listStateReducer(new UpdateItemAction(newItem)))
+            .catch(reloadOnConflict(item.id, listStateReducer, todoService,
+                current => showCompleted(target, current.completed)));
     };
 
     return <input {...restProps}
@@ -58,7 +90,9 @@ function TodoItemDescription(
 
     const handleInput = (target: HTMLInputElement) => {
         todoService.update({ ...item, description: target.value })
-            .then(newItem => listStateReducer(new UpdateItemAction(newItem)));
+            .then(newItem => listStateReducer(new UpdateItemAction(newItem)))
+            .catch(reloadOnConflict(item.id, listStateReducer, todoService,
+                current => { target.value = current.description; }));
         target.readOnly = true;
         target.disabled = true;
     };
@@ -3,9 +3,65 @@ import { TodoItem } from "./TodoList";
 const API_URL_PREFIX = window ? `http://localhost:8080/` : '/';
 const TODOS_API_URL_PREFIX = `${API_URL_PREFIX}todos/`;
 
+/**
+ * The header the server sets on responses to writes, and reads back from
+ * requests, so that a client's reads see its own writes.
+ */
+const WROTE_AT_HEADER = 'X-Todo-Wrote-At';
+
+/** Extracts the `rel="next"` target from a response's `Link` header. */
+function nextPageUrl(r: Response): string | null {
+    const link = r.headers.get('Link');
+    const match = link && /<([^>]*)>\s*;\s*rel="next"/.exec(link);
+
+    return match ? match[1] : null;
+}
+
+/**
+ * A change pushed by the server. Fields that didn't change may be missing,
+ * and several changes to one item may arrive as a single event.
+ */
+export interface TodoEvent {
+    type: 'created' | 'updated' | 'deleted',
+    id: number,
+    description?: string,
+    completed?: boolean,
+    version?: number,
+}
+
+/**
+ * Thrown when an item we update has been changed by someone else since we
+ * read it.
+ */
+export class TodoConflictError extends Error {
+    constructor(message: string) {
+        super(message);
+        // Keeps `instanceof` working when classes are compiled to functions.
+        Object.setPrototypeOf(this, TodoConflictError.prototype);
+    }
+}
+
 export class TodoService {
+    private wroteAt: string | null = null;
+
+    /**
+     * Like `fetch`, but echoes the time of our last write back to the
+     * server, which reads from the primary database for a while after it.
+     */
+    private async fetch(url: string, init: RequestInit = {}): Promise<Response> {
+        const headers = new Headers(init.headers);
+
+        if (this.wroteAt) {
+            headers.set(WROTE_AT_HEADER, this.wroteAt);
+        }
+        const r = await fetch(url, { ...init, headers });
+        this.wroteAt = r.headers.get(WROTE_AT_HEADER) || this.wroteAt;
+
+        return r;
+    }
+
     async create(newItem: Omit<TodoItem, 'id'>): Promise<TodoItem> {
-        const r = await fetch(
+        const r = await this.fetch(
             TODOS_API_URL_PREFIX,
             {
                 method: 'POST',
@@ -19,23 +75,57 @@ export class TodoService {
     }
 
     async getAll(): Promise<Array<TodoItem>> {
-        const r = await fetch(TODOS_API_URL_PREFIX);
+        const items: Array<TodoItem> = [];
+        let url: string | null = TODOS_API_URL_PREFIX;
+
+        // The server returns items a page at a time, so we follow the
+        // `next` links until we've seen the whole list.
+        while (url) {
+            const r: Response = await this.fetch(url);
+            items.push(...await r.json());
+            url = nextPageUrl(r);
+        }
+        return items;
+    }
+
+    async getById(itemId: number): Promise<TodoItem> {
+        const r = await this.fetch(`${TODOS_API_URL_PREFIX}${itemId}`);
+        if (Math.trunc(r.status / 100) !== 2) {
+            throw new Error(r.statusText);
+        }
         return await r.json();
     }
 
+    /**
+     * Replaces an item. If it has a version, the server only replaces the
+     * item if it's still at that version, and we throw a `TodoConflictError`
+     * otherwise.
+     */
     async update(newItem: TodoItem): Promise<TodoItem> {
-        const r = await fetch(
+        const { version, ...item } = newItem;
+        const headers: Record<string, string> = { 'Content-Type': 'application/json', 'Accept': 'application/json' };
+
+        if (version !== undefined) {
+            headers['If-Match'] = `"${version}"`;
+        }
+        const r = await this.fetch(
             `${TODOS_API_URL_PREFIX}${newItem.id}`,
             {
                 method: 'PUT',
-                body: JSON.stringify(newItem),
-                headers: { 'Content-Type': 'application/json', 'Accept': 'application/json' }
+                body: JSON.stringify(item),
+                headers
             });
+        if (r.status === 409) {
+            throw new TodoConflictError(r.statusText);
+        }
+        if (Math.trunc(r.status / 100) !== 2) {
+            throw new Error(r.statusText);
+        }
         return await r.json();
     }
 
     deleteById(itemId: number): Promise<Response> {
-        return fetch(
+        return this.fetch(
             `${TODOS_API_URL_PREFIX}${itemId}`,
             {
                 method: 'DELETE',
@@ -43,4 +133,34 @@ export class TodoService {
                 headers: { 'Content-Type': 'application/json', 'Accept': 'application/json' }
             });
     }
+
+    /**
+     * Calls `onEvent` for each change to the list, until the returned
+     * function is called.
+     *
+     * The server may drop events for clients that fall behind, so `onReconnect`
+     * is called whenever the stream is re-established, and should reload the
+     * list.
+     */
+    subscribe(onEvent: (event: TodoEvent) => void, onReconnect: () => void): () => void {
+        if (typeof EventSource === 'undefined') {
+            return () => { };
+        }
+
+        const source = new EventSource(`${TODOS_API_URL_PREFIX}events`);
+        const handleEvent = (e: Event) => onEvent(JSON.parse((e as MessageEvent).data));
+        let connected = false;
+
+        source.addEventListener('open', () => {
+            if (connected) {
+                onReconnect();
+            }
+            connected = true;
+        });
+        source.addEventListener('created', handleEvent);
+        source.addEventListener('updated', handleEvent);
+        source.addEventListener('deleted', handleEvent);
+
+        return () => source.close();
+    }
 }
\ No newline at end of file
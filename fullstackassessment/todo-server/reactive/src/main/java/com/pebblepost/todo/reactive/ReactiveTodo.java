@@ -0,0 +1,86 @@
+package com.pebblepost.todo.reactive;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.domain.Persistable;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+/**
+ * A row of the {@code todo} table, mapped for R2DBC.
+ * 
+ * IDs are assigned before the row is inserted, so whether the item is new
+ * can't be told from its ID, and is tracked separately.
+ */
+@Table("todo")
+public class ReactiveTodo implements Persistable<Long> {
+    public final static int MAX_DESCRIPTION_LENGTH_CH = 1024;
+
+    @Id
+    private Long id;
+
+    @Column("list_id")
+    private String listId;
+
+    // The column name keeps the main application's spelling.
+    @Column("destription")
+    private String description = "";
+
+    private boolean completed = false;
+
+    @Version
+    private Long version;
+
+    @Transient
+    private boolean isNew;
+
+    public ReactiveTodo() {
+    }
+
+    public static ReactiveTodo newItem(Long id, String listId, String description, boolean completed) {
+        ReactiveTodo item = new ReactiveTodo();
+
+        item.id = id;
+        item.listId = listId;
+        item.description = description;
+        item.completed = completed;
+        item.isNew = true;
+
+        return item;
+    }
+
+    @Override
+    public Long getId() {
+        return id;
+    }
+
+    public String getListId() {
+        return listId;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    void setDescription(String value) {
+        this.description = value;
+    }
+
+    public boolean getCompleted() {
+        return completed;
+    }
+
+    void setCompleted(boolean value) {
+        this.completed = value;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    @Override
+    public boolean isNew() {
+        return isNew;
+    }
+}
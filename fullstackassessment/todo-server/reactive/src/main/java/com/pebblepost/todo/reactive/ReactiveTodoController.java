@@ -0,0 +1,140 @@
+package com.pebblepost.todo.reactive;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Serves the items of a single list, like the main application's
+ * {@code TodoController}, without blocking a thread on any request.
+ * 
+ * Items of shared lists are under {@code /lists/{listId}/todos}, and
+ * {@code /todos} serves the default list.
+ */
+@RestController()
+@RequestMapping({ "/todos", "/lists/{listId}/todos" })
+public class ReactiveTodoController {
+
+    private final static String DEFAULT_LIST_ID = "default";
+
+    private final ReactiveTodoService todoService;
+
+    private final int maxLimit;
+
+    public ReactiveTodoController(
+            ReactiveTodoService todoService,
+            @Value("${todo.paging.max-limit:1000}") int maxLimit) {
+        this.todoService = todoService;
+        this.maxLimit = maxLimit;
+    }
+
+    @PostMapping
+    @ResponseStatus(HttpStatus.CREATED)
+    public Mono<ReactiveTodoDto> create(
+            @PathVariable(name = "listId", required = false) String listId,
+            @RequestBody ReactiveTodoDto createDto) {
+        return todoService.createTodo(resolveListId(listId), createDto.getDescription(), createDto.getCompleted())
+                .map(ReactiveTodoDto::fromEntity)
+                .onErrorMap(IllegalArgumentException.class, ReactiveTodoController::badRequest)
+                .onErrorMap(DataIntegrityViolationException.class, e -> listNotFound(listId));
+    }
+
+    /**
+     * Returns items ordered by ID, starting after the ID {@code after}.
+     * 
+     * Without a {@code limit}, this returns the rest of the list. Items are
+     * read from the database as the client consumes them, so clients that
+     * ask for {@code application/x-ndjson} receive them one at a time, and
+     * a slow client slows down the query instead of filling up memory.
+     */
+    @GetMapping(produces = { MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE })
+    public Flux<ReactiveTodoDto> getAll(
+            @PathVariable(name = "listId", required = false) String listId,
+            @RequestParam(name = "after", defaultValue = "0") long after,
+            @RequestParam(name = "limit", required = false) Integer limit) {
+        if (limit != null && limit < 1) {
+            return Flux.error(new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    String.format("Page size must be positive, got %s!", limit)));
+        }
+
+        long pageSize = limit == null ? Long.MAX_VALUE : Math.min(limit, maxLimit);
+
+        return todoService.getTodosAfter(resolveListId(listId), after, pageSize).map(ReactiveTodoDto::fromEntity);
+    }
+
+    /**
+     * Returns all items as newline-delimited JSON, one item per line.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<ReactiveTodoDto> stream(@PathVariable(name = "listId", required = false) String listId) {
+        return todoService.getTodosAfter(resolveListId(listId), 0, Long.MAX_VALUE).map(ReactiveTodoDto::fromEntity);
+    }
+
+    @GetMapping("/{id}")
+    public Mono<ReactiveTodoDto> getOne(
+            @PathVariable(name = "listId", required = false) String listId,
+            @PathVariable("id") Long id) {
+        return todoService.getTodo(resolveListId(listId), id)
+                .map(ReactiveTodoDto::fromEntity)
+                .switchIfEmpty(Mono.error(() -> itemNotFound(id)));
+    }
+
+    @PutMapping("/{id}")
+    public Mono<ReactiveTodoDto> put(
+            @PathVariable(name = "listId", required = false) String listId,
+            @PathVariable("id") Long id,
+            @RequestBody ReactiveTodoDto updated) {
+        return todoService
+                .updateTodo(resolveListId(listId), id, updated.getDescription(), updated.getCompleted())
+                .map(ReactiveTodoDto::fromEntity)
+                .switchIfEmpty(Mono.error(() -> itemNotFound(id)))
+                .onErrorMap(IllegalArgumentException.class, ReactiveTodoController::badRequest)
+                .onErrorMap(OptimisticLockingFailureException.class,
+                        e -> new ResponseStatusException(HttpStatus.CONFLICT,
+                                String.format("To-do item with ID %s has been changed by someone else!", id)));
+    }
+
+    @DeleteMapping("/{id}")
+    public Mono<Void> delete(
+            @PathVariable(name = "listId", required = false) String listId,
+            @PathVariable("id") Long id) {
+        return todoService.deleteTodo(resolveListId(listId), id)
+                .flatMap(deleted -> deleted ? Mono.<Void>empty() : Mono.error(itemNotFound(id)));
+    }
+
+    private static String resolveListId(String listId) {
+        return listId != null ? listId : DEFAULT_LIST_ID;
+    }
+
+    private static ResponseStatusException badRequest(IllegalArgumentException e) {
+        return new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+    }
+
+    private static ResponseStatusException itemNotFound(Long id) {
+        return new ResponseStatusException(HttpStatus.NOT_FOUND,
+                String.format("To-do item with ID %s not found!", id));
+    }
+
+    // Items reference their list through a foreign key, so adding items to a
+    // missing list fails with an integrity violation.
+    private static ResponseStatusException listNotFound(String listId) {
+        return new ResponseStatusException(HttpStatus.NOT_FOUND,
+                String.format("To-do list with ID %s not found!", resolveListId(listId)));
+    }
+}
@@ -0,0 +1,62 @@
+package com.pebblepost.todo.reactive;
+
+/**
+ * The JSON form of an item, the same as the main application's
+ * {@code TodoDto}.
+ */
+public class ReactiveTodoDto {
+
+    private Long id;
+
+    private String description;
+
+    private boolean completed;
+
+    private Long version;
+
+    private ReactiveTodoDto() {
+    }
+
+    public static ReactiveTodoDto fromEntity(ReactiveTodo todo) {
+        ReactiveTodoDto dto = new ReactiveTodoDto();
+
+        dto.id = todo.getId();
+        dto.description = todo.getDescription();
+        dto.completed = todo.getCompleted();
+        dto.version = todo.getVersion();
+
+        return dto;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long value) {
+        this.id = value;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String value) {
+        this.description = value;
+    }
+
+    public boolean getCompleted() {
+        return completed;
+    }
+
+    public void setCompleted(boolean value) {
+        this.completed = value;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long value) {
+        this.version = value;
+    }
+}
@@ -0,0 +1,30 @@
+package com.pebblepost.todo.reactive;
+
+import org.springframework.data.r2dbc.repository.Modifying;
+import org.springframework.data.r2dbc.repository.Query;
+import org.springframework.data.r2dbc.repository.R2dbcRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@Repository
+public interface ReactiveTodoRepository extends R2dbcRepository<ReactiveTodo, Long> {
+
+    @Query("SELECT * FROM todo WHERE list_id = :listId AND id > :after ORDER BY id LIMIT :limit")
+    Flux<ReactiveTodo> findByListIdAfter(
+            @Param("listId") String listId, @Param("after") long after, @Param("limit") long limit);
+
+    Mono<ReactiveTodo> findByListIdAndId(String listId, Long id);
+
+    @Modifying
+    @Query("DELETE FROM todo WHERE list_id = :listId AND id = :id")
+    Mono<Integer> deleteByListIdAndId(@Param("listId") String listId, @Param("id") Long id);
+
+    /**
+     * Reserves the block of IDs ending at the returned value.
+     */
+    @Query("SELECT NEXT VALUE FOR todo_id_seq")
+    Mono<Long> nextIdBlock();
+}
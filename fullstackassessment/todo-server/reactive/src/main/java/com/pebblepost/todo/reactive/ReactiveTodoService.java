@@ -0,0 +1,119 @@
+package com.pebblepost.todo.reactive;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@Service
+public class ReactiveTodoService {
+
+    /**
+     * The number of IDs in each block reserved from {@code todo_id_seq}.
+     * 
+     * This has to match the main application's allocation size, so that both
+     * agree on which IDs a sequence value reserves.
+     */
+    public final static int ID_ALLOCATION_SIZE = 50;
+
+    private final ReactiveTodoRepository todoRepository;
+
+    // The next unused ID, and the last ID, of the reserved block.
+    private long nextId = 1;
+
+    private long lastId = 0;
+
+    public ReactiveTodoService(ReactiveTodoRepository todoRepository) {
+        this.todoRepository = todoRepository;
+    }
+
+    public Mono<ReactiveTodo> createTodo(String listId, String description, boolean completed) {
+        if (isDescriptionTooLong(description)) {
+            return Mono.error(new IllegalArgumentException(String.format(
+                    "Description is longer than %s characters!", ReactiveTodo.MAX_DESCRIPTION_LENGTH_CH)));
+        }
+
+        return reserveId().flatMap(
+                id -> todoRepository.save(ReactiveTodo.newItem(id, listId, description, completed)));
+    }
+
+    /**
+     * Returns up to {@code limit} items with IDs greater than {@code afterId},
+     * in ascending ID order.
+     * 
+     * Rows are read from the database as the subscriber asks for them.
+     */
+    public Flux<ReactiveTodo> getTodosAfter(String listId, long afterId, long limit) {
+        return todoRepository.findByListIdAfter(listId, afterId, limit);
+    }
+
+    /**
+     * Returns the item, or an empty result if the list has no item with
+     * {@code id}.
+     */
+    public Mono<ReactiveTodo> getTodo(String listId, Long id) {
+        return todoRepository.findByListIdAndId(listId, id);
+    }
+
+    /**
+     * Updates an item, or emits an empty result if the list has no item with
+     * {@code id}.
+     * 
+     * Concurrent updates to the same item fail with an
+     * {@link org.springframework.dao.OptimisticLockingFailureException}.
+     */
+    @Transactional
+    public Mono<ReactiveTodo> updateTodo(String listId, Long id, String description, boolean completed) {
+        if (isDescriptionTooLong(description)) {
+            return Mono.error(new IllegalArgumentException(String.format(
+                    "Description is longer than %s characters!", ReactiveTodo.MAX_DESCRIPTION_LENGTH_CH)));
+        }
+
+        return todoRepository.findByListIdAndId(listId, id)
+                .flatMap(existing -> {
+                    existing.setDescription(description);
+                    existing.setCompleted(completed);
+
+                    return todoRepository.save(existing);
+                });
+    }
+
+    /**
+     * Deletes an item, and emits whether it existed.
+     */
+    public Mono<Boolean> deleteTodo(String listId, Long id) {
+        return todoRepository.deleteByListIdAndId(listId, id).map(count -> count > 0);
+    }
+
+    /**
+     * Hands out IDs from the reserved block, and reserves a new block when it
+     * runs out.
+     * 
+     * Like Hibernate's pooled optimizer, a sequence value reserves the
+     * {@link #ID_ALLOCATION_SIZE} IDs up to and including it, so IDs don't
+     * collide with the ones the main application assigns.
+     */
+    private Mono<Long> reserveId() {
+        synchronized (this) {
+            if (nextId <= lastId) {
+                return Mono.just(nextId++);
+            }
+        }
+
+        return todoRepository.nextIdBlock().map(blockEnd -> {
+            synchronized (this) {
+                // A concurrent reservation may have replaced the block in the
+                // meantime, which only skips the rest of its IDs.
+                lastId = blockEnd;
+                nextId = Math.max(1, blockEnd - ID_ALLOCATION_SIZE + 1);
+
+                return nextId++;
+            }
+        });
+    }
+
+    private static boolean isDescriptionTooLong(String description) {
+        return description != null && description.length() > ReactiveTodo.MAX_DESCRIPTION_LENGTH_CH;
+    }
+}
@@ -0,0 +1,21 @@
+-- Matches the tables Hibernate creates for the main application, so that both
+-- can share a database.
+CREATE SEQUENCE IF NOT EXISTS todo_id_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE IF NOT EXISTS todo_list (
+    id VARCHAR(255) NOT NULL PRIMARY KEY,
+    name VARCHAR(256),
+    change_horizon BIGINT NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS todo (
+    id BIGINT NOT NULL PRIMARY KEY,
+    list_id VARCHAR(255) NOT NULL REFERENCES todo_list (id),
+    destription VARCHAR(1024),
+    completed BOOLEAN NOT NULL,
+    version BIGINT NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS todo_list_id_id_idx ON todo (list_id, id);
+
+MERGE INTO todo_list (id, name, change_horizon) KEY (id) VALUES ('default', '', 0);
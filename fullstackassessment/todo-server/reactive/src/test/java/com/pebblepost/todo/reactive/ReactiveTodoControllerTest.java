@@ -0,0 +1,160 @@
+package com.pebblepost.todo.reactive;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+@SpringBootTest
+@AutoConfigureWebTestClient
+class ReactiveTodoControllerTest {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @DirtiesContext
+    @Test
+    void create_createsAnItem() {
+        ReactiveTodoDto created = create("Buy milk", false);
+
+        assertNotNull(created.getId());
+        assertEquals(0L, created.getVersion());
+
+        webTestClient.get().uri("/todos/{id}", created.getId())
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.id").isEqualTo(created.getId())
+                .jsonPath("$.description").isEqualTo("Buy milk")
+                .jsonPath("$.completed").isEqualTo(false);
+    }
+
+    @Test
+    void create_rejectsLongDescriptions() {
+        webTestClient.post().uri("/todos")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(String.format(
+                        "{\"description\":\"%s\"}", "x".repeat(ReactiveTodo.MAX_DESCRIPTION_LENGTH_CH + 1)))
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void create_returnsNotFoundForMissingList() {
+        webTestClient.post().uri("/lists/{listId}/todos", "no-such-list")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"description\":\"Buy milk\"}")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @DirtiesContext
+    @Test
+    void getAll_returnsPagesInIdOrder() {
+        ReactiveTodoDto first = create("first", false);
+        ReactiveTodoDto second = create("second", true);
+        ReactiveTodoDto third = create("third", false);
+
+        List<ReactiveTodoDto> page = webTestClient.get()
+                .uri("/todos?after={after}&limit=2", first.getId())
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(ReactiveTodoDto.class)
+                .returnResult().getResponseBody();
+
+        assertEquals(2, page.size());
+        assertEquals(second.getId(), page.get(0).getId());
+        assertEquals(third.getId(), page.get(1).getId());
+    }
+
+    @DirtiesContext
+    @Test
+    void stream_returnsAllItemsAsNdjson() {
+        ReactiveTodoDto first = create("first", false);
+        ReactiveTodoDto second = create("second", true);
+
+        Flux<ReactiveTodoDto> items = webTestClient.get().uri("/todos/stream")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(ReactiveTodoDto.class)
+                .getResponseBody();
+
+        // The in-memory database outlives the context, so earlier tests' items
+        // come first.
+        StepVerifier.create(items.map(ReactiveTodoDto::getId).takeLast(2))
+                .expectNext(first.getId(), second.getId())
+                .verifyComplete();
+    }
+
+    @DirtiesContext
+    @Test
+    void put_updatesTheItem() {
+        ReactiveTodoDto created = create("Buy milk", false);
+
+        webTestClient.put().uri("/todos/{id}", created.getId())
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"description\":\"Buy oat milk\",\"completed\":true}")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.id").isEqualTo(created.getId())
+                .jsonPath("$.description").isEqualTo("Buy oat milk")
+                .jsonPath("$.completed").isEqualTo(true)
+                .jsonPath("$.version").isEqualTo(1);
+    }
+
+    @DirtiesContext
+    @Test
+    void delete_removesTheItem() {
+        ReactiveTodoDto created = create("Buy milk", false);
+
+        webTestClient.delete().uri("/todos/{id}", created.getId())
+                .exchange()
+                .expectStatus().isOk();
+        webTestClient.get().uri("/todos/{id}", created.getId())
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    void put_returnsNotFound() {
+        webTestClient.put().uri("/todos/{id}", 12345)
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"description\":\"Buy milk\",\"completed\":false}")
+                .exchange()
+                .expectStatus().isNotFound();
+        webTestClient.get().uri("/todos/{id}", 12345)
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    void delete_returnsNotFound() {
+        webTestClient.delete().uri("/todos/{id}", 12345)
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    private ReactiveTodoDto create(String description, boolean completed) {
+        return webTestClient.post().uri("/todos")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(String.format("{\"description\":\"%s\",\"completed\":%s}", description, completed))
+                .exchange()
+                .expectStatus().isCreated()
+                .expectBody(ReactiveTodoDto.class)
+                .returnResult().getResponseBody();
+    }
+}
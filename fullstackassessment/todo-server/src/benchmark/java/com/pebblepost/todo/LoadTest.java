@@ -0,0 +1,416 @@
+package com.pebblepost.todo;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Replays a burst of many clients editing the same list at once against the
+ * item endpoints, and reports latency percentiles and error rates per
+ * operation.
+ * 
+ * The application is started on a random port with a fresh database. Each
+ * client runs a closed loop: it intends to send one request every
+ * {@code --interval-ms}, picking the operation from {@code --mix}, but never
+ * has more than one request in flight. Clients start evenly spread over
+ * {@code --ramp-seconds}, and every request intended after the ramp and
+ * before the end is measured, however late its response arrives. The run
+ * waits for those responses before reporting.
+ * 
+ * Two latencies are recorded for every request. Service time runs from when
+ * the request was actually sent. A client stuck waiting on a slow response
+ * sends its next requests late, though, and so never measures the delays its
+ * users would have seen in the meantime. To correct for this coordinated
+ * omission, response time runs from when the request was supposed to be sent.
+ * 
+ * Run with {@code ./gradlew loadTest}. Options are passed as
+ * {@code -PloadTestArgs="--clients=500 --mix=update:80,read:20 ..."}.
+ */
+public class LoadTest {
+
+    private enum Operation {
+        CREATE, READ, LIST, UPDATE, DELETE
+    }
+
+    private static class Options {
+        int clients = 200;
+
+        int rampSeconds = 10;
+
+        int durationSeconds = 30;
+
+        long intervalMs = 100;
+
+        int items = 1000;
+
+        String profiles = "";
+
+        Map<Operation, Integer> mix = parseMix("create:10,read:30,list:20,update:35,delete:5");
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+
+            for (String arg : args) {
+                String[] parts = arg.replaceFirst("^--", "").split("=", 2);
+
+                switch (parts[0]) {
+                    case "clients":
+                        options.clients = Integer.parseInt(parts[1]);
+                        break;
+                    case "ramp-seconds":
+                        options.rampSeconds = Integer.parseInt(parts[1]);
+                        break;
+                    case "duration-seconds":
+                        options.durationSeconds = Integer.parseInt(parts[1]);
+                        break;
+                    case "interval-ms":
+                        options.intervalMs = Long.parseLong(parts[1]);
+                        break;
+                    case "items":
+                        options.items = Integer.parseInt(parts[1]);
+                        break;
+                    case "profiles":
+                        options.profiles = parts[1];
+                        break;
+                    case "mix":
+                        options.mix = parseMix(parts[1]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException(String.format("Unknown option: %s!", arg));
+                }
+            }
+
+            return options;
+        }
+
+        static Map<Operation, Integer> parseMix(String value) {
+            Map<Operation, Integer> mix = new EnumMap<Operation, Integer>(Operation.class);
+
+            for (String entry : value.split(",")) {
+                String[] parts = entry.split(":", 2);
+
+                mix.put(Operation.valueOf(parts[0].toUpperCase()), Integer.parseInt(parts[1]));
+            }
+
+            return mix;
+        }
+    }
+
+    /**
+     * Latencies and outcomes of one operation, recorded by all clients.
+     */
+    private static class Stats {
+        final Histogram serviceTimeNs = new ConcurrentHistogram(3);
+
+        final Histogram responseTimeNs = new ConcurrentHistogram(3);
+
+        // Items deleted by another client in the meantime.
+        final AtomicLong notFound = new AtomicLong();
+
+        final AtomicLong errors = new AtomicLong();
+    }
+
+    /**
+     * The IDs of the list's items, as far as the clients know.
+     */
+    private static class ItemIds {
+        private final List<Long> ids = new ArrayList<Long>();
+
+        synchronized void add(Long id) {
+            ids.add(id);
+        }
+
+        synchronized Long pick() {
+            return ids.isEmpty() ? null : ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+        }
+
+        synchronized Long remove() {
+            if (ids.isEmpty()) {
+                return null;
+            }
+
+            // Swapping with the last ID keeps removal constant-time.
+            int index = ThreadLocalRandom.current().nextInt(ids.size());
+            Long id = ids.get(index);
+
+            ids.set(index, ids.get(ids.size() - 1));
+            ids.remove(ids.size() - 1);
+
+            return id;
+        }
+    }
+
+    private final Options options;
+
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ItemIds itemIds = new ItemIds();
+
+    private final Map<Operation, Stats> stats = new EnumMap<Operation, Stats>(Operation.class);
+
+    private final Operation[] operations;
+
+    private final int[] cumulativeWeights;
+
+    private String baseUri;
+
+    private long measureFromNs;
+
+    private long endNs;
+
+    private LoadTest(Options options) {
+        this.options = options;
+        this.operations = options.mix.keySet().toArray(new Operation[0]);
+        this.cumulativeWeights = new int[operations.length];
+
+        int total = 0;
+
+        for (int i = 0; i < operations.length; i++) {
+            total += options.mix.get(operations[i]);
+            cumulativeWeights[i] = total;
+        }
+        for (Operation operation : Operation.values()) {
+            stats.put(operation, new Stats());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+
+        System.out.printf("%d clients editing one list of %d items, one request per %d ms each, mix %s%n",
+                options.clients, options.items, options.intervalMs, options.mix);
+        System.out.printf("%d s measured after %d s ramp-up%n", options.durationSeconds, options.rampSeconds);
+
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(Application.class);
+
+        if (!options.profiles.isEmpty()) {
+            builder.profiles(options.profiles.split(","));
+        }
+
+        // Passed as command line arguments, which override the application's
+        // properties files, unlike the builder's defaults.
+        try (ConfigurableApplicationContext context = builder.run(
+                "--server.port=0",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=warn",
+                "--spring.datasource.url=jdbc:h2:mem:load-test")) {
+            int port = ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+
+            new LoadTest(options).run(port, context.getBean(TodoService.class));
+        }
+    }
+
+    private void run(int port, TodoService todoService) throws Exception {
+        HttpResponse<String> listResponse = client.send(
+                HttpRequest.newBuilder(URI.create(String.format("http://localhost:%d/lists", port)))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString("{\"name\":\"Edit hour\"}"))
+                        .build(),
+                HttpResponse.BodyHandlers.ofString());
+        String listId = objectMapper.readValue(listResponse.body(), TodoListDto.class).getId();
+
+        baseUri = String.format("http://localhost:%d/lists/%s/todos", port, listId);
+        for (int i = 0; i < options.items; i++) {
+            itemIds.add(todoService.createTodo(listId, new Todo("Item " + i)).getId());
+        }
+
+        long intervalNs = TimeUnit.MILLISECONDS.toNanos(options.intervalMs);
+        long rampNs = TimeUnit.SECONDS.toNanos(options.rampSeconds);
+        long startNs = System.nanoTime();
+
+        measureFromNs = startNs + rampNs;
+        endNs = measureFromNs + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+
+        CompletableFuture<?>[] clients = new CompletableFuture<?>[options.clients];
+
+        for (int i = 0; i < options.clients; i++) {
+            long firstNs = startNs + rampNs * i / options.clients;
+
+            clients[i] = loop(i, firstNs, intervalNs);
+        }
+        CompletableFuture.allOf(clients).join();
+
+        report();
+    }
+
+    /**
+     * Sends the client's request intended for {@code intendedNs}, waiting
+     * until then if it's early, and then the rest of its requests.
+     */
+    private CompletableFuture<Void> loop(int clientId, long intendedNs, long intervalNs) {
+        if (intendedNs >= endNs) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        long delayNs = intendedNs - System.nanoTime();
+        CompletableFuture<Void> sent = delayNs > 0
+                ? CompletableFuture.runAsync(() -> {
+                }, CompletableFuture.delayedExecutor(delayNs, TimeUnit.NANOSECONDS))
+                : CompletableFuture.completedFuture(null);
+
+        return sent.thenCompose(ignored -> send(clientId, intendedNs))
+                .thenCompose(ignored -> loop(clientId, intendedNs + intervalNs, intervalNs));
+    }
+
+    private CompletableFuture<Void> send(int clientId, long intendedNs) {
+        Operation operation = pickOperation();
+        Long id = null;
+
+        if (operation == Operation.DELETE) {
+            id = itemIds.remove();
+        } else if (operation == Operation.READ || operation == Operation.UPDATE) {
+            id = itemIds.pick();
+        }
+        if (id == null && operation != Operation.LIST) {
+            // Everything was deleted, so there's nothing to edit.
+            operation = Operation.CREATE;
+        }
+
+        Operation sentOperation = operation;
+        long sentNs = System.nanoTime();
+
+        return client.sendAsync(request(clientId, operation, id), HttpResponse.BodyHandlers.ofString())
+                .handle((response, e) -> {
+                    long receivedNs = System.nanoTime();
+                    Stats operationStats = stats.get(sentOperation);
+
+                    // Leaving out responses that arrive after the end would
+                    // leave out the slowest ones.
+                    if (intendedNs >= measureFromNs) {
+                        operationStats.serviceTimeNs.recordValue(receivedNs - sentNs);
+                        operationStats.responseTimeNs.recordValue(receivedNs - intendedNs);
+                        if (e != null || response.statusCode() >= 500) {
+                            operationStats.errors.incrementAndGet();
+                        } else if (response.statusCode() == 404) {
+                            operationStats.notFound.incrementAndGet();
+                        } else if (response.statusCode() >= 400) {
+                            operationStats.errors.incrementAndGet();
+                        }
+                    }
+                    if (e == null && sentOperation == Operation.CREATE && response.statusCode() / 100 == 2) {
+                        recordCreatedItem(response.body());
+                    }
+
+                    return null;
+                });
+    }
+
+    private HttpRequest request(int clientId, Operation operation, Long id) {
+        String body = String.format(
+                "{\"description\":\"Edited by client %d\",\"completed\":%s}",
+                clientId, ThreadLocalRandom.current().nextBoolean());
+
+        switch (operation) {
+            case CREATE:
+                return HttpRequest.newBuilder(URI.create(baseUri))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(body))
+                        .build();
+            case READ:
+                return HttpRequest.newBuilder(URI.create(baseUri + "/" + id)).GET().build();
+            case LIST:
+                return HttpRequest.newBuilder(URI.create(baseUri + "?limit=100")).GET().build();
+            case UPDATE:
+                return HttpRequest.newBuilder(URI.create(baseUri + "/" + id))
+                        .header("Content-Type", "application/json")
+                        .PUT(HttpRequest.BodyPublishers.ofString(body))
+                        .build();
+            default:
+                return HttpRequest.newBuilder(URI.create(baseUri + "/" + id)).DELETE().build();
+        }
+    }
+
+    // Created items can then be edited by other clients. Updates to items
+    // deleted in the meantime fail with 404, and don't create items.
+    private void recordCreatedItem(String body) {
+        try {
+            itemIds.add(objectMapper.readValue(body, TodoDto.class).getId());
+        } catch (Exception e) {
+            stats.get(Operation.CREATE).errors.incrementAndGet();
+        }
+    }
+
+    private Operation pickOperation() {
+        int value = ThreadLocalRandom.current().nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+
+        for (int i = 0; i < operations.length; i++) {
+            if (value < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+
+        return operations[operations.length - 1];
+    }
+
+    private void report() {
+        Histogram totalServiceTimeNs = new Histogram(3);
+        Histogram totalResponseTimeNs = new Histogram(3);
+        long totalNotFound = 0;
+        long totalErrors = 0;
+
+        for (Stats operationStats : stats.values()) {
+            totalServiceTimeNs.add(operationStats.serviceTimeNs);
+            totalResponseTimeNs.add(operationStats.responseTimeNs);
+            totalNotFound += operationStats.notFound.get();
+            totalErrors += operationStats.errors.get();
+        }
+
+        System.out.println();
+        System.out.println("Service time, from when requests were sent (uncorrected):");
+        printHeader();
+        for (Map.Entry<Operation, Stats> entry : stats.entrySet()) {
+            printRow(entry.getKey().name().toLowerCase(), entry.getValue().serviceTimeNs,
+                    entry.getValue().notFound.get(), entry.getValue().errors.get());
+        }
+        printRow("total", totalServiceTimeNs, totalNotFound, totalErrors);
+
+        System.out.println();
+        System.out.println("Response time, from when requests were intended (corrected for coordinated omission):");
+        printHeader();
+        for (Map.Entry<Operation, Stats> entry : stats.entrySet()) {
+            printRow(entry.getKey().name().toLowerCase(), entry.getValue().responseTimeNs,
+                    entry.getValue().notFound.get(), entry.getValue().errors.get());
+        }
+        printRow("total", totalResponseTimeNs, totalNotFound, totalErrors);
+    }
+
+    private static void printHeader() {
+        System.out.printf("%-8s %10s %10s %9s %9s %9s %9s %9s %8s %8s%n",
+                "op", "requests", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "404 %", "error %");
+    }
+
+    private void printRow(String name, Histogram latenciesNs, long notFound, long errors) {
+        long count = latenciesNs.getTotalCount();
+
+        System.out.printf("%-8s %10d %10.0f %9.1f %9.1f %9.1f %9.1f %9.1f %8.2f %8.2f%n",
+                name,
+                count,
+                count / (double) options.durationSeconds,
+                latenciesNs.getValueAtPercentile(50) / 1e6,
+                latenciesNs.getValueAtPercentile(90) / 1e6,
+                latenciesNs.getValueAtPercentile(99) / 1e6,
+                latenciesNs.getValueAtPercentile(99.9) / 1e6,
+                latenciesNs.getMaxValue() / 1e6,
+                count == 0 ? 0 : 100.0 * notFound / count,
+                count == 0 ? 0 : 100.0 * errors / count);
+    }
+}
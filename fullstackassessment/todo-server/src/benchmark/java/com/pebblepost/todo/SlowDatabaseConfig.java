@@ -0,0 +1,81 @@
+package com.pebblepost.todo;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * Makes the in-memory database behave like one across a network, by holding
+ * every round trip to it for {@code benchmark.db-latency-ms}.
+ * 
+ * Round trips are statement executions, commits and rollbacks, so a request
+ * is slowed down by how many statements it runs, not just by taking a
+ * connection.
+ */
+class SlowDatabaseConfig {
+
+    @Bean
+    static BeanPostProcessor slowDataSourcePostProcessor(@Value("${benchmark.db-latency-ms:20}") long latencyMs) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof DataSource)) {
+                    return bean;
+                }
+
+                return new DelegatingDataSource((DataSource) bean) {
+                    @Override
+                    public Connection getConnection() throws SQLException {
+                        return slow(Connection.class, super.getConnection(), latencyMs);
+                    }
+                };
+            }
+        };
+    }
+
+    // Wraps a connection or statement, and the statements it creates, so
+    // that each round trip sleeps first.
+    private static <T> T slow(Class<T> type, T target, long latencyMs) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            String name = method.getName();
+
+            if (name.startsWith("execute") || name.equals("commit") || name.equals("rollback")) {
+                try {
+                    Thread.sleep(latencyMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            Object result;
+
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            if (result instanceof Statement && Statement.class.isAssignableFrom(method.getReturnType())) {
+                return slowStatement(method.getReturnType(), result, latencyMs);
+            }
+
+            return result;
+        };
+
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T slowStatement(Class<T> type, Object statement, long latencyMs) {
+        return slow(type, (T) statement, latencyMs);
+    }
+}
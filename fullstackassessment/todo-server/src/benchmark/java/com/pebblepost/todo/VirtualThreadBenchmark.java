@@ -0,0 +1,191 @@
+package com.pebblepost.todo;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Compares throughput and latency of the default Tomcat thread pool against
+ * the {@code virtual-threads} profile, with many concurrent clients and a slow
+ * database.
+ * 
+ * Each mode gets a fresh application and database. Clients run a closed loop,
+ * each sending its next request as soon as the previous one completes, and
+ * only requests completed after the warm-up are measured.
+ * 
+ * Run with {@code ./gradlew benchmarkVirtualThreads}, on Java 21 or later.
+ * Options are passed as {@code -PbenchmarkArgs="--clients=2000 ..."}.
+ */
+public class VirtualThreadBenchmark {
+
+    private static class Options {
+        int clients = 1000;
+
+        int warmupSeconds = 5;
+
+        int durationSeconds = 20;
+
+        long dbLatencyMs = 20;
+
+        int items = 100;
+
+        static Options parse(String[] args) {
+            Options options = new Options();
+
+            for (String arg : args) {
+                String[] parts = arg.replaceFirst("^--", "").split("=", 2);
+                long value = Long.parseLong(parts[1]);
+
+                switch (parts[0]) {
+                    case "clients":
+                        options.clients = (int) value;
+                        break;
+                    case "warmup-seconds":
+                        options.warmupSeconds = (int) value;
+                        break;
+                    case "duration-seconds":
+                        options.durationSeconds = (int) value;
+                        break;
+                    case "db-latency-ms":
+                        options.dbLatencyMs = value;
+                        break;
+                    case "items":
+                        options.items = (int) value;
+                        break;
+                    default:
+                        throw new IllegalArgumentException(String.format("Unknown option: %s!", arg));
+                }
+            }
+
+            return options;
+        }
+    }
+
+    /**
+     * Latencies recorded by one client. Each client only has one request in
+     * flight, so it doesn't need to synchronize.
+     */
+    private static class Recorder {
+        long[] latenciesNs = new long[1024];
+
+        int count;
+
+        void record(long latencyNs) {
+            if (count == latenciesNs.length) {
+                latenciesNs = Arrays.copyOf(latenciesNs, count * 2);
+            }
+            latenciesNs[count++] = latencyNs;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+
+        System.out.printf("%d clients, %d ms database latency, %d s measured after %d s warm-up%n",
+                options.clients, options.dbLatencyMs, options.durationSeconds, options.warmupSeconds);
+        System.out.printf("%-16s %10s %12s %10s %10s %8s%n",
+                "mode", "requests", "requests/s", "p50 ms", "p99 ms", "errors");
+        run("platform", options);
+        run("virtual-threads", options);
+    }
+
+    private static void run(String mode, Options options) throws Exception {
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(Application.class, SlowDatabaseConfig.class);
+
+        if (mode.equals("virtual-threads")) {
+            builder.profiles("virtual-threads");
+        }
+
+        // Passed as command line arguments, which override the application's
+        // and the profile's properties files, unlike the builder's defaults.
+        try (ConfigurableApplicationContext context = builder.run(
+                "--server.port=0",
+                "--spring.main.banner-mode=off",
+                "--logging.level.root=warn",
+                "--spring.datasource.url=jdbc:h2:mem:benchmark-" + mode,
+                // The pool is sized for every client, so that threads, not
+                // connections, are what runs out.
+                "--spring.datasource.hikari.maximum-pool-size=" + options.clients,
+                "--benchmark.db-latency-ms=" + options.dbLatencyMs)) {
+            TodoService todoService = context.getBean(TodoService.class);
+
+            for (int i = 0; i < options.items; i++) {
+                todoService.createTodo(TodoList.DEFAULT_ID, new Todo("Do " + i));
+            }
+
+            int port = ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+
+            measure(mode, URI.create(String.format("http://localhost:%d/todos?limit=10", port)), options);
+        }
+    }
+
+    private static void measure(String mode, URI uri, Options options) throws Exception {
+        HttpClient client = HttpClient.newHttpClient();
+        HttpRequest request = HttpRequest.newBuilder(uri).GET().build();
+        long startNs = System.nanoTime();
+        long measureFromNs = startNs + options.warmupSeconds * 1_000_000_000L;
+        long endNs = measureFromNs + options.durationSeconds * 1_000_000_000L;
+        AtomicLong errors = new AtomicLong();
+        Recorder[] recorders = new Recorder[options.clients];
+        CompletableFuture<?>[] clients = new CompletableFuture<?>[options.clients];
+
+        for (int i = 0; i < options.clients; i++) {
+            recorders[i] = new Recorder();
+            clients[i] = loop(client, request, recorders[i], errors, measureFromNs, endNs);
+        }
+        CompletableFuture.allOf(clients).join();
+
+        long[] latenciesNs = Arrays.stream(recorders)
+                .flatMapToLong(recorder -> Arrays.stream(recorder.latenciesNs, 0, recorder.count))
+                .sorted()
+                .toArray();
+
+        System.out.printf("%-16s %10d %12.0f %10.1f %10.1f %8d%n",
+                mode,
+                latenciesNs.length,
+                latenciesNs.length / (double) options.durationSeconds,
+                percentile(latenciesNs, 0.50) / 1e6,
+                percentile(latenciesNs, 0.99) / 1e6,
+                errors.get());
+    }
+
+    private static CompletableFuture<Void> loop(
+            HttpClient client, HttpRequest request, Recorder recorder, AtomicLong errors,
+            long measureFromNs, long endNs) {
+        long sentNs = System.nanoTime();
+
+        if (sentNs >= endNs) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .handle((response, e) -> {
+                    long receivedNs = System.nanoTime();
+
+                    if (e != null || response.statusCode() != 200) {
+                        errors.incrementAndGet();
+                    } else if (sentNs >= measureFromNs && receivedNs <= endNs) {
+                        recorder.record(receivedNs - sentNs);
+                    }
+
+                    return null;
+                })
+                .thenCompose(ignored -> loop(client, request, recorder, errors, measureFromNs, endNs));
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(quantile * sorted.length) - 1)];
+    }
+}
@@ -0,0 +1,76 @@
+package com.pebblepost.todo;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * Measures serializing lists of items to JSON, as the list endpoints do, at a
+ * few list sizes.
+ * 
+ * The output is written to a stream that discards it, like a response body,
+ * so only the serializer's own allocations are counted.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TodoJsonBenchmark {
+
+    @Param({ "10", "1000", "100000" })
+    private int size;
+
+    private List<TodoDto> items;
+
+    private ObjectWriter writer;
+
+    private final OutputStream sink = OutputStream.nullOutputStream();
+
+    @Setup
+    public void setUp() {
+        items = new ArrayList<TodoDto>(size);
+        for (int i = 0; i < size; i++) {
+            items.add(TodoDto.fromEntity(Todo.builder()
+                    .setId((long) i + 1)
+                    .setListId(TodoList.DEFAULT_ID)
+                    .setDescription("Do thing number " + i)
+                    .setCompleted(i % 2 == 0)
+                    .build()));
+        }
+
+        // Configured the same way as the mapper Spring Boot gives the web
+        // layer.
+        writer = Jackson2ObjectMapperBuilder.json().build().writerFor(new TypeReference<List<TodoDto>>() {
+        });
+    }
+
+    @Benchmark
+    public void serialize() throws IOException {
+        writer.writeValue(sink, items);
+    }
+
+    @Benchmark
+    public byte[] serializeToBytes() throws IOException {
+        return writer.writeValueAsBytes(items);
+    }
+}
@@ -0,0 +1,118 @@
+package com.pebblepost.todo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the mapping between entities and DTOs that every request goes
+ * through, and the {@link Todo.Builder} underneath it.
+ * 
+ * Run with {@code -prof gc} (as {@code ./gradlew jmh} does) to see the bytes
+ * allocated per mapping, next to the time.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TodoMappingBenchmark {
+
+    private Todo entity;
+
+    private TodoDto dto;
+
+    private TodoDto newDto;
+
+    private List<Todo> page;
+
+    // Read from fields, so that the JIT can't fold the builder's inputs into
+    // constants.
+    private Long id = 42L;
+
+    private String listId = TodoList.DEFAULT_ID;
+
+    private String description = "Buy milk";
+
+    private boolean completed = true;
+
+    @Setup
+    public void setUp() {
+        entity = Todo.builder()
+                .setId(id)
+                .setListId(listId)
+                .setDescription(description)
+                .setCompleted(completed)
+                .build();
+        dto = TodoDto.fromEntity(entity);
+        newDto = TodoDto.fromEntity(new Todo(description, completed));
+        page = new ArrayList<Todo>(100);
+        for (int i = 0; i < 100; i++) {
+            page.add(Todo.builder().setId((long) i + 1).setDescription(description).build());
+        }
+    }
+
+    @Benchmark
+    public TodoDto fromEntity() {
+        return TodoDto.fromEntity(entity);
+    }
+
+    /**
+     * Maps a default-sized page of items, as {@code GET /todos} does per
+     * request.
+     */
+    @Benchmark
+    public List<TodoDto> fromEntityPage() {
+        List<TodoDto> items = new ArrayList<TodoDto>(page.size());
+
+        for (Todo item : page) {
+            items.add(TodoDto.fromEntity(item));
+        }
+
+        return items;
+    }
+
+    @Benchmark
+    public Todo toEntity() {
+        return TodoDto.toEntity(dto);
+    }
+
+    /**
+     * Maps a DTO without an ID, as for creates.
+     */
+    @Benchmark
+    public Todo toEntityWithoutId() {
+        return TodoDto.toEntity(newDto);
+    }
+
+    @Benchmark
+    public Todo buildWithId() {
+        return Todo.builder()
+                .setId(id)
+                .setListId(listId)
+                .setDescription(description)
+                .setCompleted(completed)
+                .build();
+    }
+
+    @Benchmark
+    public Todo buildWithoutId() {
+        return Todo.builder()
+                .setListId(listId)
+                .setDescription(description)
+                .setCompleted(completed)
+                .build();
+    }
+}
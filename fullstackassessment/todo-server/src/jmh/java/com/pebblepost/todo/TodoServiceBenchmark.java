@@ -0,0 +1,107 @@
+package com.pebblepost.todo;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Slice;
+
+import javassist.NotFoundException;
+
+/**
+ * Measures {@link TodoService} operations through the application's own
+ * beans, including transactions, caching and event listeners, against an
+ * in-memory H2 database.
+ * 
+ * The web layer isn't started, so these numbers exclude HTTP and JSON.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TodoServiceBenchmark {
+
+    @Param({ "1000" })
+    private int items;
+
+    private ConfigurableApplicationContext context;
+
+    private TodoService todoService;
+
+    private Long firstId;
+
+    private Long middleId;
+
+    private boolean completed;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(Application.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.main.banner-mode=off",
+                        "logging.level.root=warn",
+                        "spring.datasource.url=jdbc:h2:mem:jmh")
+                .run();
+        todoService = context.getBean(TodoService.class);
+
+        for (int i = 0; i < items; i++) {
+            Long id = todoService.createTodo(TodoList.DEFAULT_ID, new Todo("Do thing number " + i)).getId();
+
+            if (i == 0) {
+                firstId = id;
+            }
+            if (i == items / 2) {
+                middleId = id;
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    /**
+     * Creates an item. The list grows by one item per invocation.
+     */
+    @Benchmark
+    public Todo createTodo() {
+        return todoService.createTodo(TodoList.DEFAULT_ID, new Todo("Benchmark item"));
+    }
+
+    /**
+     * Reads one item, which is served from the cache after the first read.
+     */
+    @Benchmark
+    public Todo getTodo() throws NotFoundException {
+        return todoService.getTodo(TodoList.DEFAULT_ID, middleId);
+    }
+
+    @Benchmark
+    public Slice<Todo> getFirstPage() {
+        return todoService.getTodosAfter(TodoList.DEFAULT_ID, 0, 100);
+    }
+
+    @Benchmark
+    public Todo updateTodo() throws NotFoundException {
+        completed = !completed;
+
+        return todoService.updateTodo(TodoList.DEFAULT_ID, firstId, new Todo("Do thing number 0", completed));
+    }
+}
@@ -1,11 +1,22 @@
 package com.pebblepost.todo;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
 @SpringBootApplication
+@EnableCaching
+@EnableConfigurationProperties(TodoProperties.class)
+@EnableScheduling
 public class Application {
     public static void main(String[] args) {
         SpringApplication.run(Application.class, args);
@@ -15,4 +26,16 @@ public class Application {
     public WebMvcConfigurer corsConfigurer() {
         return new WebConfig();
     }
+
+    /**
+     * Times methods annotated with {@link io.micrometer.core.annotation.Timed}
+     * outside the web layer, which Spring Boot already times by itself.
+     * 
+     * Test slices without metrics, like {@code @DataJpaTest}, have no
+     * registry, so timings are kept in a throwaway one there.
+     */
+    @Bean
+    public TimedAspect timedAspect(ObjectProvider<MeterRegistry> meterRegistry) {
+        return new TimedAspect(meterRegistry.getIfAvailable(SimpleMeterRegistry::new));
+    }
 }
@@ -0,0 +1,43 @@
+package com.pebblepost.todo;
+
+import javassist.NotFoundException;
+
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.annotation.AfterThrowing;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Counts lookups of missing lists and items as {@code todo.not.found}, tagged
+ * with the class and method that didn't find them.
+ * 
+ * This covers every bean method that declares a {@link NotFoundException},
+ * so new lookups are counted without having to remember to.
+ */
+@Aspect
+@Component
+public class NotFoundCounter {
+
+    public static final String COUNTER_NAME = "todo.not.found";
+
+    private final MeterRegistry meterRegistry;
+
+    public NotFoundCounter(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @AfterThrowing(
+            pointcut = "execution(* com.pebblepost.todo..*(..) throws javassist.NotFoundException)",
+            throwing = "e")
+    public void count(JoinPoint joinPoint, NotFoundException e) {
+        Counter.builder(COUNTER_NAME)
+                .description("Lookups of lists and items that don't exist")
+                .tag("class", joinPoint.getSignature().getDeclaringType().getSimpleName())
+                .tag("method", joinPoint.getSignature().getName())
+                .register(meterRegistry)
+                .increment();
+    }
+}
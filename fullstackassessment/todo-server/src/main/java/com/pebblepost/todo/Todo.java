@@ -1,13 +1,31 @@
 package com.pebblepost.todo;
 
-import java.util.Optional;
+import java.util.Objects;
+import javax.persistence.Column;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.JoinColumn;
+import javax.persistence.ManyToOne;
+import javax.persistence.Table;
+import javax.persistence.Version;
 import javax.validation.constraints.Size;
 
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
 @Entity
+// Every query is scoped to a list, so lookups by list, and pages within a list
+// ordered by ID, go through the first index. Pages of only active, or only
+// completed, items go through the second, which keeps each status's items
+// of a list together, in ID order.
+@Table(indexes = {
+        @Index(name = "todo_list_id_id_idx", columnList = "list_id, id"),
+        @Index(name = "todo_list_id_completed_id_idx", columnList = "list_id, completed, id"),
+})
 public class Todo {
     /**
      * The maximum allowed length of a to-do item's description in characters.
@@ -19,24 +37,62 @@ public class Todo {
      */
     public final static int MAX_DESCRIPTION_LENGTH_CH = 1024;
 
+    /**
+     * The number of IDs reserved from the database sequence at a time.
+     * 
+     * Hibernate can't batch inserts into tables with {@code IDENTITY}
+     * columns, since it needs to execute each insert to learn the new row's
+     * ID. Reserving blocks of IDs from a sequence lets it assign IDs in
+     * memory, and send inserts to the database in JDBC batches.
+     */
+    public final static int ID_ALLOCATION_SIZE = 50;
+
+    // IDs carry the number of the shard they're created on, see TodoShardRouter.
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "todo_id_seq")
+    @GenericGenerator(name = "todo_id_seq", strategy = "com.pebblepost.todo.TodoIdGenerator", parameters = {
+            @Parameter(name = "sequence_name", value = "todo_id_seq"),
+            @Parameter(name = "increment_size", value = "" + ID_ALLOCATION_SIZE),
+    })
     private Long id;
 
+    @Column(name = "list_id", nullable = false)
+    private String listId;
+
+    // Only mapped so that the schema gets a foreign key constraint. The
+    // column is written through `listId`, so we don't need to load a list to
+    // add items to it.
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "list_id", insertable = false, updatable = false)
+    private TodoList list;
+
     @Size(min = 0, max = MAX_DESCRIPTION_LENGTH_CH)
     private String destription = "";
 
     private boolean completed = false;
 
+    /**
+     * Incremented on every update, so that concurrent editors can't silently
+     * overwrite each other's changes.
+     */
+    @Version
+    private long version;
+
     public Todo() {
     }
 
-    private Todo(Long id, String description, boolean completed) {
+    Todo(Long id, String listId, String description, boolean completed) {
         this.id = id;
+        this.listId = listId;
         this.destription = description;
         this.completed = completed;
     }
 
+    Todo(Long id, String listId, String description, boolean completed, long version) {
+        this(id, listId, description, completed);
+        this.version = version;
+    }
+
     public Todo(String description) {
         this.destription = description;
     }
@@ -50,6 +106,10 @@ public class Todo {
         return id;
     }
 
+    public String getListId() {
+        return this.listId;
+    }
+
     public String getDescription() {
         return this.destription;
     }
@@ -58,12 +118,33 @@ public class Todo {
         return this.completed;
     }
 
+    public long getVersion() {
+        return this.version;
+    }
+
+    void setDescription(String value) {
+        this.destription = value;
+    }
+
+    void setCompleted(boolean value) {
+        this.completed = value;
+    }
+
     public static Builder builder() {
         return new Builder();
     }
 
+    /**
+     * Builds items field by field.
+     * 
+     * Items are built for every request, so this only allocates the builder
+     * itself. When a builder doesn't outlive the expression that builds an
+     * item, escape analysis removes it: with {@code -prof gc},
+     * {@code TodoMappingBenchmark.buildWithId} allocates only the item.
+     */
     public static class Builder {
-        private Optional<Long> id = Optional.empty();
+        private Long id;
+        private String listId;
         private String description = "";
         private boolean completed = false;
 
@@ -72,13 +153,19 @@ public class Todo {
         }
 
         public Builder setId(Long value) {
-            this.id = Optional.of(value);
+            this.id = Objects.requireNonNull(value);
 
             return this;
         }
 
         public Builder setNullableId(Long value) {
-            this.id = Optional.ofNullable(value);
+            this.id = value;
+
+            return this;
+        }
+
+        public Builder setListId(String value) {
+            this.listId = value;
 
             return this;
         }
@@ -96,8 +183,7 @@ public class Todo {
         }
 
         public Todo build() {
-            return id.map(idValue -> new Todo(idValue, description, completed))
-                    .orElseGet(() -> new Todo(description, completed));
+            return new Todo(id, listId, description, completed);
         }
 
     }
@@ -0,0 +1,68 @@
+package com.pebblepost.todo;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A single create, update, or delete in a {@code POST /todos/batch} request.
+ */
+public class TodoBatchOperation {
+
+    public enum Type {
+        @JsonProperty("create")
+        CREATE,
+        @JsonProperty("update")
+        UPDATE,
+        @JsonProperty("delete")
+        DELETE,
+    }
+
+    private Type type;
+
+    private Long id;
+
+    private String description = "";
+
+    private boolean completed;
+
+    public TodoBatchOperation() {
+    }
+
+    public TodoBatchOperation(Type type, Long id, String description, boolean completed) {
+        this.type = type;
+        this.id = id;
+        this.description = description;
+        this.completed = completed;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type value) {
+        this.type = value;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long value) {
+        this.id = value;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String value) {
+        this.description = value;
+    }
+
+    public boolean getCompleted() {
+        return completed;
+    }
+
+    public void setCompleted(boolean value) {
+        this.completed = value;
+    }
+}
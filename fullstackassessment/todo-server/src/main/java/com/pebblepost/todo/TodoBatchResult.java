@@ -0,0 +1,50 @@
+package com.pebblepost.todo;
+
+import org.springframework.http.HttpStatus;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * The outcome of one {@link TodoBatchOperation}.
+ * 
+ * The {@code status} field uses the HTTP status code the operation would have
+ * gotten as a standalone request.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TodoBatchResult {
+
+    private int status;
+
+    private TodoDto item;
+
+    private String message;
+
+    private TodoBatchResult() {
+    }
+
+    private TodoBatchResult(int status, TodoDto item, String message) {
+        this.status = status;
+        this.item = item;
+        this.message = message;
+    }
+
+    public static TodoBatchResult success(HttpStatus status, Todo item) {
+        return new TodoBatchResult(status.value(), item == null ? null : TodoDto.fromEntity(item), null);
+    }
+
+    public static TodoBatchResult failure(HttpStatus status, String message) {
+        return new TodoBatchResult(status.value(), null, message);
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public TodoDto getItem() {
+        return item;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
@@ -0,0 +1,49 @@
+package com.pebblepost.todo;
+
+/**
+ * Published by {@link TodoService} after it completes or deletes every item
+ * of a list with a given completion status at once.
+ * 
+ * Bulk changes are written without reading the items, so this only carries
+ * how many items changed, not which. Listeners treat it as a change to the
+ * whole list.
+ */
+public class TodoBulkChangedEvent {
+
+    private final String listId;
+
+    private final boolean previousCompleted;
+
+    private final boolean deleted;
+
+    private final int count;
+
+    public TodoBulkChangedEvent(String listId, boolean previousCompleted, boolean deleted, int count) {
+        this.listId = listId;
+        this.previousCompleted = previousCompleted;
+        this.deleted = deleted;
+        this.count = count;
+    }
+
+    public String getListId() {
+        return listId;
+    }
+
+    /**
+     * Returns the completion status the changed items had.
+     */
+    public boolean getPreviousCompleted() {
+        return previousCompleted;
+    }
+
+    /**
+     * Returns whether the items were deleted, rather than completed.
+     */
+    public boolean getDeleted() {
+        return deleted;
+    }
+
+    public int getCount() {
+        return count;
+    }
+}
@@ -0,0 +1,20 @@
+package com.pebblepost.todo;
+
+/**
+ * The outcome of an operation on every matching item of a list.
+ */
+public class TodoBulkResult {
+
+    private final int count;
+
+    public TodoBulkResult(int count) {
+        this.count = count;
+    }
+
+    /**
+     * The number of items changed or deleted.
+     */
+    public int getCount() {
+        return count;
+    }
+}
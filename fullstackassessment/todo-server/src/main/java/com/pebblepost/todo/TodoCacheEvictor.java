@@ -0,0 +1,88 @@
+package com.pebblepost.todo;
+
+import java.time.Instant;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Evicts changed items from {@link TodoService#TODO_CACHE}, for every write
+ * path.
+ * 
+ * Items are evicted once the change commits, rather than by cache
+ * annotations on the write methods. Evicting any earlier would let a
+ * concurrent read cache the old item again until it expires.
+ * 
+ * With read replicas, an item read from a lagging replica right after a
+ * change would be cached until it expires, so changed items are evicted
+ * again once every usable replica has the change.
+ */
+@Component
+public class TodoCacheEvictor {
+
+    private final CacheManager cacheManager;
+
+    private final TaskScheduler taskScheduler;
+
+    private final TodoProperties.Replicas replicas;
+
+    public TodoCacheEvictor(CacheManager cacheManager, TaskScheduler taskScheduler, TodoProperties properties) {
+        this.cacheManager = cacheManager;
+        this.taskScheduler = taskScheduler;
+        this.replicas = properties.getReplicas();
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onTodoChanged(TodoChangedEvent event) {
+        evict(event.getListId(), event.getId());
+        evictFromReplicaReads(event.getListId(), event.getId());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onTodoPatched(TodoPatchedEvent event) {
+        evict(event.getListId(), event.getId());
+        evictFromReplicaReads(event.getListId(), event.getId());
+    }
+
+    // Bulk changes don't say which items changed, so the whole cache is
+    // cleared. They're rare enough that the misses don't matter.
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onTodoBulkChanged(TodoBulkChangedEvent event) {
+        clear();
+        if (replicas.isEnabled()) {
+            taskScheduler.schedule(
+                    this::clear,
+                    Instant.now().plusMillis(replicas.getMaxLagMs() + replicas.getHealthCheckIntervalMs()));
+        }
+    }
+
+    // A replica is only read while its lag, as of its last health check, is
+    // within the bound.
+    private void evictFromReplicaReads(String listId, Long id) {
+        if (replicas.isEnabled()) {
+            taskScheduler.schedule(
+                    () -> evict(listId, id),
+                    Instant.now().plusMillis(replicas.getMaxLagMs() + replicas.getHealthCheckIntervalMs()));
+        }
+    }
+
+    private void evict(String listId, Long id) {
+        Cache cache = cacheManager.getCache(TodoService.TODO_CACHE);
+
+        if (cache != null) {
+            cache.evict(TodoService.cacheKey(listId, id));
+        }
+    }
+
+    private void clear() {
+        Cache cache = cacheManager.getCache(TodoService.TODO_CACHE);
+
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.pebblepost.todo;
+
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.actuate.metrics.cache.CacheMeterBinderProvider;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CacheMeterBinder;
+
+/**
+ * Records the {@code cache.*} metrics of {@link TodoService#TODO_CACHE} with
+ * the simple cache provider too.
+ * 
+ * Spring Boot binds cache metrics for providers that keep statistics, like
+ * Caffeine. Without Caffeine on the classpath, items are cached in a
+ * {@link ConcurrentMapCache}, which doesn't, so its caches are wrapped in
+ * ones that count their hits, misses, and puts, and which Spring Boot then
+ * binds like any other.
+ */
+@Configuration
+public class TodoCacheMetricsConfig {
+
+    // Static, since post-processors are created before other beans.
+    @Bean
+    public static BeanPostProcessor countedCachesPostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                return bean instanceof ConcurrentMapCacheManager
+                        ? new CountedCacheManager((CacheManager) bean)
+                        : bean;
+            }
+        };
+    }
+
+    @Bean
+    public CountedCacheMeterBinderProvider countedCacheMeterBinderProvider() {
+        return new CountedCacheMeterBinderProvider();
+    }
+
+    static class CountedCacheManager implements CacheManager {
+
+        private final CacheManager cacheManager;
+
+        private final ConcurrentMap<String, CountedCache> caches = new ConcurrentHashMap<String, CountedCache>();
+
+        CountedCacheManager(CacheManager cacheManager) {
+            this.cacheManager = cacheManager;
+        }
+
+        @Override
+        public Cache getCache(String name) {
+            Cache cache = cacheManager.getCache(name);
+
+            return cache != null ? caches.computeIfAbsent(name, key -> new CountedCache(cache)) : null;
+        }
+
+        @Override
+        public Collection<String> getCacheNames() {
+            return cacheManager.getCacheNames();
+        }
+    }
+
+    static class CountedCache implements Cache {
+
+        private final Cache cache;
+
+        private final LongAdder hitCount = new LongAdder();
+
+        private final LongAdder missCount = new LongAdder();
+
+        private final LongAdder putCount = new LongAdder();
+
+        CountedCache(Cache cache) {
+            this.cache = cache;
+        }
+
+        @Override
+        public String getName() {
+            return cache.getName();
+        }
+
+        @Override
+        public Object getNativeCache() {
+            return cache.getNativeCache();
+        }
+
+        @Override
+        public ValueWrapper get(Object key) {
+            return count(cache.get(key));
+        }
+
+        @Override
+        public <T> T get(Object key, Class<T> type) {
+            return count(cache.get(key, type));
+        }
+
+        @Override
+        public <T> T get(Object key, Callable<T> valueLoader) {
+            AtomicBoolean loaded = new AtomicBoolean();
+            T value = cache.get(key, () -> {
+                loaded.set(true);
+
+                return valueLoader.call();
+            });
+
+            (loaded.get() ? missCount : hitCount).increment();
+
+            return value;
+        }
+
+        @Override
+        public void put(Object key, Object value) {
+            cache.put(key, value);
+            putCount.increment();
+        }
+
+        @Override
+        public ValueWrapper putIfAbsent(Object key, Object value) {
+            ValueWrapper existing = cache.putIfAbsent(key, value);
+
+            if (existing == null) {
+                putCount.increment();
+            }
+
+            return existing;
+        }
+
+        @Override
+        public void evict(Object key) {
+            cache.evict(key);
+        }
+
+        @Override
+        public boolean evictIfPresent(Object key) {
+            return cache.evictIfPresent(key);
+        }
+
+        @Override
+        public void clear() {
+            cache.clear();
+        }
+
+        @Override
+        public boolean invalidate() {
+            return cache.invalidate();
+        }
+
+        private <T> T count(T value) {
+            (value != null ? hitCount : missCount).increment();
+
+            return value;
+        }
+    }
+
+    static class CountedCacheMeterBinderProvider implements CacheMeterBinderProvider<CountedCache> {
+
+        @Override
+        public MeterBinder getMeterBinder(CountedCache cache, Iterable<Tag> tags) {
+            return new CacheMeterBinder(cache, cache.getName(), tags) {
+                @Override
+                protected Long size() {
+                    Object nativeCache = cache.getNativeCache();
+
+                    return nativeCache instanceof ConcurrentMap
+                            ? (long) ((ConcurrentMap<?, ?>) nativeCache).size()
+                            : null;
+                }
+
+                @Override
+                protected long hitCount() {
+                    return cache.hitCount.sum();
+                }
+
+                @Override
+                protected Long missCount() {
+                    return cache.missCount.sum();
+                }
+
+                // Entries are only ever evicted explicitly.
+                @Override
+                protected Long evictionCount() {
+                    return null;
+                }
+
+                @Override
+                protected long putCount() {
+                    return cache.putCount.sum();
+                }
+
+                @Override
+                protected void bindImplementationSpecificMetrics(MeterRegistry registry) {
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.pebblepost.todo;
+
+import java.time.Instant;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+
+/**
+ * An entry in the {@link TodoChangeLog}, recording that an item changed.
+ * 
+ * Entries don't hold the item's fields, since readers only care about its
+ * current state, which they read from the item itself. Entries without an
+ * item record a bulk change to the whole list.
+ */
+@Entity
+@Table(indexes = {
+        @Index(name = "todo_change_list_id_seq_idx", columnList = "list_id, seq"),
+        @Index(name = "todo_change_list_id_item_id_idx", columnList = "list_id, item_id"),
+})
+public class TodoChange {
+
+    // Sequence numbers are handed out one at a time, so that instances
+    // sharing the database can't hand out numbers out of order. They carry
+    // their shard's number, so they keep growing when a list moves to a
+    // newer shard.
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "todo_change_seq")
+    @GenericGenerator(name = "todo_change_seq", strategy = "com.pebblepost.todo.TodoIdGenerator", parameters = {
+            @Parameter(name = "sequence_name", value = "todo_change_seq"),
+            @Parameter(name = "increment_size", value = "1"),
+    })
+    private Long seq;
+
+    @Column(name = "list_id", nullable = false)
+    private String listId;
+
+    @Column(name = "item_id")
+    private Long itemId;
+
+    @Column(nullable = false)
+    private boolean deleted;
+
+    @Column(nullable = false)
+    private Instant changedAt;
+
+    protected TodoChange() {
+    }
+
+    public TodoChange(String listId, Long itemId, boolean deleted, Instant changedAt) {
+        this.listId = listId;
+        this.itemId = itemId;
+        this.deleted = deleted;
+        this.changedAt = changedAt;
+    }
+
+    public Long getSeq() {
+        return seq;
+    }
+
+    public String getListId() {
+        return listId;
+    }
+
+    public Long getItemId() {
+        return itemId;
+    }
+
+    public boolean getDeleted() {
+        return deleted;
+    }
+
+    public Instant getChangedAt() {
+        return changedAt;
+    }
+}
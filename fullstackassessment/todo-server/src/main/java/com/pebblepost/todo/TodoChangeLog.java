@@ -0,0 +1,264 @@
+package com.pebblepost.todo;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import javassist.NotFoundException;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Records every change to an item with a sequence number, so that clients can
+ * ask for what changed since they last looked instead of reloading the list.
+ * 
+ * Entries are written in the transaction that changes the item, with
+ * sequence numbers taken from a database sequence, so writers don't wait for
+ * each other beyond taking a number. Since entries can commit out of sequence
+ * order, readers only see a list's entries below the lowest sequence number
+ * still held by an open transaction of this instance, so a client's cursor
+ * never skips over an entry that commits later. Instances sharing a database
+ * only know of their own open transactions, so clients should keep reading
+ * from the instance they write through.
+ * 
+ * Compaction keeps the log from growing with the number of changes: it drops
+ * entries followed by a later change to the same item, and deletions older
+ * than {@link TodoProperties.Changes#getDeletionRetentionMs()}. Each list
+ * remembers the newest deletion dropped as its
+ * {@link TodoList#getChangeHorizon() horizon}, and clients with older cursors
+ * are told to reload the list.
+ * 
+ * Bulk changes to a list are recorded as a single entry without an item,
+ * which raises the list's horizon to its own sequence number, so clients
+ * that last looked before it reload the list too.
+ */
+@Component
+public class TodoChangeLog {
+
+    private static final int SEQ_LOCK_COUNT = 64;
+
+    private final TodoChangeRepository todoChangeRepository;
+
+    private final TodoListRepository todoListRepository;
+
+    private final TodoRepository todoRepository;
+
+    private final TodoShardRouter shardRouter;
+
+    private final TransactionTemplate transactionTemplate;
+
+    // Only present when items aren't stored in the database.
+    private final Optional<TodoItemStore> itemStore;
+
+    private final TodoProperties.Changes properties;
+
+    // The sequence numbers of entries that haven't been committed yet, by
+    // list.
+    private final ConcurrentMap<String, ConcurrentSkipListSet<Long>> uncommittedSeqs =
+            new ConcurrentHashMap<String, ConcurrentSkipListSet<Long>>();
+
+    // Held exclusively while taking a sequence number for an entry of a
+    // list, and shared while reading the list's entries, so that no entry
+    // below a reader's watermark can be numbered while it reads. Lists are
+    // spread over a fixed number of locks, so writers to different lists
+    // rarely wait for each other.
+    private final ReadWriteLock[] seqLocks = new ReadWriteLock[SEQ_LOCK_COUNT];
+
+    public TodoChangeLog(
+            TodoChangeRepository todoChangeRepository,
+            TodoListRepository todoListRepository,
+            TodoRepository todoRepository,
+            TodoShardRouter shardRouter,
+            PlatformTransactionManager transactionManager,
+            Optional<TodoItemStore> itemStore,
+            TodoProperties properties) {
+        this.todoChangeRepository = todoChangeRepository;
+        this.todoListRepository = todoListRepository;
+        this.todoRepository = todoRepository;
+        this.shardRouter = shardRouter;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.itemStore = itemStore;
+        this.properties = properties.getChanges();
+        for (int i = 0; i < seqLocks.length; i++) {
+            seqLocks[i] = new ReentrantReadWriteLock(true);
+        }
+    }
+
+    @EventListener
+    public void onTodoChanged(TodoChangedEvent event) {
+        record(event.getListId(), event.getId(), event.getType() == TodoChangedEvent.Type.DELETED);
+    }
+
+    @EventListener
+    public void onTodoPatched(TodoPatchedEvent event) {
+        record(event.getListId(), event.getId(), false);
+    }
+
+    @EventListener
+    public void onTodoBulkChanged(TodoBulkChangedEvent event) {
+        // The entry is kept like a deletion, so compaction drops it once the
+        // horizon has passed it anyway.
+        long seq = record(event.getListId(), null, true);
+
+        todoListRepository.raiseChangeHorizon(event.getListId(), seq);
+    }
+
+    /**
+     * Returns up to {@code limit} items changed after the sequence number
+     * {@code since}, in the order of their latest change.
+     */
+    @Transactional(readOnly = true)
+    public TodoChanges getChanges(String listId, long since, int limit) throws NotFoundException {
+        TodoList list = todoListRepository
+                .findById(listId)
+                .orElseThrow(
+                        () -> new NotFoundException(
+                                String.format("Todo list with ID %s not found in repository!", listId)));
+
+        if (since < list.getChangeHorizon()) {
+            Long latestSeq = todoChangeRepository.findMaxSeqByListId(listId);
+
+            return TodoChanges.resyncRequired(
+                    Math.max(list.getChangeHorizon(), latestSeq != null ? latestSeq : 0));
+        }
+
+        Slice<TodoChange> changes;
+        ReadWriteLock seqLock = seqLock(listId);
+
+        seqLock.readLock().lock();
+        try {
+            ConcurrentSkipListSet<Long> uncommitted = uncommittedSeqs.get(listId);
+            Long watermark = uncommitted != null ? uncommitted.ceiling(Long.MIN_VALUE) : null;
+
+            changes = todoChangeRepository.findLatestByListIdAndSeqBetween(
+                    listId, since, watermark != null ? watermark : Long.MAX_VALUE,
+                    PageRequest.of(0, limit, Sort.by("seq")));
+        } finally {
+            seqLock.readLock().unlock();
+        }
+        List<Long> changedIds = changes.stream()
+                .filter(change -> !change.getDeleted())
+                .map(TodoChange::getItemId)
+                .collect(Collectors.toList());
+        List<Todo> changedItemList = itemStore.isPresent()
+                ? itemStore.get().findByIds(listId, changedIds)
+                : todoRepository.findByListIdAndIdIn(listId, changedIds);
+        Map<Long, Todo> changedItems = changedItemList.stream()
+                .collect(Collectors.toMap(Todo::getId, Function.identity()));
+        List<TodoDto> items = new ArrayList<>();
+        List<Long> deletedIds = new ArrayList<>();
+        long cursor = since;
+
+        for (TodoChange change : changes) {
+            cursor = change.getSeq();
+            // Bulk changes have no item, and clients that haven't seen them
+            // are told to reload the list before getting here.
+            if (change.getItemId() == null) {
+                continue;
+            }
+
+            Todo item = changedItems.get(change.getItemId());
+
+            // An item that's missing was deleted after we read its change,
+            // so it's reported as deleted a little early.
+            if (item != null) {
+                items.add(TodoDto.fromEntity(item));
+            } else {
+                deletedIds.add(change.getItemId());
+            }
+        }
+
+        return TodoChanges.of(cursor, items, deletedIds, changes.hasNext());
+    }
+
+    /**
+     * Compacts the log on every shard, in a transaction per shard.
+     */
+    @Scheduled(fixedDelayString = "${todo.changes.compaction-interval-ms:60000}")
+    public void compact() {
+        Instant deletionCutoff = Instant.now().minusMillis(properties.getDeletionRetentionMs());
+
+        shardRouter.forEachShard(() -> transactionTemplate.executeWithoutResult(status -> compact(deletionCutoff)));
+    }
+
+    /**
+     * Drops superseded entries, and deletions recorded before
+     * {@code deletionCutoff}, on the current shard.
+     */
+    @Transactional
+    public void compact(Instant deletionCutoff) {
+        for (TodoChangeRepository.ListSeq horizon : todoChangeRepository
+                .findMaxDeletionSeqChangedBefore(deletionCutoff)) {
+            todoListRepository.raiseChangeHorizon(horizon.getListId(), horizon.getSeq());
+            todoChangeRepository.deleteDeletionsUpTo(horizon.getListId(), horizon.getSeq());
+        }
+        todoChangeRepository.deleteSuperseded();
+    }
+
+    private long record(String listId, Long itemId, boolean deleted) {
+        TodoChange change = new TodoChange(listId, itemId, deleted, Instant.now());
+
+        // Saving the entry takes its sequence number, but only inserts it when
+        // the transaction is flushed.
+        ReadWriteLock seqLock = seqLock(listId);
+
+        seqLock.writeLock().lock();
+        try {
+            todoChangeRepository.save(change);
+            uncommittedSeqs.compute(listId, (key, seqs) -> {
+                ConcurrentSkipListSet<Long> listSeqs = seqs != null ? seqs : new ConcurrentSkipListSet<Long>();
+
+                listSeqs.add(change.getSeq());
+
+                return listSeqs;
+            });
+        } finally {
+            seqLock.writeLock().unlock();
+        }
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            forget(listId, change.getSeq());
+
+            return change.getSeq();
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                forget(listId, change.getSeq());
+            }
+        });
+
+        return change.getSeq();
+    }
+
+    private ReadWriteLock seqLock(String listId) {
+        return seqLocks[Math.floorMod(listId.hashCode(), seqLocks.length)];
+    }
+
+    private void forget(String listId, long seq) {
+        uncommittedSeqs.computeIfPresent(listId, (key, seqs) -> {
+            seqs.remove(seq);
+
+            return seqs.isEmpty() ? null : seqs;
+        });
+    }
+}
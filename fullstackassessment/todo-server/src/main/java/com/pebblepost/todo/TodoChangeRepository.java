@@ -0,0 +1,52 @@
+package com.pebblepost.todo;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface TodoChangeRepository extends JpaRepository<TodoChange, Long> {
+    interface ListSeq {
+        String getListId();
+
+        Long getSeq();
+    }
+
+    /**
+     * Returns the latest change to each item of a list, for items that
+     * changed after {@code since}, and whose latest change is before
+     * {@code before}.
+     */
+    @Query("SELECT c FROM TodoChange c WHERE c.listId = :listId AND c.seq > :since AND c.seq < :before"
+            + " AND NOT EXISTS ("
+            + "SELECT n FROM TodoChange n WHERE n.listId = c.listId AND n.itemId = c.itemId AND n.seq > c.seq)")
+    Slice<TodoChange> findLatestByListIdAndSeqBetween(
+            @Param("listId") String listId, @Param("since") long since, @Param("before") long before,
+            Pageable pageable);
+
+    @Query("SELECT MAX(c.seq) FROM TodoChange c WHERE c.listId = :listId")
+    Long findMaxSeqByListId(@Param("listId") String listId);
+
+    @Query("SELECT c.listId AS listId, MAX(c.seq) AS seq FROM TodoChange c "
+            + "WHERE c.deleted = true AND c.changedAt < :cutoff GROUP BY c.listId")
+    List<ListSeq> findMaxDeletionSeqChangedBefore(@Param("cutoff") Instant cutoff);
+
+    @Modifying
+    @Query("DELETE FROM TodoChange c WHERE c.listId = :listId AND c.deleted = true AND c.seq <= :seq")
+    int deleteDeletionsUpTo(@Param("listId") String listId, @Param("seq") long seq);
+
+    /**
+     * Deletes changes followed by a later change to the same item.
+     */
+    @Modifying
+    @Query("DELETE FROM TodoChange c WHERE EXISTS ("
+            + "SELECT n FROM TodoChange n WHERE n.listId = c.listId AND n.itemId = c.itemId AND n.seq > c.seq)")
+    int deleteSuperseded();
+}
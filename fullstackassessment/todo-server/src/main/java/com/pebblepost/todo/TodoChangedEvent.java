@@ -0,0 +1,62 @@
+package com.pebblepost.todo;
+
+/**
+ * Published by {@link TodoService} after it creates, updates, or deletes an
+ * item.
+ * 
+ * {@code previous} and {@code current} are snapshots of the item before and
+ * after the change. {@code previous} is {@code null} for created items, and
+ * {@code current} is {@code null} for deleted ones.
+ */
+public class TodoChangedEvent {
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED,
+    }
+
+    private final Type type;
+
+    private final Todo previous;
+
+    private final Todo current;
+
+    private TodoChangedEvent(Type type, Todo previous, Todo current) {
+        this.type = type;
+        this.previous = previous;
+        this.current = current;
+    }
+
+    public static TodoChangedEvent created(Todo current) {
+        return new TodoChangedEvent(Type.CREATED, null, current);
+    }
+
+    public static TodoChangedEvent updated(Todo previous, Todo current) {
+        return new TodoChangedEvent(Type.UPDATED, previous, current);
+    }
+
+    public static TodoChangedEvent deleted(Todo previous) {
+        return new TodoChangedEvent(Type.DELETED, previous, null);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getListId() {
+        return current != null ? current.getListId() : previous.getListId();
+    }
+
+    public Long getId() {
+        return current != null ? current.getId() : previous.getId();
+    }
+
+    public Todo getPrevious() {
+        return previous;
+    }
+
+    public Todo getCurrent() {
+        return current;
+    }
+}
@@ -0,0 +1,72 @@
+package com.pebblepost.todo;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A page of the changes to a list, as returned by {@link TodoChangeLog}.
+ * 
+ * {@code items} holds the current state of items created or updated since
+ * the requested sequence number, and {@code deletedIds} the IDs of items
+ * deleted since then. Clients pass {@code cursor} as {@code since} to get the
+ * changes that follow.
+ * 
+ * If {@code resyncRequired} is set, changes the client hasn't seen have been
+ * compacted away. The client has to reload the whole list, and can then
+ * follow changes from {@code cursor}.
+ */
+public class TodoChanges {
+
+    private boolean resyncRequired;
+
+    private long cursor;
+
+    private List<TodoDto> items;
+
+    private List<Long> deletedIds;
+
+    private boolean more;
+
+    private TodoChanges() {
+    }
+
+    private TodoChanges(
+            boolean resyncRequired, long cursor, List<TodoDto> items, List<Long> deletedIds, boolean more) {
+        this.resyncRequired = resyncRequired;
+        this.cursor = cursor;
+        this.items = items;
+        this.deletedIds = deletedIds;
+        this.more = more;
+    }
+
+    public static TodoChanges of(long cursor, List<TodoDto> items, List<Long> deletedIds, boolean more) {
+        return new TodoChanges(false, cursor, items, deletedIds, more);
+    }
+
+    public static TodoChanges resyncRequired(long cursor) {
+        return new TodoChanges(true, cursor, Collections.emptyList(), Collections.emptyList(), false);
+    }
+
+    public boolean isResyncRequired() {
+        return resyncRequired;
+    }
+
+    public long getCursor() {
+        return cursor;
+    }
+
+    public List<TodoDto> getItems() {
+        return items;
+    }
+
+    public List<Long> getDeletedIds() {
+        return deletedIds;
+    }
+
+    /**
+     * Whether more changes follow {@link #getCursor()}.
+     */
+    public boolean hasMore() {
+        return more;
+    }
+}
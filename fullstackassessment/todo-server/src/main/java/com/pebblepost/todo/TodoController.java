@@ -1,50 +1,303 @@
 package com.pebblepost.todo;
 
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.MediaType;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import javassist.NotFoundException;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
+/**
+ * Serves the items of a single list.
+ * 
+ * Items of shared lists are under {@code /lists/{listId}/todos}, and
+ * {@code /todos} serves the {@link TodoList#DEFAULT_ID default list}.
+ */
 @RestController()
-@RequestMapping("/todos")
+@RequestMapping({ "/todos", "/lists/{listId}/todos" })
 public class TodoController {
 
     private final TodoService todoService;
 
-    public TodoController(TodoService todoService) {
+    private final TodoCounters todoCounters;
+
+    private final TodoVersion todoVersion;
+
+    private final TodoEventBroadcaster todoEventBroadcaster;
+
+    private final TodoChangeLog todoChangeLog;
+
+    private final TodoProperties.Paging paging;
+
+    private final TodoProperties.Batch batch;
+
+    private final ObjectMapper objectMapper;
+
+    public TodoController(
+            TodoService todoService,
+            TodoCounters todoCounters,
+            TodoVersion todoVersion,
+            TodoEventBroadcaster todoEventBroadcaster,
+            TodoChangeLog todoChangeLog,
+            TodoProperties properties,
+            ObjectMapper objectMapper) {
         this.todoService = todoService;
+        this.todoCounters = todoCounters;
+        this.todoVersion = todoVersion;
+        this.todoEventBroadcaster = todoEventBroadcaster;
+        this.todoChangeLog = todoChangeLog;
+        this.paging = properties.getPaging();
+        this.batch = properties.getBatch();
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
-    public TodoDto create(@RequestBody TodoDto createDto) {
-        return TodoDto.fromEntity(todoService.createTodo(TodoDto.toEntity(createDto)));
+    public TodoDto create(
+            @PathVariable(name = "listId", required = false) String listId,
+            @RequestBody TodoDto createDto) {
+        try {
+            return TodoDto.fromEntity(
+                    todoService.createTodo(resolveListId(listId), TodoDto.toEntity(createDto)));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (DataIntegrityViolationException e) {
+            throw listNotFound(listId);
+        } catch (RejectedExecutionException e) {
+            throw writeQueueFull();
+        }
     }
 
-    // This may need paging, or we may want to limit the maximum number of items
-    // a user can have at any given time.
+    /**
+     * Returns a page of items ordered by ID.
+     * 
+     * Clients pass the ID of the last item they've seen as {@code after} to
+     * get the next page. When more items follow, the response carries a
+     * {@code Link} header with {@code rel="next"} pointing to the next page.
+     * 
+     * With {@code completed}, only active ({@code false}) or completed
+     * ({@code true}) items are returned, so views showing one or the other
+     * don't have to download and filter the whole list.
+     * 
+     * Responses are tagged with the list's version, and requests with a
+     * matching {@code If-None-Match} header get a {@code 304 Not Modified}
+     * without querying the database.
+     */
     @GetMapping
-    public List<TodoDto> getAll() {
-        return todoService.getTodos().stream().map(TodoDto::fromEntity).toList();
+    public ResponseEntity<List<TodoDto>> getAll(
+            @PathVariable(name = "listId", required = false) String listId,
+            @RequestParam(name = "after", defaultValue = "0") long after,
+            @RequestParam(name = "limit", required = false) Integer limit,
+            @RequestParam(name = "completed", required = false) Boolean completed,
+            WebRequest request) {
+        int pageSize = getPageSize(limit);
+
+        // The tag has to be read before the data, so that a concurrent change
+        // can only make the tag older than the data, never newer.
+        if (request.checkNotModified(todoVersion.getETag(resolveListId(listId)))) {
+            return null;
+        }
+
+        Slice<Todo> page = completed != null
+                ? todoService.getTodosAfter(resolveListId(listId), completed, after, pageSize)
+                : todoService.getTodosAfter(resolveListId(listId), after, pageSize);
+        List<TodoDto> items = new ArrayList<TodoDto>(page.getNumberOfElements());
+
+        for (Todo item : page) {
+            items.add(TodoDto.fromEntity(item));
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+
+        if (page.hasNext()) {
+            // The filter carries over, since the current query is kept.
+            String nextUri = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("after", items.get(items.size() - 1).getId())
+                    .replaceQueryParam("limit", pageSize)
+                    .toUriString();
+
+            response.header(HttpHeaders.LINK, String.format("<%s>; rel=\"next\"", nextUri));
+        }
+
+        return response.body(items);
+    }
+
+    /**
+     * Returns all items as newline-delimited JSON, one item per line.
+     * 
+     * Rows are written to the response as they're read from the database, so
+     * the response can be arbitrarily large without being held in memory.
+     */
+    // Streamed bodies bypass message converters, so the content type has to
+    // be set on the response, or it's left out.
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> stream(
+            @PathVariable(name = "listId", required = false) String listId) {
+        StreamingResponseBody body = outputStream -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream)) {
+                generator.setRootValueSeparator(null);
+                todoService.streamTodos(resolveListId(listId), (id, description, completed, version) -> {
+                    generator.writeStartObject();
+                    generator.writeNumberField("id", id);
+                    generator.writeStringField("description", description);
+                    generator.writeBooleanField("completed", completed);
+                    generator.writeNumberField("version", version);
+                    generator.writeEndObject();
+                    generator.writeRaw('\n');
+                });
+            }
+        };
+
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    /**
+     * Pushes changes to items as server-sent events named {@code created},
+     * {@code updated}, and {@code deleted}.
+     * 
+     * Each event carries a {@link TodoEvent}. Several changes to one item may
+     * arrive as a single event, and clients that fall too far behind are
+     * disconnected, so clients should reload the list when they reconnect.
+     */
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter events(@PathVariable(name = "listId", required = false) String listId) {
+        return todoEventBroadcaster.subscribe(resolveListId(listId));
+    }
+
+    /**
+     * Returns the items changed after the change sequence number
+     * {@code since}, and the IDs of items deleted since then.
+     * 
+     * Clients pass the returned {@code cursor} as {@code since} next time.
+     * Like {@link #getAll}, a {@code Link} header with {@code rel="next"}
+     * points to the next page when more changes follow.
+     * 
+     * @see TodoChanges
+     */
+    @GetMapping("/changes")
+    public ResponseEntity<TodoChanges> getChanges(
+            @PathVariable(name = "listId", required = false) String listId,
+            @RequestParam(name = "since", defaultValue = "0") long since,
+            @RequestParam(name = "limit", required = false) Integer limit) {
+        int pageSize = getPageSize(limit);
+        TodoChanges changes;
+
+        try {
+            changes = todoChangeLog.getChanges(resolveListId(listId), since, pageSize);
+        } catch (NotFoundException e) {
+            throw listNotFound(listId);
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+
+        if (changes.hasMore()) {
+            String nextUri = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("since", changes.getCursor())
+                    .replaceQueryParam("limit", pageSize)
+                    .toUriString();
+
+            response.header(HttpHeaders.LINK, String.format("<%s>; rel=\"next\"", nextUri));
+        }
+
+        return response.body(changes);
+    }
+
+    /**
+     * Returns the number of active and completed items.
+     * 
+     * The counts are maintained as items change, so this doesn't scan the
+     * table.
+     */
+    @GetMapping("/stats")
+    public TodoStats getStats(@PathVariable(name = "listId", required = false) String listId) {
+        return todoCounters.getStats(resolveListId(listId));
+    }
+
+    /**
+     * Returns a page of items whose descriptions contain every word of
+     * {@code q}, or words starting with it, best match first.
+     * 
+     * Matches are ranked rather than ordered by ID, so pages are addressed by
+     * {@code offset}. Like {@link #getAll}, a {@code Link} header with
+     * {@code rel="next"} points to the next page when more matches follow.
+     * 
+     * @see TodoSearchIndex
+     */
+    @GetMapping("/search")
+    public ResponseEntity<List<TodoDto>> search(
+            @PathVariable(name = "listId", required = false) String listId,
+            @RequestParam(name = "q") String query,
+            @RequestParam(name = "offset", defaultValue = "0") int offset,
+            @RequestParam(name = "limit", required = false) Integer limit) {
+        int pageSize = getPageSize(limit);
+
+        if (TodoSearchIndex.tokenize(query).isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Search query must contain a word!");
+        }
+        if (offset < 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    String.format("Offset must not be negative, got %s!", offset));
+        }
+
+        Slice<Todo> page = todoService.searchTodos(resolveListId(listId), query, offset, pageSize);
+        List<TodoDto> items = new ArrayList<TodoDto>(page.getNumberOfElements());
+
+        for (Todo item : page) {
+            items.add(TodoDto.fromEntity(item));
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+
+        if (page.hasNext()) {
+            String nextUri = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("offset", offset + pageSize)
+                    .replaceQueryParam("limit", pageSize)
+                    .toUriString();
+
+            response.header(HttpHeaders.LINK, String.format("<%s>; rel=\"next\"", nextUri));
+        }
+
+        return response.body(items);
     }
 
     @GetMapping("/{id}")
-    public TodoDto getOne(@PathVariable("id") Long id) {
+    public TodoDto getOne(
+            @PathVariable(name = "listId", required = false) String listId,
+            @PathVariable("id") Long id,
+            WebRequest request) {
         Todo result;
 
+        if (request.checkNotModified(todoVersion.getETag(resolveListId(listId)))) {
+            return null;
+        }
+
         try {
-            result = todoService.getTodo(id);
+            result = todoService.getTodo(resolveListId(listId), id);
         } catch (NotFoundException e) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND,
                     String.format("To-do item with ID %s not found!", id));
@@ -53,20 +306,178 @@ public class TodoController {
         return TodoDto.fromEntity(result);
     }
 
+    /**
+     * Replaces an existing item.
+     * 
+     * If an {@code If-Match} header has the item's version, and the item has
+     * changed since then, the request fails with {@code 409 Conflict}. A
+     * {@code version} in the body is ignored, since clients send back items
+     * they read. The response always has the item's new {@code version}.
+     */
     @PutMapping("/{id}")
     @ResponseStatus(value = HttpStatus.OK)
-    public TodoDto put(@PathVariable("id") Long id, @RequestBody TodoDto updated) {
-        return TodoDto.fromEntity(todoService.updateTodo(id, TodoDto.toEntity(updated)));
+    public TodoDto put(
+            @PathVariable(name = "listId", required = false) String listId,
+            @PathVariable("id") Long id,
+            @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestBody TodoDto updated) {
+        try {
+            Todo result = todoService.updateTodo(
+                    resolveListId(listId), id, TodoDto.toEntity(updated), parseVersion(ifMatch));
+
+            return TodoDto.fromEntity(result);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (NotFoundException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+                    String.format("To-do item with ID %s not found!", id));
+        } catch (RejectedExecutionException e) {
+            throw writeQueueFull();
+        } catch (OptimisticLockingFailureException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    String.format("To-do item with ID %s has been changed by someone else!", id));
+        }
+    }
+
+    /**
+     * Changes only the fields given in the request body.
+     * 
+     * If the body has a {@code version}, and the item has changed since then,
+     * the request fails with {@code 409 Conflict}.
+     */
+    @PatchMapping("/{id}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void patch(
+            @PathVariable(name = "listId", required = false) String listId,
+            @PathVariable("id") Long id,
+            @RequestBody TodoPatch patch) {
+        try {
+            todoService.patchTodo(resolveListId(listId), id, patch);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (NotFoundException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+                    String.format("To-do item with ID %s not found!", id));
+        } catch (OptimisticLockingFailureException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    String.format("To-do item with ID %s has been changed by someone else!", id));
+        }
+    }
+
+    /**
+     * Applies a list of creates, updates, and deletes in one transaction.
+     * 
+     * The response lists one result per operation, in request order. If an
+     * item is changed by someone else while the batch runs, none of the batch
+     * is applied, and the request fails with {@code 409 Conflict}.
+     */
+    @PostMapping("/batch")
+    public List<TodoBatchResult> applyBatch(
+            @PathVariable(name = "listId", required = false) String listId,
+            @RequestBody List<TodoBatchOperation> operations) {
+        if (operations.size() > batch.getMaxOperations()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    String.format("A batch can contain at most %s operations, got %s!",
+                            batch.getMaxOperations(), operations.size()));
+        }
+
+        try {
+            return todoService.applyBatch(resolveListId(listId), operations);
+        } catch (DataIntegrityViolationException e) {
+            throw listNotFound(listId);
+        } catch (OptimisticLockingFailureException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "Items in the batch have been changed by someone else, try again!");
+        }
+    }
+
+    /**
+     * Completes every active item, in a single request and a single
+     * {@code UPDATE} statement, rather than one update per item.
+     * 
+     * The change is pushed and logged for the whole list, so subscribed
+     * clients, and clients asking for changes since before it, reload the
+     * list.
+     */
+    @PostMapping("/complete-all")
+    public TodoBulkResult completeAll(@PathVariable(name = "listId", required = false) String listId) {
+        return new TodoBulkResult(todoService.completeAll(resolveListId(listId)));
+    }
+
+    /**
+     * Deletes every item with the given completion status, so that
+     * {@code DELETE /todos?completed=true} clears completed items. Like
+     * {@link #completeAll(String)}, this is a single statement.
+     */
+    @DeleteMapping(params = "completed")
+    public TodoBulkResult deleteAll(
+            @PathVariable(name = "listId", required = false) String listId,
+            @RequestParam(name = "completed") boolean completed) {
+        return new TodoBulkResult(todoService.deleteAll(resolveListId(listId), completed));
     }
 
     @DeleteMapping(value = "/{id}")
-    public void delete(@PathVariable("id") Long id) {
+    public void delete(
+            @PathVariable(name = "listId", required = false) String listId,
+            @PathVariable("id") Long id) {
         try {
-            todoService.deleteTodo(id);
+            todoService.deleteTodo(resolveListId(listId), id);
         } catch (NotFoundException e) {
             throw new ResponseStatusException(HttpStatus.NOT_FOUND,
                     String.format("To-do item with ID %s not found!", id));
+        } catch (OptimisticLockingFailureException e) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    String.format("To-do item with ID %s has been changed by someone else!", id));
+        }
+    }
+
+    private static String resolveListId(String listId) {
+        return listId != null ? listId : TodoList.DEFAULT_ID;
+    }
+
+    // Takes an item's version from an `If-Match` header, which may quote it
+    // like an entity tag.
+    private static Long parseVersion(String ifMatch) {
+        if (ifMatch == null) {
+            return null;
+        }
+
+        String version = ifMatch.trim();
+
+        if (version.length() >= 2 && version.startsWith("\"") && version.endsWith("\"")) {
+            version = version.substring(1, version.length() - 1);
         }
+        try {
+            return Long.valueOf(version);
+        } catch (NumberFormatException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    String.format("If-Match must be an item version, got %s!", ifMatch));
+        }
+    }
+
+    // Items reference their list through a foreign key, so adding items to a
+    // missing list fails with an integrity violation.
+    private static ResponseStatusException listNotFound(String listId) {
+        return new ResponseStatusException(HttpStatus.NOT_FOUND,
+                String.format("To-do list with ID %s not found!", resolveListId(listId)));
+    }
+
+    // In group commit mode, writers are turned away while the write queue is
+    // full, and can try again later.
+    private static ResponseStatusException writeQueueFull() {
+        return new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many pending writes, try again later!");
+    }
+
+    private int getPageSize(Integer requestedLimit) {
+        if (requestedLimit == null) {
+            return Math.min(paging.getDefaultLimit(), paging.getMaxLimit());
+        }
+        if (requestedLimit < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    String.format("Page size must be positive, got %s!", requestedLimit));
+        }
+
+        return Math.min(requestedLimit, paging.getMaxLimit());
     }
 
 }
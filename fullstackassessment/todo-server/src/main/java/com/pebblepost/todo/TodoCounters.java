@@ -0,0 +1,207 @@
+package com.pebblepost.todo;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Keeps running counts of active and completed to-do items in each list.
+ * 
+ * The counts are adjusted on every {@link TodoChangedEvent}, once its change
+ * commits, so reading them doesn't touch the database. Changes whose previous
+ * state isn't known, or that are made by other instances, are caught up with
+ * by periodically reconciling the counts against the table.
+ * 
+ * A count can't tell whether it saw a change that commits while it runs, so
+ * reconciling skips lists with changes in flight, and leaves them to the
+ * next round. Other lists are corrected by the difference between the count
+ * and their counters when it started, so changes applied in the meantime
+ * aren't lost.
+ */
+@Component
+public class TodoCounters {
+
+    private static class ListCounters {
+        final AtomicLong active;
+
+        final AtomicLong completed;
+
+        // Changes published but not applied yet, from before they commit.
+        final AtomicInteger inFlight = new AtomicInteger();
+
+        // Changes done with, whether they were applied or rolled back.
+        final AtomicLong completedChanges = new AtomicLong();
+
+        ListCounters(long active, long completed) {
+            this.active = new AtomicLong(active);
+            this.completed = new AtomicLong(completed);
+        }
+
+        AtomicLong counterFor(boolean isCompleted) {
+            return isCompleted ? completed : active;
+        }
+    }
+
+    // The state of a list's counters when a reconciliation started.
+    private static class Mark {
+        final long completedChanges;
+
+        final long active;
+
+        final long completed;
+
+        Mark(long completedChanges, long active, long completed) {
+            this.completedChanges = completedChanges;
+            this.active = active;
+            this.completed = completed;
+        }
+    }
+
+    private final TodoRepository todoRepository;
+
+    private final TodoShardRouter shardRouter;
+
+    // Only present when items aren't stored in the database.
+    private final Optional<TodoItemStore> itemStore;
+
+    private final ConcurrentMap<String, ListCounters> listCounters = new ConcurrentHashMap<String, ListCounters>();
+
+    public TodoCounters(
+            TodoRepository todoRepository, TodoShardRouter shardRouter, Optional<TodoItemStore> itemStore) {
+        this.todoRepository = todoRepository;
+        this.shardRouter = shardRouter;
+        this.itemStore = itemStore;
+    }
+
+    public TodoStats getStats(String listId) {
+        ListCounters counters = listCounters.get(listId);
+
+        return counters == null
+                ? new TodoStats(0, 0)
+                : new TodoStats(counters.active.get(), counters.completed.get());
+    }
+
+    @EventListener
+    public void onTodoChanged(TodoChangedEvent event) {
+        afterCommit(event.getListId(), counters -> {
+            if (event.getPrevious() != null) {
+                counters.counterFor(event.getPrevious().getCompleted()).decrementAndGet();
+            }
+            if (event.getCurrent() != null) {
+                counters.counterFor(event.getCurrent().getCompleted()).incrementAndGet();
+            }
+        });
+    }
+
+    @EventListener
+    public void onTodoPatched(TodoPatchedEvent event) {
+        if (event.getCompleted() != null && event.getPreviousCompleted() != null
+                && !event.getCompleted().equals(event.getPreviousCompleted())) {
+            afterCommit(event.getListId(), counters -> {
+                counters.counterFor(event.getPreviousCompleted()).decrementAndGet();
+                counters.counterFor(event.getCompleted()).incrementAndGet();
+            });
+        }
+    }
+
+    @EventListener
+    public void onTodoBulkChanged(TodoBulkChangedEvent event) {
+        afterCommit(event.getListId(), counters -> {
+            counters.counterFor(event.getPreviousCompleted()).addAndGet(-event.getCount());
+            if (!event.getDeleted()) {
+                counters.counterFor(!event.getPreviousCompleted()).addAndGet(event.getCount());
+            }
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${todo.stats.reconcile-interval-ms:60000}")
+    public void reconcile() {
+        Map<ListCounters, Mark> marks = new HashMap<ListCounters, Mark>();
+
+        for (ListCounters counters : listCounters.values()) {
+            long completedChanges = counters.completedChanges.get();
+
+            if (counters.inFlight.get() == 0) {
+                marks.put(counters, new Mark(completedChanges, counters.active.get(), counters.completed.get()));
+            }
+        }
+
+        Map<String, long[]> counts = itemStore.isPresent()
+                ? itemStore.get().countByListIdAndCompleted()
+                : countItems();
+
+        for (Map.Entry<String, ListCounters> entry : listCounters.entrySet()) {
+            ListCounters counters = entry.getValue();
+            Mark mark = marks.get(counters);
+
+            // Lists first changed while counting are left out too.
+            if (mark == null
+                    || counters.inFlight.get() != 0
+                    || counters.completedChanges.get() != mark.completedChanges) {
+                continue;
+            }
+
+            long[] listCounts = counts.getOrDefault(entry.getKey(), new long[2]);
+
+            counters.active.addAndGet(listCounts[0] - mark.active);
+            counters.completed.addAndGet(listCounts[1] - mark.completed);
+        }
+        // A list without counters had no changes published while counting,
+        // since they're created before a change commits.
+        for (Map.Entry<String, long[]> entry : counts.entrySet()) {
+            listCounters.computeIfAbsent(
+                    entry.getKey(), listId -> new ListCounters(entry.getValue()[0], entry.getValue()[1]));
+        }
+    }
+
+    private Map<String, long[]> countItems() {
+        Map<String, long[]> counts = new HashMap<String, long[]>();
+
+        // Each list is on a single shard.
+        shardRouter.forEachShard(() -> {
+            for (TodoRepository.CompletedCount count : todoRepository.countGroupByListIdAndCompleted()) {
+                long[] listCounts = counts.computeIfAbsent(count.getListId(), listId -> new long[2]);
+
+                listCounts[count.getCompleted() ? 1 : 0] = count.getItemCount();
+            }
+        });
+
+        return counts;
+    }
+
+    // Applies a change to a list's counters once it commits, and tracks it as
+    // in flight until then.
+    private void afterCommit(String listId, Consumer<ListCounters> change) {
+        ListCounters counters = listCounters.computeIfAbsent(listId, id -> new ListCounters(0, 0));
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            change.accept(counters);
+            counters.completedChanges.incrementAndGet();
+
+            return;
+        }
+
+        counters.inFlight.incrementAndGet();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    change.accept(counters);
+                }
+                counters.completedChanges.incrementAndGet();
+                counters.inFlight.decrementAndGet();
+            }
+        });
+    }
+}
@@ -0,0 +1,67 @@
+package com.pebblepost.todo;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Reads to-do items through a forward-only JDBC cursor.
+ * 
+ * Unlike {@link TodoRepository}, this doesn't create entities, or put them in
+ * the persistence context, so memory use doesn't depend on the number of rows
+ * read.
+ */
+@Repository
+public class TodoCursorRepository {
+
+    private static final String SELECT_LIST_SQL = "SELECT id, destription, completed, version FROM todo WHERE list_id = ? ORDER BY id";
+
+    @FunctionalInterface
+    public interface RowHandler {
+        void handle(long id, String description, boolean completed, long version) throws IOException;
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final int fetchSize;
+
+    public TodoCursorRepository(JdbcTemplate jdbcTemplate, TodoProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.fetchSize = properties.getStreaming().getFetchSize();
+    }
+
+    // Some drivers (e.g., PostgreSQL's) only honor the fetch size with
+    // auto-commit off, so we read inside a transaction.
+    @Transactional(readOnly = true)
+    public void forEach(String listId, RowHandler handler) {
+        RowCallbackHandler rowCallbackHandler = (ResultSet resultSet) -> {
+            try {
+                handler.handle(
+                        resultSet.getLong(1),
+                        resultSet.getString(2),
+                        resultSet.getBoolean(3),
+                        resultSet.getLong(4));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+
+        jdbcTemplate.query(
+                connection -> {
+                    PreparedStatement statement = connection.prepareStatement(
+                            SELECT_LIST_SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+
+                    statement.setString(1, listId);
+                    statement.setFetchSize(fetchSize);
+
+                    return statement;
+                },
+                rowCallbackHandler);
+    }
+}
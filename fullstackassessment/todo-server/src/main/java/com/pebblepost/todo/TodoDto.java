@@ -8,62 +8,33 @@ public class TodoDto {
 
     private boolean completed;
 
+    private Long version;
+
     private TodoDto() {
     }
 
-    private TodoDto(Long id, String description, boolean completed) {
+    private TodoDto(Long id, String description, boolean completed, Long version) {
         this.id = id;
         this.description = description;
         this.completed = completed;
+        this.version = version;
     }
 
+    /**
+     * Copies an item for a response.
+     * 
+     * This runs once per item in every list response, so it calls the
+     * constructor directly, rather than going through a builder.
+     */
     public static TodoDto fromEntity(Todo todo) {
-        return TodoDto.builder()
-                .setId(todo.getId())
-                .setDescription(todo.getDescription())
-                .setCompleted(todo.getCompleted())
-                .build();
+        return new TodoDto(todo.getId(), todo.getDescription(), todo.getCompleted(), todo.getVersion());
     }
 
+    /**
+     * Copies a request body into an item without a list.
+     */
     public static Todo toEntity(TodoDto dto) {
-        return Todo.builder()
-                .setNullableId(dto.getId())
-                .setDescription(dto.getDescription())
-                .setCompleted(dto.getCompleted())
-                .build();
-    }
-
-    private static Builder builder() {
-        return new Builder();
-    }
-
-    private static class Builder {
-        private Long id;
-        private String description;
-        private boolean completed = false;
-
-        public Builder setId(Long value) {
-            this.id = value;
-
-            return this;
-        }
-
-        public Builder setDescription(String value) {
-            this.description = value;
-
-            return this;
-        }
-
-        public Builder setCompleted(boolean value) {
-            this.completed = value;
-
-            return this;
-        }
-
-        public TodoDto build() {
-            return new TodoDto(this.id, this.description, this.completed);
-        }
-
+        return new Todo(dto.getId(), null, dto.getDescription(), dto.getCompleted());
     }
 
     public Long getId() {
@@ -89,4 +60,12 @@ public class TodoDto {
     public void setCompleted(boolean value) {
         this.completed = value;
     }
+
+    public Long getVersion() {
+        return this.version;
+    }
+
+    public void setVersion(Long value) {
+        this.version = value;
+    }
 }
@@ -0,0 +1,111 @@
+package com.pebblepost.todo;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * A change to one item, as pushed to clients by {@link TodoEventBroadcaster}.
+ * 
+ * Fields that weren't changed, or aren't known, are {@code null}. Patches are
+ * written without loading the item, so their events only carry the patched
+ * fields, and the new version.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TodoEvent {
+
+    public enum Type {
+        @JsonProperty("created")
+        CREATED,
+        @JsonProperty("updated")
+        UPDATED,
+        @JsonProperty("deleted")
+        DELETED,
+    }
+
+    private Type type;
+
+    private Long id;
+
+    private String description;
+
+    private Boolean completed;
+
+    private Long version;
+
+    private TodoEvent() {
+    }
+
+    private TodoEvent(Type type, Long id, String description, Boolean completed, Long version) {
+        this.type = type;
+        this.id = id;
+        this.description = description;
+        this.completed = completed;
+        this.version = version;
+    }
+
+    public static TodoEvent fromChange(TodoChangedEvent event) {
+        Todo current = event.getCurrent();
+
+        switch (event.getType()) {
+            case CREATED:
+                return new TodoEvent(
+                        Type.CREATED, current.getId(), current.getDescription(), current.getCompleted(),
+                        current.getVersion());
+            case UPDATED:
+                return new TodoEvent(
+                        Type.UPDATED, current.getId(), current.getDescription(), current.getCompleted(),
+                        current.getVersion());
+            default:
+                return new TodoEvent(Type.DELETED, event.getId(), null, null, null);
+        }
+    }
+
+    public static TodoEvent fromPatch(TodoPatchedEvent event) {
+        return new TodoEvent(Type.UPDATED, event.getId(), event.getDescription(), event.getCompleted(),
+                event.getVersion());
+    }
+
+    /**
+     * Combines this event with a later event for the same item into one that
+     * has the same effect on a client, or returns {@code null} if the two
+     * cancel out.
+     */
+    public TodoEvent coalesce(TodoEvent next) {
+        if (next.type == Type.DELETED) {
+            // A client that never saw the item doesn't need to hear about it.
+            return type == Type.CREATED ? null : next;
+        }
+        if (type == Type.DELETED || next.type == Type.CREATED) {
+            return next;
+        }
+
+        // Later fields win, and fields the later event didn't set keep their
+        // earlier values.
+        return new TodoEvent(
+                type,
+                id,
+                next.description != null ? next.description : description,
+                next.completed != null ? next.completed : completed,
+                next.version);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public Boolean getCompleted() {
+        return completed;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,297 @@
+package com.pebblepost.todo;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Pushes item changes to clients subscribed to a list, as server-sent events.
+ * 
+ * Changes are handed to subscribers without blocking the writer: each
+ * subscriber has a queue of pending events, which a small pool of dispatch
+ * threads drains to the client. When events for an item arrive faster than a
+ * client reads them, they're combined into one, so a subscriber's queue holds
+ * at most one event per item. Subscribers whose queue still grows past
+ * {@link TodoProperties.Events#getMaxPending()} are disconnected.
+ * 
+ * Sends block while a client's connection is full, so a client that stops
+ * reading would hold on to a dispatch thread until the server's write timeout
+ * closes its connection. Once a send takes longer than
+ * {@link TodoProperties.Events#getSendTimeoutMs()}, the subscriber is
+ * disconnected, and another thread takes the stuck one's place until it's
+ * released, so that other subscribers keep getting their events.
+ * 
+ * Bulk changes don't say which items changed, so every subscriber to the list
+ * is disconnected, and reloads the list when it reconnects.
+ */
+@Component
+public class TodoEventBroadcaster {
+
+    private final TodoProperties.Events properties;
+
+    private final ThreadPoolExecutor dispatcher;
+
+    // Watches for sends that take too long.
+    private final ScheduledExecutorService watchdog;
+
+    // Guarded by `this`. Dispatch threads stuck sending to dropped subscribers,
+    // which the pool has extra threads in place of.
+    private int stuckThreads = 0;
+
+    private final ConcurrentMap<String, Set<Subscriber>> subscribersByListId = new ConcurrentHashMap<>();
+
+    public TodoEventBroadcaster(TodoProperties properties) {
+        this.properties = properties.getEvents();
+        this.dispatcher = new ThreadPoolExecutor(
+                this.properties.getDispatchThreads(), this.properties.getDispatchThreads(),
+                0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new CustomizableThreadFactory("todo-events-"));
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(
+                new CustomizableThreadFactory("todo-events-watchdog-"));
+    }
+
+    public SseEmitter subscribe(String listId) {
+        Subscriber subscriber = new Subscriber(listId, new SseEmitter(properties.getTimeoutMs()));
+
+        subscriber.emitter.onCompletion(() -> unsubscribe(subscriber));
+        subscriber.emitter.onError(e -> unsubscribe(subscriber));
+        subscriber.emitter.onTimeout(subscriber.emitter::complete);
+        subscribersByListId.computeIfAbsent(listId, key -> ConcurrentHashMap.newKeySet()).add(subscriber);
+
+        return subscriber.emitter;
+    }
+
+    public int getSubscriberCount(String listId) {
+        Set<Subscriber> subscribers = subscribersByListId.get(listId);
+
+        return subscribers != null ? subscribers.size() : 0;
+    }
+
+    // Clients shouldn't hear about changes that get rolled back, so we wait
+    // for the transaction to commit.
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTodoChanged(TodoChangedEvent event) {
+        broadcast(event.getListId(), TodoEvent.fromChange(event));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTodoPatched(TodoPatchedEvent event) {
+        broadcast(event.getListId(), TodoEvent.fromPatch(event));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTodoBulkChanged(TodoBulkChangedEvent event) {
+        Set<Subscriber> subscribers = subscribersByListId.get(event.getListId());
+
+        if (subscribers != null) {
+            subscribers.forEach(Subscriber::drop);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.shutdownNow();
+        watchdog.shutdownNow();
+    }
+
+    private void broadcast(String listId, TodoEvent event) {
+        Set<Subscriber> subscribers = subscribersByListId.get(listId);
+
+        if (subscribers != null) {
+            subscribers.forEach(subscriber -> subscriber.offer(event));
+        }
+    }
+
+    // Grows the pool when a dispatch thread gets stuck, and shrinks it back
+    // once the thread is released.
+    private synchronized void resizeDispatcher(int stuckThreadsDelta) {
+        stuckThreads += stuckThreadsDelta;
+
+        int size = properties.getDispatchThreads() + stuckThreads;
+
+        // The maximum size can't be smaller than the core size.
+        if (stuckThreadsDelta > 0) {
+            dispatcher.setMaximumPoolSize(size);
+            dispatcher.setCorePoolSize(size);
+        } else {
+            dispatcher.setCorePoolSize(size);
+            dispatcher.setMaximumPoolSize(size);
+        }
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        subscribersByListId.computeIfPresent(subscriber.listId, (key, subscribers) -> {
+            subscribers.remove(subscriber);
+
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+    }
+
+    private class Subscriber implements Runnable {
+
+        private final String listId;
+
+        private final SseEmitter emitter;
+
+        // Pending events by item ID, in the order items first changed.
+        private Map<Long, TodoEvent> pending = new LinkedHashMap<>();
+
+        private boolean dispatching;
+
+        private boolean dropped;
+
+        // Whether the running dispatch took too long to send, and the pool
+        // has grown to make up for it.
+        private boolean stuck;
+
+        Subscriber(String listId, SseEmitter emitter) {
+            this.listId = listId;
+            this.emitter = emitter;
+        }
+
+        void offer(TodoEvent event) {
+            boolean drop;
+
+            synchronized (this) {
+                if (dropped) {
+                    return;
+                }
+
+                pending.merge(event.getId(), event, TodoEvent::coalesce);
+                drop = pending.size() > properties.getMaxPending();
+                if (drop) {
+                    dropped = true;
+                    pending.clear();
+                }
+            }
+
+            if (drop) {
+                unsubscribe(this);
+            }
+            dispatch();
+        }
+
+        void drop() {
+            synchronized (this) {
+                if (dropped) {
+                    return;
+                }
+
+                dropped = true;
+                pending.clear();
+            }
+
+            unsubscribe(this);
+            dispatch();
+        }
+
+        // Starts a dispatch, unless one is running already. The running one
+        // picks up new events, or closes the stream if we're dropping the
+        // subscriber.
+        private void dispatch() {
+            synchronized (this) {
+                if (dispatching) {
+                    return;
+                }
+                dispatching = true;
+            }
+
+            dispatcher.execute(this);
+        }
+
+        // Called by the watchdog when a send takes too long.
+        private void expire() {
+            synchronized (this) {
+                if (!dispatching || stuck) {
+                    return;
+                }
+
+                stuck = true;
+                dropped = true;
+                pending.clear();
+                resizeDispatcher(1);
+            }
+
+            // The emitter is locked while the stuck send runs, so the stream
+            // is closed by the dispatch thread once it's released.
+            unsubscribe(this);
+        }
+
+        private void release() {
+            synchronized (this) {
+                if (stuck) {
+                    stuck = false;
+                    resizeDispatcher(-1);
+                }
+            }
+        }
+
+        /**
+         * Sends pending events until there are none left.
+         * 
+         * Only one thread runs this for a subscriber at a time, so events
+         * reach the client in order.
+         */
+        @Override
+        public void run() {
+            while (true) {
+                Collection<TodoEvent> events;
+
+                synchronized (this) {
+                    if (dropped) {
+                        break;
+                    }
+                    if (pending.isEmpty()) {
+                        dispatching = false;
+
+                        return;
+                    }
+                    events = pending.values();
+                    pending = new LinkedHashMap<>();
+                }
+
+                ScheduledFuture<?> deadline = watchdog.schedule(
+                        this::expire, properties.getSendTimeoutMs(), TimeUnit.MILLISECONDS);
+
+                try {
+                    for (TodoEvent event : events) {
+                        emitter.send(SseEmitter.event()
+                                .name(event.getType().name().toLowerCase())
+                                .data(event, MediaType.APPLICATION_JSON));
+                    }
+                } catch (IOException | IllegalStateException e) {
+                    // The client went away, or the stream was already closed.
+                    unsubscribe(this);
+
+                    return;
+                } finally {
+                    deadline.cancel(false);
+                    release();
+                }
+            }
+
+            // Closing the stream lets the client reconnect and reload the list.
+            unsubscribe(this);
+            emitter.complete();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.pebblepost.todo;
+
+import java.io.Serializable;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.enhanced.Optimizer;
+import org.hibernate.id.enhanced.OptimizerFactory;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.id.enhanced.StandardOptimizerDescriptor;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+/**
+ * Generates IDs from a database sequence, with the number of the shard
+ * they're created on in their top bits.
+ * 
+ * Each shard has its own sequence, so blocks of IDs reserved from one shard's
+ * sequence are only handed out for rows created on that shard.
+ * 
+ * @see TodoShardRouter#encodeId(int, long)
+ */
+public class TodoIdGenerator extends SequenceStyleGenerator {
+
+    private final ConcurrentMap<Integer, Optimizer> optimizers = new ConcurrentHashMap<Integer, Optimizer>();
+
+    private Class<?> returnedClass;
+
+    private int incrementSize;
+
+    private int initialValue;
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        super.configure(type, params, serviceRegistry);
+        this.returnedClass = type.getReturnedClass();
+        this.incrementSize = determineIncrementSize(params);
+        this.initialValue = determineInitialValue(params);
+    }
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) {
+        int shard = TodoShardRouter.currentShard();
+        Optimizer optimizer = optimizers.computeIfAbsent(shard, key -> OptimizerFactory.buildOptimizer(
+                incrementSize > 1
+                        ? StandardOptimizerDescriptor.POOLED.getExternalName()
+                        : StandardOptimizerDescriptor.NONE.getExternalName(),
+                returnedClass,
+                incrementSize,
+                initialValue));
+        Number localId = (Number) optimizer.generate(getDatabaseStructure().buildCallback(session));
+
+        return TodoShardRouter.encodeId(shard, localId.longValue());
+    }
+}
@@ -0,0 +1,81 @@
+package com.pebblepost.todo;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Slice;
+
+/**
+ * Stores items outside the database, for the storage engines other than JPA.
+ * 
+ * When a store is present, {@link TodoService} reads and writes items through
+ * it instead of {@link TodoRepository}, and publishes the changes it returns.
+ * Lists, and the change feed, stay in the database.
+ * 
+ * @see TodoProperties.Storage#getEngine()
+ */
+public interface TodoItemStore {
+
+    /**
+     * Creates a new item in a list.
+     * 
+     * @throws DataIntegrityViolationException if the list doesn't exist
+     */
+    TodoChangedEvent create(String listId, String description, boolean completed);
+
+    Optional<Todo> find(String listId, long id);
+
+    List<Todo> findByListId(String listId);
+
+    /**
+     * Returns up to {@code limit} items with IDs greater than {@code afterId},
+     * in ascending ID order.
+     */
+    Slice<Todo> findAfter(String listId, long afterId, int limit);
+
+    List<Todo> findByIds(String listId, Collection<Long> ids);
+
+    /**
+     * Passes every item to {@code handler}, in ascending ID order.
+     * 
+     * Items changed in the meantime may be passed in their latest state, and
+     * deleted ones skipped.
+     */
+    void forEach(String listId, TodoCursorRepository.RowHandler handler);
+
+    /**
+     * Sets the non-{@code null} fields of an item, and increments its version.
+     * 
+     * @param expectedVersion if not {@code null}, only update the item if
+     *                        it's at this version
+     * @return the change, or nothing if the item doesn't exist
+     * @throws OptimisticLockingFailureException if the item isn't at
+     *                                           {@code expectedVersion}
+     */
+    Optional<TodoChangedEvent> update(
+            String listId, long id, String description, Boolean completed, Long expectedVersion);
+
+    /**
+     * Replaces the fields of an item, and increments its version.
+     * 
+     * @return the change, or nothing if the item doesn't exist
+     */
+    Optional<TodoChangedEvent> replace(String listId, long id, String description, boolean completed);
+
+    /**
+     * Deletes an item.
+     * 
+     * @return the change, or nothing if the item doesn't exist
+     */
+    Optional<TodoChangedEvent> delete(String listId, long id);
+
+    /**
+     * Returns the number of active and completed items of each list, in that
+     * order.
+     */
+    Map<String, long[]> countByListIdAndCompleted();
+}
@@ -0,0 +1,61 @@
+package com.pebblepost.todo;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.validation.constraints.Size;
+
+/**
+ * A to-do list that can be shared by several users.
+ * 
+ * Lists get random IDs, so that knowing a list's ID is what lets someone see
+ * and change it.
+ */
+@Entity
+public class TodoList {
+    /**
+     * The ID of the list served under {@code /todos}, which always exists.
+     */
+    public final static String DEFAULT_ID = "default";
+
+    public final static int MAX_NAME_LENGTH_CH = 256;
+
+    @Id
+    private String id;
+
+    @Size(min = 0, max = MAX_NAME_LENGTH_CH)
+    private String name = "";
+
+    /**
+     * The highest change sequence number that compaction has dropped a
+     * deletion for.
+     * 
+     * @see TodoChangeLog
+     */
+    @Column(nullable = false)
+    private long changeHorizon;
+
+    public TodoList() {
+    }
+
+    public TodoList(String id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getChangeHorizon() {
+        return changeHorizon;
+    }
+
+    void setChangeHorizon(long value) {
+        this.changeHorizon = value;
+    }
+}
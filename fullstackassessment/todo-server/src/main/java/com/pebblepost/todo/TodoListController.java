@@ -0,0 +1,46 @@
+package com.pebblepost.todo;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import javassist.NotFoundException;
+
+/**
+ * Creates lists that can be shared.
+ * 
+ * A list's items are served by {@link TodoController} under
+ * {@code /lists/{listId}/todos}.
+ */
+@RestController()
+@RequestMapping("/lists")
+public class TodoListController {
+
+    private final TodoListService todoListService;
+
+    public TodoListController(TodoListService todoListService) {
+        this.todoListService = todoListService;
+    }
+
+    @PostMapping
+    @ResponseStatus(HttpStatus.CREATED)
+    public TodoListDto create(@RequestBody TodoListDto createDto) {
+        return TodoListDto.fromEntity(todoListService.createList(createDto.getName()));
+    }
+
+    @GetMapping("/{listId}")
+    public TodoListDto getOne(@PathVariable("listId") String listId) {
+        try {
+            return TodoListDto.fromEntity(todoListService.getList(listId));
+        } catch (NotFoundException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+                    String.format("To-do list with ID %s not found!", listId));
+        }
+    }
+}
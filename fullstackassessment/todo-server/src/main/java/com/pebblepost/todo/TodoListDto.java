@@ -0,0 +1,36 @@
+package com.pebblepost.todo;
+
+public class TodoListDto {
+
+    private String id;
+
+    private String name;
+
+    private TodoListDto() {
+    }
+
+    private TodoListDto(String id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    public static TodoListDto fromEntity(TodoList list) {
+        return new TodoListDto(list.getId(), list.getName());
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String value) {
+        this.id = value;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String value) {
+        this.name = value;
+    }
+}
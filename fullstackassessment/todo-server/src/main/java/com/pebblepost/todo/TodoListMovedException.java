@@ -0,0 +1,19 @@
+package com.pebblepost.todo;
+
+import org.springframework.dao.TransientDataAccessException;
+
+/**
+ * Thrown when a write finds that its list moved to another shard after the
+ * write was routed to the list's previous one.
+ * 
+ * Nothing was written, so {@link TodoShardAspect} retries the call on the new
+ * shard.
+ */
+public class TodoListMovedException extends TransientDataAccessException {
+
+    private static final long serialVersionUID = 1L;
+
+    public TodoListMovedException(String listId) {
+        super(String.format("Todo list with ID %s has moved to another shard!", listId));
+    }
+}
@@ -0,0 +1,15 @@
+package com.pebblepost.todo;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface TodoListRepository extends JpaRepository<TodoList, String> {
+
+    @Modifying
+    @Query("UPDATE TodoList l SET l.changeHorizon = :seq WHERE l.id = :id AND l.changeHorizon < :seq")
+    int raiseChangeHorizon(@Param("id") String id, @Param("seq") long seq);
+}
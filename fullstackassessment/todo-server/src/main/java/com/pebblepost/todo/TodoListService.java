@@ -0,0 +1,48 @@
+package com.pebblepost.todo;
+
+import java.util.UUID;
+import javassist.NotFoundException;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.stereotype.Service;
+
+@Service
+public class TodoListService implements SmartInitializingSingleton {
+
+    private final TodoListRepository todoListRepository;
+
+    private final TodoShardRouter shardRouter;
+
+    public TodoListService(TodoListRepository todoListRepository, TodoShardRouter shardRouter) {
+        this.todoListRepository = todoListRepository;
+        this.shardRouter = shardRouter;
+    }
+
+    /**
+     * Creates the default list, before the application starts serving
+     * requests.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        TodoShardRouter.runOnShard(shardRouter.shardFor(TodoList.DEFAULT_ID), () -> {
+            if (!todoListRepository.existsById(TodoList.DEFAULT_ID)) {
+                todoListRepository.saveAndFlush(new TodoList(TodoList.DEFAULT_ID, ""));
+            }
+        });
+    }
+
+    public TodoList createList(String name) {
+        String id = UUID.randomUUID().toString();
+
+        return TodoShardRouter.callOnShard(
+                shardRouter.ownerOf(id), () -> todoListRepository.saveAndFlush(new TodoList(id, name)));
+    }
+
+    public TodoList getList(String id) throws NotFoundException {
+        return todoListRepository
+                .findById(id)
+                .orElseThrow(
+                        () -> new NotFoundException(
+                                String.format("Todo list with ID %s not found in repository!", id)));
+    }
+}
@@ -0,0 +1,890 @@
+package com.pebblepost.todo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Stores items in a memory-mapped, append-only log, instead of the
+ * {@code todo} table.
+ * 
+ * This is enabled by setting {@code todo.storage.engine} to
+ * {@code mapped-log}, and {@link TodoService} then reads and writes items
+ * here, through {@link TodoItemStore}.
+ * 
+ * Every write appends a record with the item's new state, or a tombstone, to
+ * the log. An in-memory index maps item IDs to the offset of their latest
+ * record, so reads decode a single record, and writes don't touch any other
+ * record. Writes are in the operating system's page cache once they return,
+ * so they survive the application crashing. With
+ * {@link TodoProperties.Storage#getSyncOnWrite()}, they're also forced to
+ * disk before returning.
+ * 
+ * The index is saved to a snapshot periodically, and on shutdown. On
+ * startup, the snapshot is loaded, and only the log written after it is
+ * replayed. A record that was only partly written when the process died
+ * fails its checksum, and the log is truncated before it. Once superseded
+ * records take up more than
+ * {@link TodoProperties.Storage#getCompactionThreshold()} of the log, live
+ * records are copied into a new log in the background, which then replaces
+ * the old one. A compacted log starts with a record of the next item ID, so
+ * that the IDs of items whose records were dropped aren't handed out again,
+ * even if the snapshot is lost.
+ * 
+ * A log is mapped as a single buffer, so it can't grow past 2 GiB.
+ */
+@Component
+@ConditionalOnProperty(prefix = "todo.storage", name = "engine", havingValue = "mapped-log")
+public class TodoLogStore implements TodoItemStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(TodoLogStore.class);
+
+    private static final byte PUT = 1;
+
+    private static final byte DELETE = 2;
+
+    // Carries the next item ID in place of an item ID, and no item.
+    private static final byte NEXT_ID = 3;
+
+    // Each record starts with the length of its body, and the body's
+    // checksum.
+    private static final int HEADER_BYTES = 8;
+
+    private static final int SNAPSHOT_MAGIC = 0x54444c53;
+
+    private static final String SNAPSHOT_FILE = "index.snapshot";
+
+    private static final Pattern LOG_FILE = Pattern.compile("todo-(\\d+)\\.log");
+
+    private static class Record {
+        byte type;
+
+        long id;
+
+        long version;
+
+        boolean completed;
+
+        String listId;
+
+        String description;
+
+        Todo toTodo() {
+            return new Todo(id, listId, description, completed, version);
+        }
+    }
+
+    private static class Snapshot {
+        int generation;
+
+        int position;
+
+        long nextId;
+
+        long[] ids;
+
+        int[] offsets;
+    }
+
+    private final TodoListRepository todoListRepository;
+
+    private final TodoProperties.Storage properties;
+
+    private final Path directory;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Snapshots and compactions can't overlap.
+    private final Object maintenanceLock = new Object();
+
+    // Everything below is guarded by `lock`.
+
+    private int generation;
+
+    private FileChannel channel;
+
+    private MappedByteBuffer log;
+
+    // Where the next record goes.
+    private int position;
+
+    private Map<Long, Integer> offsets = new HashMap<Long, Integer>();
+
+    private final Map<String, NavigableSet<Long>> idsByListId = new HashMap<String, NavigableSet<Long>>();
+
+    private long nextId = 1;
+
+    // The size of the records that `offsets` points to.
+    private long liveBytes;
+
+    public TodoLogStore(TodoListRepository todoListRepository, TodoProperties properties) {
+        this.todoListRepository = todoListRepository;
+        this.properties = properties.getStorage();
+        this.directory = Paths.get(this.properties.getDirectory());
+    }
+
+    /**
+     * Opens the log, and recovers the index from the latest snapshot and the
+     * log written after it.
+     */
+    @PostConstruct
+    public void open() throws IOException {
+        Files.createDirectories(directory);
+
+        Snapshot snapshot = readSnapshot();
+
+        lock.writeLock().lock();
+        try {
+            generation = snapshot != null ? snapshot.generation : latestGeneration();
+            channel = FileChannel.open(
+                    logPath(generation),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            log = channel.map(
+                    FileChannel.MapMode.READ_WRITE, 0, Math.max(channel.size(), properties.getInitialSizeBytes()));
+
+            int replayFrom = 0;
+
+            if (snapshot != null) {
+                for (int i = 0; i < snapshot.ids.length; i++) {
+                    Record record = readRecord(log, snapshot.offsets[i]);
+
+                    if (record == null) {
+                        throw new IllegalStateException(String.format(
+                                "The snapshot points to a missing record at offset %s!", snapshot.offsets[i]));
+                    }
+                    apply(record, snapshot.offsets[i]);
+                }
+                nextId = Math.max(nextId, snapshot.nextId);
+                replayFrom = snapshot.position;
+            }
+            replay(replayFrom);
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        deleteOtherGenerations();
+        if (snapshot == null) {
+            snapshot();
+        }
+        logger.info("Opened log generation {} with {} items.", generation, offsets.size());
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        snapshot();
+
+        lock.writeLock().lock();
+        try {
+            log.force();
+            channel.close();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public TodoChangedEvent create(String listId, String description, boolean completed) {
+        checkListExists(listId);
+
+        lock.writeLock().lock();
+        try {
+            long id = nextId++;
+            Todo created = new Todo(id, listId, description, completed, 0);
+
+            append(PUT, created);
+
+            return TodoChangedEvent.created(created);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Optional<Todo> find(String listId, long id) {
+        lock.readLock().lock();
+        try {
+            return Optional.ofNullable(findLocked(listId, id));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Todo> findByListId(String listId) {
+        return findAfter(listId, 0, Integer.MAX_VALUE).getContent();
+    }
+
+    @Override
+    public Slice<Todo> findAfter(String listId, long afterId, int limit) {
+        List<Todo> items = new ArrayList<Todo>(Math.min(limit, 1024));
+        boolean hasNext = false;
+
+        lock.readLock().lock();
+        try {
+            NavigableSet<Long> ids = idsByListId.get(listId);
+
+            if (ids != null) {
+                for (Long id : ids.tailSet(afterId, false)) {
+                    if (items.size() == limit) {
+                        hasNext = true;
+                        break;
+                    }
+                    items.add(readRecord(log, offsets.get(id)).toTodo());
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return new SliceImpl<Todo>(items, PageRequest.of(0, Math.max(limit, 1), Sort.by("id")), hasNext);
+    }
+
+    @Override
+    public List<Todo> findByIds(String listId, Collection<Long> ids) {
+        List<Todo> items = new ArrayList<Todo>(ids.size());
+
+        lock.readLock().lock();
+        try {
+            for (Long id : ids) {
+                Todo item = findLocked(listId, id);
+
+                if (item != null) {
+                    items.add(item);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return items;
+    }
+
+    // The lock isn't held while `handler` runs, so a slow client doesn't hold
+    // up writers.
+    @Override
+    public void forEach(String listId, TodoCursorRepository.RowHandler handler) {
+        List<Long> ids;
+
+        lock.readLock().lock();
+        try {
+            NavigableSet<Long> listIds = idsByListId.get(listId);
+
+            ids = listIds != null ? new ArrayList<Long>(listIds) : new ArrayList<Long>();
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        for (Long id : ids) {
+            Optional<Todo> item = find(listId, id);
+
+            if (item.isPresent()) {
+                try {
+                    handler.handle(
+                            id, item.get().getDescription(), item.get().getCompleted(), item.get().getVersion());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public Optional<TodoChangedEvent> update(
+            String listId, long id, String description, Boolean completed, Long expectedVersion) {
+        return write(listId, id, description, completed, expectedVersion, true);
+    }
+
+    @Override
+    public Optional<TodoChangedEvent> replace(String listId, long id, String description, boolean completed) {
+        return write(listId, id, description, completed, null, false);
+    }
+
+    @Override
+    public Optional<TodoChangedEvent> delete(String listId, long id) {
+        lock.writeLock().lock();
+        try {
+            Todo previous = findLocked(listId, id);
+
+            if (previous == null) {
+                return Optional.empty();
+            }
+            append(DELETE, previous);
+
+            return Optional.of(TodoChangedEvent.deleted(previous));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Optional<TodoChangedEvent> write(
+            String listId, long id, String description, Boolean completed, Long expectedVersion,
+            boolean keepNullFields) {
+        lock.writeLock().lock();
+        try {
+            Todo previous = findLocked(listId, id);
+
+            if (previous == null) {
+                return Optional.empty();
+            }
+            if (expectedVersion != null && expectedVersion != previous.getVersion()) {
+                throw new OptimisticLockingFailureException(String.format(
+                        "Todo with ID %s is no longer at version %s!", id, expectedVersion));
+            }
+
+            Todo current = new Todo(
+                    id,
+                    listId,
+                    description != null || !keepNullFields ? description : previous.getDescription(),
+                    completed != null ? completed : previous.getCompleted(),
+                    previous.getVersion() + 1);
+
+            append(PUT, current);
+
+            return Optional.of(TodoChangedEvent.updated(previous, current));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<String, long[]> countByListIdAndCompleted() {
+        Map<String, long[]> counts = new HashMap<String, long[]>();
+
+        lock.readLock().lock();
+        try {
+            for (Integer offset : offsets.values()) {
+                Record record = readRecord(log, offset);
+
+                counts.computeIfAbsent(record.listId, listId -> new long[2])[record.completed ? 1 : 0]++;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return counts;
+    }
+
+    /**
+     * Saves the index, so that recovery can skip the log written so far.
+     */
+    @Scheduled(fixedDelayString = "${todo.storage.snapshot-interval-ms:60000}")
+    public void snapshot() throws IOException {
+        synchronized (maintenanceLock) {
+            Snapshot snapshot;
+            MappedByteBuffer snapshotLog;
+
+            lock.readLock().lock();
+            try {
+                snapshot = captureSnapshot();
+                snapshotLog = log;
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            // The snapshot can't point to records that could still be lost.
+            snapshotLog.force();
+            writeSnapshot(snapshot);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${todo.storage.compaction-interval-ms:60000}")
+    public void compactIfNeeded() throws IOException {
+        double deadFraction;
+
+        lock.readLock().lock();
+        try {
+            deadFraction = position == 0 ? 0 : 1 - (double) liveBytes / position;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (deadFraction > properties.getCompactionThreshold()) {
+            compact();
+        }
+    }
+
+    /**
+     * Copies live records into a new log, and replaces the current log with
+     * it.
+     * 
+     * Most of the copying happens without blocking writers. Records written
+     * in the meantime are copied over once writers are blocked, right before
+     * the switch.
+     */
+    public void compact() throws IOException {
+        synchronized (maintenanceLock) {
+            MappedByteBuffer source;
+            Map<Long, Integer> sourceOffsets;
+            int copiedUpTo;
+            long copiedNextId;
+            int targetGeneration;
+
+            lock.readLock().lock();
+            try {
+                source = log;
+                sourceOffsets = new HashMap<Long, Integer>(offsets);
+                copiedUpTo = position;
+                copiedNextId = nextId;
+                targetGeneration = generation + 1;
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            Path targetPath = logPath(targetGeneration);
+
+            Files.deleteIfExists(targetPath);
+
+            FileChannel targetChannel = FileChannel.open(
+                    targetPath, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            byte[] noListId = new byte[0];
+            int nextIdLength = bodyLength(noListId, null);
+            MappedByteBuffer target = targetChannel.map(
+                    FileChannel.MapMode.READ_WRITE, 0,
+                    Math.max(properties.getInitialSizeBytes(), HEADER_BYTES + nextIdLength + copiedUpTo));
+            Map<Long, Integer> targetOffsets = new HashMap<Long, Integer>(sourceOffsets.size() * 2);
+
+            // Records written in the meantime carry their own IDs, so the ID
+            // from before the copy is enough.
+            encode(target, 0, nextIdLength, NEXT_ID, copiedNextId, 0, false, noListId, null);
+
+            int targetPosition = HEADER_BYTES + nextIdLength;
+
+            // Copying in offset order keeps the copy sequential.
+            List<Map.Entry<Long, Integer>> entries = new ArrayList<Map.Entry<Long, Integer>>(sourceOffsets.entrySet());
+
+            entries.sort(Map.Entry.comparingByValue());
+            for (Map.Entry<Long, Integer> entry : entries) {
+                targetOffsets.put(entry.getKey(), targetPosition);
+                targetPosition += copyRecord(source, entry.getValue(), target, targetPosition);
+            }
+
+            Path sourcePath;
+
+            lock.writeLock().lock();
+            try {
+                // Tombstones are copied too, so that replaying the new log
+                // doesn't bring back items deleted in the meantime.
+                int sourcePosition = copiedUpTo;
+
+                while (sourcePosition < position) {
+                    Record record = readRecord(log, sourcePosition);
+                    int size = recordSize(log, sourcePosition);
+
+                    if (targetPosition + size > target.capacity()) {
+                        target = targetChannel.map(
+                                FileChannel.MapMode.READ_WRITE, 0, grownCapacity(target.capacity(), targetPosition + size));
+                    }
+                    if (record.type == DELETE) {
+                        targetOffsets.remove(record.id);
+                    } else if (record.type == PUT) {
+                        targetOffsets.put(record.id, targetPosition);
+                    }
+                    targetPosition += copyRecord(log, sourcePosition, target, targetPosition);
+                    sourcePosition += size;
+                }
+                target.force();
+
+                sourcePath = logPath(generation);
+                channel.close();
+                generation = targetGeneration;
+                channel = targetChannel;
+                log = target;
+                position = targetPosition;
+                offsets = targetOffsets;
+
+                // The snapshot has to switch to the new log before anything is
+                // written to it, or recovery would replay the old one.
+                writeSnapshot(captureSnapshot());
+            } finally {
+                lock.writeLock().unlock();
+            }
+
+            Files.deleteIfExists(sourcePath);
+            logger.info("Compacted the log from {} to {} bytes.", copiedUpTo, targetPosition);
+        }
+    }
+
+    private void checkListExists(String listId) {
+        if (!todoListRepository.existsById(listId)) {
+            // The same exception a missing list causes with the database.
+            throw new DataIntegrityViolationException(
+                    String.format("Todo list with ID %s doesn't exist!", listId));
+        }
+    }
+
+    // Has to be called with `lock` held.
+    private Todo findLocked(String listId, long id) {
+        Integer offset = offsets.get(id);
+
+        if (offset == null) {
+            return null;
+        }
+
+        Record record = readRecord(log, offset);
+
+        return record.listId.equals(listId) ? record.toTodo() : null;
+    }
+
+    // Has to be called with the write lock held.
+    private void append(byte type, Todo item) {
+        byte[] listId = item.getListId().getBytes(StandardCharsets.UTF_8);
+        byte[] description = item.getDescription() != null
+                ? item.getDescription().getBytes(StandardCharsets.UTF_8)
+                : null;
+        int length = bodyLength(listId, description);
+
+        if (position + HEADER_BYTES + length > log.capacity()) {
+            grow(position + HEADER_BYTES + length);
+        }
+
+        int offset = position;
+
+        encode(
+                log, offset, length, type, item.getId(), item.getVersion(), item.getCompleted(),
+                listId, description);
+        position = offset + HEADER_BYTES + length;
+
+        Record record = new Record();
+
+        record.type = type;
+        record.id = item.getId();
+        record.listId = item.getListId();
+        apply(record, offset);
+
+        if (properties.getSyncOnWrite()) {
+            log.force();
+        }
+    }
+
+    private static int bodyLength(byte[] listId, byte[] description) {
+        return 1 + 8 + 8 + 1 + 2 + listId.length + 4 + (description != null ? description.length : 0);
+    }
+
+    // Writes a record with a body of `length` bytes at `offset`.
+    private static void encode(
+            ByteBuffer target, int offset, int length, byte type, long id, long version, boolean completed,
+            byte[] listId, byte[] description) {
+        ByteBuffer body = target.duplicate();
+
+        body.position(offset + HEADER_BYTES);
+        body.put(type)
+                .putLong(id)
+                .putLong(version)
+                .put((byte) (completed ? 1 : 0))
+                .putShort((short) listId.length)
+                .put(listId);
+        if (description != null) {
+            body.putInt(description.length).put(description);
+        } else {
+            body.putInt(-1);
+        }
+
+        target.putInt(offset + 4, checksum(target, offset + HEADER_BYTES, length));
+        // The length goes in last, so that recovery can't find a record with
+        // a length but without its body.
+        target.putInt(offset, length);
+    }
+
+    // Has to be called with the write lock held.
+    private void grow(int requiredCapacity) {
+        try {
+            log = channel.map(FileChannel.MapMode.READ_WRITE, 0, grownCapacity(log.capacity(), requiredCapacity));
+        } catch (IOException e) {
+            throw new IllegalStateException("Couldn't grow the log!", e);
+        }
+    }
+
+    private static long grownCapacity(int capacity, int requiredCapacity) {
+        // The required capacity overflows once the log would pass 2 GiB.
+        if (requiredCapacity < 0) {
+            throw new IllegalStateException("The log is full!");
+        }
+
+        return Math.min(Integer.MAX_VALUE, Math.max((long) capacity * 2, requiredCapacity));
+    }
+
+    // Applies a record at `offset` to the index. Has to be called with the
+    // write lock held.
+    private void apply(Record record, int offset) {
+        if (record.type == NEXT_ID) {
+            nextId = Math.max(nextId, record.id);
+
+            return;
+        }
+
+        Integer previousOffset = record.type == DELETE ? offsets.remove(record.id) : offsets.put(record.id, offset);
+
+        if (previousOffset != null) {
+            liveBytes -= recordSize(log, previousOffset);
+        }
+        if (record.type == DELETE) {
+            NavigableSet<Long> ids = idsByListId.get(record.listId);
+
+            if (ids != null) {
+                ids.remove(record.id);
+                if (ids.isEmpty()) {
+                    idsByListId.remove(record.listId);
+                }
+            }
+        } else {
+            liveBytes += recordSize(log, offset);
+            idsByListId.computeIfAbsent(record.listId, listId -> new TreeSet<Long>()).add(record.id);
+        }
+        nextId = Math.max(nextId, record.id + 1);
+    }
+
+    // Replays the log from `from` until it runs out of complete records.
+    private void replay(int from) {
+        int offset = from;
+        Record record;
+
+        while ((record = readRecord(log, offset)) != null) {
+            apply(record, offset);
+            offset += recordSize(log, offset);
+        }
+
+        if (offset + 4 <= log.capacity() && log.getInt(offset) != 0) {
+            logger.warn("Truncating the log at a partly written record at offset {}.", offset);
+            for (int i = offset; i < log.capacity(); i++) {
+                log.put(i, (byte) 0);
+            }
+        }
+        position = offset;
+    }
+
+    /**
+     * Decodes the record at {@code offset}, or returns {@code null} if there's
+     * no complete record there.
+     */
+    private static Record readRecord(ByteBuffer log, int offset) {
+        if (offset + HEADER_BYTES > log.capacity()) {
+            return null;
+        }
+
+        int length = log.getInt(offset);
+
+        if (length <= 0 || offset + HEADER_BYTES + length > log.capacity()
+                || checksum(log, offset + HEADER_BYTES, length) != log.getInt(offset + 4)) {
+            return null;
+        }
+
+        ByteBuffer body = log.duplicate();
+        Record record = new Record();
+
+        body.position(offset + HEADER_BYTES);
+        record.type = body.get();
+        record.id = body.getLong();
+        record.version = body.getLong();
+        record.completed = body.get() != 0;
+
+        byte[] listId = new byte[body.getShort()];
+
+        body.get(listId);
+        record.listId = new String(listId, StandardCharsets.UTF_8);
+
+        int descriptionLength = body.getInt();
+
+        if (descriptionLength >= 0) {
+            byte[] description = new byte[descriptionLength];
+
+            body.get(description);
+            record.description = new String(description, StandardCharsets.UTF_8);
+        }
+
+        return record;
+    }
+
+    private static int recordSize(ByteBuffer log, int offset) {
+        return HEADER_BYTES + log.getInt(offset);
+    }
+
+    private static int copyRecord(ByteBuffer source, int sourceOffset, ByteBuffer target, int targetOffset) {
+        int size = recordSize(source, sourceOffset);
+        ByteBuffer record = source.duplicate();
+        ByteBuffer destination = target.duplicate();
+
+        record.position(sourceOffset).limit(sourceOffset + size);
+        destination.position(targetOffset);
+        destination.put(record);
+
+        return size;
+    }
+
+    private static int checksum(ByteBuffer log, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        ByteBuffer body = log.duplicate();
+
+        body.position(offset).limit(offset + length);
+        crc.update(body);
+
+        return (int) crc.getValue();
+    }
+
+    // Has to be called with `lock` held.
+    private Snapshot captureSnapshot() {
+        Snapshot snapshot = new Snapshot();
+        int i = 0;
+
+        snapshot.generation = generation;
+        snapshot.position = position;
+        snapshot.nextId = nextId;
+        snapshot.ids = new long[offsets.size()];
+        snapshot.offsets = new int[offsets.size()];
+        for (Map.Entry<Long, Integer> entry : offsets.entrySet()) {
+            snapshot.ids[i] = entry.getKey();
+            snapshot.offsets[i] = entry.getValue();
+            i++;
+        }
+
+        return snapshot;
+    }
+
+    // Writes to a temporary file first, so that a crash can't leave a partly
+    // written snapshot behind.
+    private void writeSnapshot(Snapshot snapshot) throws IOException {
+        Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+
+        try (FileChannel file = FileChannel.open(
+                temporary,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            CheckedOutputStream checked = new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(file)), new CRC32C());
+            DataOutputStream out = new DataOutputStream(checked);
+
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(snapshot.generation);
+            out.writeInt(snapshot.position);
+            out.writeLong(snapshot.nextId);
+            out.writeInt(snapshot.ids.length);
+            for (int i = 0; i < snapshot.ids.length; i++) {
+                out.writeLong(snapshot.ids[i]);
+                out.writeInt(snapshot.offsets[i]);
+            }
+            out.writeInt((int) checked.getChecksum().getValue());
+            out.flush();
+            file.force(true);
+        }
+        Files.move(
+                temporary, directory.resolve(SNAPSHOT_FILE),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Reads the latest snapshot, or returns {@code null} if there's none, or
+     * it can't be read.
+     */
+    private Snapshot readSnapshot() throws IOException {
+        try (InputStream file = Files.newInputStream(directory.resolve(SNAPSHOT_FILE))) {
+            CheckedInputStream checked = new CheckedInputStream(
+                    new BufferedInputStream(file), new CRC32C());
+            DataInputStream in = new DataInputStream(checked);
+            Snapshot snapshot = new Snapshot();
+
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                logger.warn("Ignoring a snapshot with an unknown format.");
+
+                return null;
+            }
+            snapshot.generation = in.readInt();
+            snapshot.position = in.readInt();
+            snapshot.nextId = in.readLong();
+            snapshot.ids = new long[in.readInt()];
+            snapshot.offsets = new int[snapshot.ids.length];
+            for (int i = 0; i < snapshot.ids.length; i++) {
+                snapshot.ids[i] = in.readLong();
+                snapshot.offsets[i] = in.readInt();
+            }
+
+            int expectedChecksum = (int) checked.getChecksum().getValue();
+
+            if (in.readInt() != expectedChecksum) {
+                logger.warn("Ignoring a snapshot that fails its checksum.");
+
+                return null;
+            }
+
+            return snapshot;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private Path logPath(int logGeneration) {
+        return directory.resolve(String.format("todo-%d.log", logGeneration));
+    }
+
+    private int latestGeneration() throws IOException {
+        int latest = 0;
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "todo-*.log")) {
+            for (Path file : files) {
+                Matcher matcher = LOG_FILE.matcher(file.getFileName().toString());
+
+                if (matcher.matches()) {
+                    latest = Math.max(latest, Integer.parseInt(matcher.group(1)));
+                }
+            }
+        }
+
+        return latest;
+    }
+
+    // Removes logs left behind by compactions that were interrupted, or
+    // that finished without deleting their source.
+    private void deleteOtherGenerations() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "todo-*.log")) {
+            for (Path file : files) {
+                Matcher matcher = LOG_FILE.matcher(file.getFileName().toString());
+
+                if (matcher.matches() && Integer.parseInt(matcher.group(1)) != generation) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+}
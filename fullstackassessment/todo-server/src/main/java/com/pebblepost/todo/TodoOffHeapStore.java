@@ -0,0 +1,767 @@
+package com.pebblepost.todo;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+
+/**
+ * Stores items in memory, for read-heavy deployments that can afford to lose
+ * them on restart.
+ * 
+ * This is enabled by setting {@code todo.storage.engine} to {@code off-heap},
+ * and {@link TodoService} then reads and writes items here, through
+ * {@link TodoItemStore}.
+ * 
+ * Items are kept in parallel primitive arrays, one slot per item, and found
+ * through an open-addressing hash table from IDs to slots. Descriptions are
+ * kept outside the heap, in {@link DescriptionArena}, and completion in a
+ * bitset, so millions of items take up a few dozen bytes of heap each, in a
+ * handful of large arrays the garbage collector never has to trace through.
+ * Each list keeps its item IDs in ascending order, for paging, and running
+ * counts of its items and completed items. Lists are dropped once their last
+ * item is deleted.
+ * 
+ * Creates and deletes change the structure, and lock the whole store. Reads
+ * and updates only share that lock, and then lock the stripe of the slot they
+ * touch, so they only wait for each other when they hit nearby slots.
+ * 
+ * Descriptions count against {@code -XX:MaxDirectMemorySize}, which has to
+ * leave room for {@link TodoProperties.Storage#getArenaChunkBytes()} per
+ * chunk of descriptions.
+ */
+@Component
+@ConditionalOnProperty(prefix = "todo.storage", name = "engine", havingValue = "off-heap")
+public class TodoOffHeapStore implements TodoItemStore {
+
+    // Must be a power of two.
+    private static final int STRIPES = 64;
+
+    // How many items `forEach` reads at a time.
+    private static final int FOR_EACH_BATCH_SIZE = 256;
+
+    private final TodoListRepository todoListRepository;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Slot `s` is guarded by `stripes[(s >>> 6) & (STRIPES - 1)]`, so that the
+    // 64 slots sharing a word of `completed` share a stripe.
+    private final Object[] stripes = new Object[STRIPES];
+
+    private final DescriptionArena descriptions;
+
+    // Everything below is guarded by `lock`, except for the per-item fields
+    // in `versions`, `descriptionAddresses` and `completed`, which are guarded
+    // by the slot's stripe.
+
+    private final IdIndex index;
+
+    private long[] ids;
+
+    private int[] listNumbers;
+
+    private long[] versions;
+
+    private long[] descriptionAddresses;
+
+    private AtomicLongArray completed;
+
+    // Slots below this have been handed out at least once.
+    private int slotCount;
+
+    private int[] freeSlots = new int[16];
+
+    private int freeSlotCount;
+
+    private final Map<String, ListIndex> listsById = new HashMap<String, ListIndex>();
+
+    // Lists by the number stored for each of their slots. Numbers of dropped
+    // lists are null until they're reused.
+    private final List<ListIndex> listsByNumber = new ArrayList<ListIndex>();
+
+    private final List<Integer> freeListNumbers = new ArrayList<Integer>();
+
+    private long nextId = 1;
+
+    public TodoOffHeapStore(TodoListRepository todoListRepository, TodoProperties properties) {
+        int initialCapacity = Math.max(64, properties.getStorage().getInitialCapacity());
+
+        this.todoListRepository = todoListRepository;
+        this.descriptions = new DescriptionArena(properties.getStorage().getArenaChunkBytes());
+        this.index = new IdIndex(initialCapacity);
+        this.ids = new long[initialCapacity];
+        this.listNumbers = new int[initialCapacity];
+        this.versions = new long[initialCapacity];
+        this.descriptionAddresses = new long[initialCapacity];
+        this.completed = new AtomicLongArray(words(initialCapacity));
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            descriptions.release();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public TodoChangedEvent create(String listId, String description, boolean isCompleted) {
+        checkListExists(listId);
+
+        lock.writeLock().lock();
+        try {
+            long id = nextId++;
+            int slot = allocateSlot();
+            ListIndex list = listsById.computeIfAbsent(listId, this::newList);
+
+            ids[slot] = id;
+            listNumbers[slot] = list.number;
+            versions[slot] = 0;
+            descriptionAddresses[slot] = descriptions.write(description);
+            setCompleted(slot, isCompleted);
+            index.put(id, slot);
+            list.add(id, isCompleted);
+
+            return TodoChangedEvent.created(new Todo(id, listId, description, isCompleted, 0));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Optional<Todo> find(String listId, long id) {
+        lock.readLock().lock();
+        try {
+            int slot = slotOf(listId, id);
+
+            return slot < 0 ? Optional.empty() : Optional.of(read(slot, listId));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Todo> findByListId(String listId) {
+        return findAfter(listId, 0, Integer.MAX_VALUE).getContent();
+    }
+
+    @Override
+    public Slice<Todo> findAfter(String listId, long afterId, int limit) {
+        List<Todo> items = new ArrayList<Todo>(Math.min(limit, 1024));
+        boolean hasNext = false;
+
+        lock.readLock().lock();
+        try {
+            ListIndex list = listsById.get(listId);
+
+            if (list != null) {
+                for (int i = list.indexAfter(afterId); i < list.size; i++) {
+                    int slot = index.get(list.ids[i]);
+
+                    // Deleted IDs stay in the list until it's compacted.
+                    if (slot < 0) {
+                        continue;
+                    }
+                    if (items.size() == limit) {
+                        hasNext = true;
+                        break;
+                    }
+                    items.add(read(slot, listId));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return new SliceImpl<Todo>(items, PageRequest.of(0, Math.max(limit, 1), Sort.by("id")), hasNext);
+    }
+
+    @Override
+    public List<Todo> findByIds(String listId, Collection<Long> ids) {
+        List<Todo> items = new ArrayList<Todo>(ids.size());
+
+        lock.readLock().lock();
+        try {
+            for (Long id : ids) {
+                int slot = slotOf(listId, id);
+
+                if (slot >= 0) {
+                    items.add(read(slot, listId));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return items;
+    }
+
+    // Items are read in batches, and the lock isn't held while `handler`
+    // runs, so a slow client doesn't hold up writers.
+    @Override
+    public void forEach(String listId, TodoCursorRepository.RowHandler handler) {
+        Slice<Todo> batch;
+        long afterId = 0;
+
+        do {
+            batch = findAfter(listId, afterId, FOR_EACH_BATCH_SIZE);
+            for (Todo item : batch) {
+                try {
+                    handler.handle(item.getId(), item.getDescription(), item.getCompleted(), item.getVersion());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                afterId = item.getId();
+            }
+        } while (batch.hasNext());
+    }
+
+    @Override
+    public Optional<TodoChangedEvent> update(
+            String listId, long id, String description, Boolean isCompleted, Long expectedVersion) {
+        return write(listId, id, description, isCompleted, expectedVersion, true);
+    }
+
+    @Override
+    public Optional<TodoChangedEvent> replace(String listId, long id, String description, boolean isCompleted) {
+        return write(listId, id, description, isCompleted, null, false);
+    }
+
+    @Override
+    public Optional<TodoChangedEvent> delete(String listId, long id) {
+        lock.writeLock().lock();
+        try {
+            int slot = slotOf(listId, id);
+
+            if (slot < 0) {
+                return Optional.empty();
+            }
+
+            Todo previous = read(slot, listId);
+
+            descriptions.free(descriptionAddresses[slot]);
+            setCompleted(slot, false);
+            index.remove(id);
+            freeSlot(slot);
+
+            ListIndex list = listsById.get(listId);
+
+            list.remove(previous.getCompleted());
+            if (list.size == list.deleted) {
+                listsById.remove(listId);
+                listsByNumber.set(list.number, null);
+                freeListNumbers.add(list.number);
+            }
+
+            return Optional.of(TodoChangedEvent.deleted(previous));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Optional<TodoChangedEvent> write(
+            String listId, long id, String description, Boolean isCompleted, Long expectedVersion,
+            boolean keepNullFields) {
+        lock.readLock().lock();
+        try {
+            int slot = slotOf(listId, id);
+
+            if (slot < 0) {
+                return Optional.empty();
+            }
+
+            synchronized (stripe(slot)) {
+                Todo previous = readLocked(slot, listId);
+
+                if (expectedVersion != null && expectedVersion != previous.getVersion()) {
+                    throw new OptimisticLockingFailureException(String.format(
+                            "Todo with ID %s is no longer at version %s!", id, expectedVersion));
+                }
+
+                Todo current = new Todo(
+                        id,
+                        listId,
+                        description != null || !keepNullFields ? description : previous.getDescription(),
+                        isCompleted != null ? isCompleted : previous.getCompleted(),
+                        previous.getVersion() + 1);
+
+                if (!Objects.equals(current.getDescription(), previous.getDescription())) {
+                    long previousAddress = descriptionAddresses[slot];
+
+                    descriptionAddresses[slot] = descriptions.write(current.getDescription());
+                    descriptions.free(previousAddress);
+                }
+                if (current.getCompleted() != previous.getCompleted()) {
+                    setCompleted(slot, current.getCompleted());
+                    listsByNumber.get(listNumbers[slot]).completedCount.addAndGet(current.getCompleted() ? 1 : -1);
+                }
+                versions[slot] = current.getVersion();
+
+                return Optional.of(TodoChangedEvent.updated(previous, current));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Updates aren't blocked while counting, so an update racing with the
+    // count may or may not be counted.
+    @Override
+    public Map<String, long[]> countByListIdAndCompleted() {
+        Map<String, long[]> counts = new HashMap<String, long[]>();
+
+        lock.readLock().lock();
+        try {
+            for (ListIndex list : listsById.values()) {
+                long total = list.size - list.deleted;
+                long completedCount = list.completedCount.get();
+
+                counts.put(list.listId, new long[] { total - completedCount, completedCount });
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return counts;
+    }
+
+    private void checkListExists(String listId) {
+        if (!todoListRepository.existsById(listId)) {
+            // The same exception a missing list causes with the database.
+            throw new DataIntegrityViolationException(
+                    String.format("Todo list with ID %s doesn't exist!", listId));
+        }
+    }
+
+    private ListIndex newList(String listId) {
+        if (!freeListNumbers.isEmpty()) {
+            ListIndex list = new ListIndex(listId, freeListNumbers.remove(freeListNumbers.size() - 1));
+
+            listsByNumber.set(list.number, list);
+
+            return list;
+        }
+
+        ListIndex list = new ListIndex(listId, listsByNumber.size());
+
+        listsByNumber.add(list);
+
+        return list;
+    }
+
+    // Returns the slot of an item, or -1 if it isn't in the list. Has to be
+    // called with `lock` held.
+    private int slotOf(String listId, long id) {
+        int slot = index.get(id);
+
+        return slot >= 0 && listsByNumber.get(listNumbers[slot]).listId.equals(listId) ? slot : -1;
+    }
+
+    private Object stripe(int slot) {
+        return stripes[(slot >>> 6) & (STRIPES - 1)];
+    }
+
+    // Has to be called with `lock` held.
+    private Todo read(int slot, String listId) {
+        synchronized (stripe(slot)) {
+            return readLocked(slot, listId);
+        }
+    }
+
+    // Has to be called with `lock` and the slot's stripe held.
+    private Todo readLocked(int slot, String listId) {
+        return new Todo(
+                ids[slot],
+                listId,
+                descriptions.read(descriptionAddresses[slot]),
+                (completed.get(slot >>> 6) & (1L << slot)) != 0,
+                versions[slot]);
+    }
+
+    // Has to be called with the write lock, or the slot's stripe, held.
+    private void setCompleted(int slot, boolean isCompleted) {
+        long word = completed.get(slot >>> 6);
+
+        completed.set(slot >>> 6, isCompleted ? word | (1L << slot) : word & ~(1L << slot));
+    }
+
+    // Has to be called with the write lock held.
+    private int allocateSlot() {
+        if (freeSlotCount > 0) {
+            return freeSlots[--freeSlotCount];
+        }
+        if (slotCount == ids.length) {
+            int capacity = ids.length * 2;
+            AtomicLongArray grownCompleted = new AtomicLongArray(words(capacity));
+
+            for (int word = 0; word < completed.length(); word++) {
+                grownCompleted.set(word, completed.get(word));
+            }
+            ids = Arrays.copyOf(ids, capacity);
+            listNumbers = Arrays.copyOf(listNumbers, capacity);
+            versions = Arrays.copyOf(versions, capacity);
+            descriptionAddresses = Arrays.copyOf(descriptionAddresses, capacity);
+            completed = grownCompleted;
+        }
+
+        return slotCount++;
+    }
+
+    // Has to be called with the write lock held.
+    private void freeSlot(int slot) {
+        if (freeSlotCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+        }
+        freeSlots[freeSlotCount++] = slot;
+    }
+
+    private static int words(int bits) {
+        return (bits + 63) >>> 6;
+    }
+
+    /**
+     * Maps item IDs to slots, with open addressing and linear probing.
+     * 
+     * IDs start at 1, so 0 marks an empty bucket. Deletes shift the rest of
+     * the probe sequence back, instead of leaving tombstones, so lookups never
+     * get slower as items churn.
+     */
+    private static class IdIndex {
+
+        private long[] keys;
+
+        private int[] values;
+
+        private int size;
+
+        // The number of bits `hash` keeps.
+        private int bits;
+
+        IdIndex(int expectedSize) {
+            // At most half full.
+            bits = 64 - Long.numberOfLeadingZeros(Math.max(expectedSize, 8) * 2L - 1);
+            keys = new long[1 << bits];
+            values = new int[1 << bits];
+        }
+
+        // Returns the slot of an ID, or -1 if it isn't indexed.
+        int get(long id) {
+            int mask = keys.length - 1;
+
+            for (int bucket = hash(id); keys[bucket] != 0; bucket = (bucket + 1) & mask) {
+                if (keys[bucket] == id) {
+                    return values[bucket];
+                }
+            }
+
+            return -1;
+        }
+
+        void put(long id, int slot) {
+            if ((size + 1) * 2 > keys.length) {
+                resize();
+            }
+
+            int mask = keys.length - 1;
+            int bucket = hash(id);
+
+            while (keys[bucket] != 0 && keys[bucket] != id) {
+                bucket = (bucket + 1) & mask;
+            }
+            if (keys[bucket] == 0) {
+                size++;
+            }
+            keys[bucket] = id;
+            values[bucket] = slot;
+        }
+
+        void remove(long id) {
+            int mask = keys.length - 1;
+            int bucket = hash(id);
+
+            while (keys[bucket] != id) {
+                if (keys[bucket] == 0) {
+                    return;
+                }
+                bucket = (bucket + 1) & mask;
+            }
+
+            // Moves later entries of the probe sequence into the gap, unless
+            // their home bucket is between the gap and where they are.
+            int gap = bucket;
+
+            for (int next = (gap + 1) & mask; keys[next] != 0; next = (next + 1) & mask) {
+                int home = hash(keys[next]);
+
+                if (((next - home) & mask) >= ((next - gap) & mask)) {
+                    keys[gap] = keys[next];
+                    values[gap] = values[next];
+                    gap = next;
+                }
+            }
+            keys[gap] = 0;
+            size--;
+        }
+
+        private int hash(long id) {
+            return (int) ((id * 0x9E3779B97F4A7C15L) >>> (64 - bits));
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+
+            bits++;
+            keys = new long[1 << bits];
+            values = new int[1 << bits];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * The items of one list: their IDs in ascending order, and how many of
+     * them are completed.
+     * 
+     * IDs only ever grow, so new items are appended. Deleted IDs are left in
+     * place, and skipped by readers, until they make up half of the list.
+     */
+    private class ListIndex {
+
+        final String listId;
+
+        final int number;
+
+        long[] ids = new long[8];
+
+        int size;
+
+        int deleted;
+
+        // Updates change completion with only the read lock held.
+        final AtomicLong completedCount = new AtomicLong();
+
+        ListIndex(String listId, int number) {
+            this.listId = listId;
+            this.number = number;
+        }
+
+        // Has to be called with the write lock held.
+        void add(long id, boolean isCompleted) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+            if (isCompleted) {
+                completedCount.incrementAndGet();
+            }
+        }
+
+        // Has to be called with the write lock held, after the item's ID is
+        // removed from `index`.
+        void remove(boolean wasCompleted) {
+            if (wasCompleted) {
+                completedCount.decrementAndGet();
+            }
+            if (++deleted * 2 > size) {
+                int live = 0;
+
+                for (int i = 0; i < size; i++) {
+                    if (index.get(ids[i]) >= 0) {
+                        ids[live++] = ids[i];
+                    }
+                }
+                size = live;
+                deleted = 0;
+            }
+        }
+
+        // Returns the position of the first ID greater than `id`.
+        int indexAfter(long id) {
+            int low = 0;
+            int high = size;
+
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+
+                if (ids[middle] <= id) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+
+            return low;
+        }
+    }
+
+    /**
+     * Keeps descriptions outside the heap, as UTF-8 preceded by their length
+     * in bytes.
+     * 
+     * Space is carved out of large direct buffers, in power-of-two size
+     * classes. Freed blocks go on a free list for their size class, linked
+     * through the blocks themselves, and are reused before any new space is
+     * carved out. Descriptions are at most
+     * {@link Todo#MAX_DESCRIPTION_LENGTH_CH} characters, which is at most
+     * three bytes each in UTF-8, so the largest size class is 4 KiB.
+     * 
+     * An address is a chunk number in its upper 32 bits, and an offset within
+     * the chunk in its lower 32 bits. {@code null} descriptions take up no
+     * space, and have their own address.
+     */
+    private static class DescriptionArena {
+
+        static final long NULL_ADDRESS = -1;
+
+        private static final int LENGTH_BYTES = 2;
+
+        private static final int MIN_BLOCK_BYTES = 16;
+
+        private static final int MAX_BLOCK_BYTES = 4096;
+
+        // Marks the end of a free list. Real addresses can't be negative.
+        private static final long END_OF_LIST = -1;
+
+        private final int chunkBytes;
+
+        // Readers look chunks up without taking `this`, so the array is
+        // replaced, never changed, when a chunk is added.
+        private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+
+        // Where the next block is carved out of the last chunk.
+        private int chunkPosition;
+
+        private final long[] freeLists;
+
+        DescriptionArena(int chunkBytes) {
+            this.chunkBytes = Math.max(chunkBytes, MAX_BLOCK_BYTES);
+            this.chunkPosition = this.chunkBytes;
+            this.freeLists = new long[sizeClass(MAX_BLOCK_BYTES) + 1];
+            Arrays.fill(freeLists, END_OF_LIST);
+        }
+
+        long write(String description) {
+            if (description == null) {
+                return NULL_ADDRESS;
+            }
+
+            byte[] bytes = description.getBytes(StandardCharsets.UTF_8);
+            long address = allocate(LENGTH_BYTES + bytes.length);
+            ByteBuffer block = block(address);
+
+            block.putShort((short) bytes.length).put(bytes);
+
+            return address;
+        }
+
+        String read(long address) {
+            if (address == NULL_ADDRESS) {
+                return null;
+            }
+
+            ByteBuffer block = block(address);
+            byte[] bytes = new byte[Short.toUnsignedInt(block.getShort())];
+
+            block.get(bytes);
+
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        void free(long address) {
+            if (address == NULL_ADDRESS) {
+                return;
+            }
+
+            ByteBuffer block = block(address);
+            int sizeClass = sizeClass(LENGTH_BYTES + Short.toUnsignedInt(block.getShort(block.position())));
+
+            synchronized (this) {
+                block.putLong(block.position(), freeLists[sizeClass]);
+                freeLists[sizeClass] = address;
+            }
+        }
+
+        // Drops the buffers, so the garbage collector can release their
+        // memory.
+        synchronized void release() {
+            chunks = new ByteBuffer[0];
+            chunkPosition = chunkBytes;
+            Arrays.fill(freeLists, END_OF_LIST);
+        }
+
+        private synchronized long allocate(int bytes) {
+            int sizeClass = sizeClass(bytes);
+            long address = freeLists[sizeClass];
+
+            if (address != END_OF_LIST) {
+                ByteBuffer block = block(address);
+
+                freeLists[sizeClass] = block.getLong(block.position());
+
+                return address;
+            }
+
+            int blockBytes = MIN_BLOCK_BYTES << sizeClass;
+
+            if (chunkPosition + blockBytes > chunkBytes) {
+                ByteBuffer[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+
+                grown[chunks.length] = ByteBuffer.allocateDirect(chunkBytes);
+                chunks = grown;
+                chunkPosition = 0;
+            }
+            address = ((long) (chunks.length - 1) << 32) | chunkPosition;
+            chunkPosition += blockBytes;
+
+            return address;
+        }
+
+        // Returns a view of the chunk holding a block, positioned at the
+        // block.
+        private ByteBuffer block(long address) {
+            ByteBuffer block = chunks[(int) (address >>> 32)].duplicate();
+
+            block.position((int) address);
+
+            return block;
+        }
+
+        private static int sizeClass(int bytes) {
+            int blockBytes = Math.max(bytes, MIN_BLOCK_BYTES);
+
+            return (32 - Integer.numberOfLeadingZeros(blockBytes - 1)) - 4;
+        }
+    }
+}
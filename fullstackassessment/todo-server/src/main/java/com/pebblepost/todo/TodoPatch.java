@@ -0,0 +1,49 @@
+package com.pebblepost.todo;
+
+/**
+ * The body of a {@code PATCH /todos/{id}} request.
+ * 
+ * Fields left {@code null} are left unchanged. When {@code version} is set,
+ * the patch only applies if the item is still at that version.
+ */
+public class TodoPatch {
+
+    private String description;
+
+    private Boolean completed;
+
+    private Long version;
+
+    public TodoPatch() {
+    }
+
+    public TodoPatch(String description, Boolean completed, Long version) {
+        this.description = description;
+        this.completed = completed;
+        this.version = version;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void setDescription(String value) {
+        this.description = value;
+    }
+
+    public Boolean getCompleted() {
+        return completed;
+    }
+
+    public void setCompleted(Boolean value) {
+        this.completed = value;
+    }
+
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long value) {
+        this.version = value;
+    }
+}
@@ -0,0 +1,61 @@
+package com.pebblepost.todo;
+
+/**
+ * Published by {@link TodoService} after it patches an item in place.
+ * 
+ * Patches are written without loading the item, so unlike
+ * {@link TodoChangedEvent}, this only carries the fields that were set.
+ * {@code description} and {@code completed} are {@code null} when they
+ * weren't changed, and {@code previousCompleted} is {@code null} when the
+ * previous state isn't known. {@code version} is always the item's new
+ * version.
+ */
+public class TodoPatchedEvent {
+
+    private final String listId;
+
+    private final Long id;
+
+    private final String description;
+
+    private final Boolean completed;
+
+    private final Boolean previousCompleted;
+
+    private final long version;
+
+    public TodoPatchedEvent(
+            String listId, Long id, String description, Boolean completed, Boolean previousCompleted,
+            long version) {
+        this.listId = listId;
+        this.id = id;
+        this.description = description;
+        this.completed = completed;
+        this.previousCompleted = previousCompleted;
+        this.version = version;
+    }
+
+    public String getListId() {
+        return listId;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public Boolean getCompleted() {
+        return completed;
+    }
+
+    public Boolean getPreviousCompleted() {
+        return previousCompleted;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,636 @@
+package com.pebblepost.todo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties(prefix = "todo")
+public class TodoProperties {
+
+    private final Paging paging = new Paging();
+
+    private final Streaming streaming = new Streaming();
+
+    private final Batch batch = new Batch();
+
+    private final Events events = new Events();
+
+    private final Changes changes = new Changes();
+
+    private final Write write = new Write();
+
+    private final Storage storage = new Storage();
+
+    private final Search search = new Search();
+
+    private final Replicas replicas = new Replicas();
+
+    private final Sharding sharding = new Sharding();
+
+    public Paging getPaging() {
+        return paging;
+    }
+
+    public Streaming getStreaming() {
+        return streaming;
+    }
+
+    public Batch getBatch() {
+        return batch;
+    }
+
+    public Events getEvents() {
+        return events;
+    }
+
+    public Changes getChanges() {
+        return changes;
+    }
+
+    public Write getWrite() {
+        return write;
+    }
+
+    public Storage getStorage() {
+        return storage;
+    }
+
+    public Search getSearch() {
+        return search;
+    }
+
+    public Replicas getReplicas() {
+        return replicas;
+    }
+
+    public Sharding getSharding() {
+        return sharding;
+    }
+
+    public static class Paging {
+        /**
+         * The number of items returned in a page when the client doesn't ask
+         * for a specific page size.
+         */
+        private int defaultLimit = 100;
+
+        /**
+         * The largest page size the server agrees to return.
+         * 
+         * Larger requested page sizes are clamped to this value, so that a
+         * single request can't make us load an arbitrary number of items into
+         * memory.
+         */
+        private int maxLimit = 1000;
+
+        public int getDefaultLimit() {
+            return defaultLimit;
+        }
+
+        public void setDefaultLimit(int value) {
+            this.defaultLimit = value;
+        }
+
+        public int getMaxLimit() {
+            return maxLimit;
+        }
+
+        public void setMaxLimit(int value) {
+            this.maxLimit = value;
+        }
+    }
+
+    public static class Streaming {
+        /**
+         * The number of rows the JDBC driver fetches from the database at a
+         * time while streaming items.
+         */
+        private int fetchSize = 256;
+
+        public int getFetchSize() {
+            return fetchSize;
+        }
+
+        public void setFetchSize(int value) {
+            this.fetchSize = value;
+        }
+    }
+
+    public static class Batch {
+        /**
+         * The largest number of operations accepted in a single batch request.
+         */
+        private int maxOperations = 1000;
+
+        public int getMaxOperations() {
+            return maxOperations;
+        }
+
+        public void setMaxOperations(int value) {
+            this.maxOperations = value;
+        }
+    }
+
+    public static class Events {
+        /**
+         * How long an event stream stays open before the server closes it.
+         * 
+         * Clients reconnect on their own, so this mostly bounds how long a
+         * vanished client holds on to a connection.
+         */
+        private long timeoutMs = 30 * 60 * 1000;
+
+        /**
+         * The number of threads writing events to subscribers.
+         */
+        private int dispatchThreads = 4;
+
+        /**
+         * The largest number of distinct items that may have events waiting
+         * for a single subscriber.
+         * 
+         * Subscribers that fall further behind are disconnected, and have to
+         * reload the list when they reconnect.
+         */
+        private int maxPending = 1000;
+
+        /**
+         * How long sending events to a subscriber may take.
+         * 
+         * Subscribers that stop reading are disconnected once a send takes
+         * longer than this, and the thread stuck sending to them is replaced,
+         * so that they don't hold up events for everyone else.
+         */
+        private long sendTimeoutMs = 10 * 1000;
+
+        public long getTimeoutMs() {
+            return timeoutMs;
+        }
+
+        public void setTimeoutMs(long value) {
+            this.timeoutMs = value;
+        }
+
+        public int getDispatchThreads() {
+            return dispatchThreads;
+        }
+
+        public void setDispatchThreads(int value) {
+            this.dispatchThreads = value;
+        }
+
+        public int getMaxPending() {
+            return maxPending;
+        }
+
+        public void setMaxPending(int value) {
+            this.maxPending = value;
+        }
+
+        public long getSendTimeoutMs() {
+            return sendTimeoutMs;
+        }
+
+        public void setSendTimeoutMs(long value) {
+            this.sendTimeoutMs = value;
+        }
+    }
+
+    public static class Changes {
+        /**
+         * How long the change log keeps deletions.
+         * 
+         * Clients that haven't asked for changes for longer than this have to
+         * reload the whole list.
+         */
+        private long deletionRetentionMs = 24 * 60 * 60 * 1000;
+
+        public long getDeletionRetentionMs() {
+            return deletionRetentionMs;
+        }
+
+        public void setDeletionRetentionMs(long value) {
+            this.deletionRetentionMs = value;
+        }
+    }
+
+    public static class Write {
+        public enum Durability {
+            /**
+             * Every create and update is committed before it's acknowledged.
+             */
+            SYNC,
+            /**
+             * Creates and updates are acknowledged once they're queued, and
+             * committed in groups by {@link TodoWriteQueue}.
+             */
+            GROUP_COMMIT,
+        }
+
+        private Durability durability = Durability.SYNC;
+
+        /**
+         * The largest number of writes waiting to be committed.
+         */
+        private int queueCapacity = 10000;
+
+        /**
+         * The largest number of writes committed in one transaction.
+         */
+        private int maxGroupSize = 500;
+
+        /**
+         * How long the first write of a group waits for others to join it.
+         */
+        private long flushIntervalMs = 5;
+
+        /**
+         * How long writers wait for room in a full queue before they're
+         * rejected.
+         */
+        private long enqueueTimeoutMs = 100;
+
+        public Durability getDurability() {
+            return durability;
+        }
+
+        public void setDurability(Durability value) {
+            this.durability = value;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int value) {
+            this.queueCapacity = value;
+        }
+
+        public int getMaxGroupSize() {
+            return maxGroupSize;
+        }
+
+        public void setMaxGroupSize(int value) {
+            this.maxGroupSize = value;
+        }
+
+        public long getFlushIntervalMs() {
+            return flushIntervalMs;
+        }
+
+        public void setFlushIntervalMs(long value) {
+            this.flushIntervalMs = value;
+        }
+
+        public long getEnqueueTimeoutMs() {
+            return enqueueTimeoutMs;
+        }
+
+        public void setEnqueueTimeoutMs(long value) {
+            this.enqueueTimeoutMs = value;
+        }
+    }
+
+    public static class Storage {
+        public enum Engine {
+            /**
+             * Items are stored in the {@code todo} table, through JPA.
+             */
+            JPA,
+            /**
+             * Items are stored in a memory-mapped, append-only log by
+             * {@link TodoLogStore}.
+             */
+            MAPPED_LOG,
+            /**
+             * Items are stored in memory, mostly off the heap, by
+             * {@link TodoOffHeapStore}, and are lost on restart.
+             */
+            OFF_HEAP,
+        }
+
+        private Engine engine = Engine.JPA;
+
+        /**
+         * The directory holding the log and its snapshots.
+         */
+        private String directory = "data";
+
+        /**
+         * The size of the log mapping when the log is created. The mapping
+         * doubles whenever it fills up.
+         */
+        private long initialSizeBytes = 64L * 1024 * 1024;
+
+        /**
+         * Whether every write is forced to disk before it's acknowledged.
+         * 
+         * Without this, acknowledged writes survive the application
+         * crashing, but not the operating system.
+         */
+        private boolean syncOnWrite = false;
+
+        /**
+         * How often the index is saved, so that recovery only has to replay
+         * the log written since.
+         */
+        private long snapshotIntervalMs = 60000;
+
+        /**
+         * How often the log is checked for compaction.
+         */
+        private long compactionIntervalMs = 60000;
+
+        /**
+         * The fraction of the log taken up by superseded records above which
+         * the log is compacted.
+         */
+        private double compactionThreshold = 0.5;
+
+        /**
+         * The number of items the in-memory store makes room for upfront.
+         * Its arrays double whenever they fill up.
+         */
+        private int initialCapacity = 65536;
+
+        /**
+         * The size of each off-heap buffer the in-memory store keeps
+         * descriptions in.
+         */
+        private int arenaChunkBytes = 16 * 1024 * 1024;
+
+        public Engine getEngine() {
+            return engine;
+        }
+
+        public void setEngine(Engine value) {
+            this.engine = value;
+        }
+
+        public String getDirectory() {
+            return directory;
+        }
+
+        public void setDirectory(String value) {
+            this.directory = value;
+        }
+
+        public long getInitialSizeBytes() {
+            return initialSizeBytes;
+        }
+
+        public void setInitialSizeBytes(long value) {
+            this.initialSizeBytes = value;
+        }
+
+        public boolean getSyncOnWrite() {
+            return syncOnWrite;
+        }
+
+        public void setSyncOnWrite(boolean value) {
+            this.syncOnWrite = value;
+        }
+
+        public long getSnapshotIntervalMs() {
+            return snapshotIntervalMs;
+        }
+
+        public void setSnapshotIntervalMs(long value) {
+            this.snapshotIntervalMs = value;
+        }
+
+        public long getCompactionIntervalMs() {
+            return compactionIntervalMs;
+        }
+
+        public void setCompactionIntervalMs(long value) {
+            this.compactionIntervalMs = value;
+        }
+
+        public double getCompactionThreshold() {
+            return compactionThreshold;
+        }
+
+        public void setCompactionThreshold(double value) {
+            this.compactionThreshold = value;
+        }
+
+        public int getInitialCapacity() {
+            return initialCapacity;
+        }
+
+        public void setInitialCapacity(int value) {
+            this.initialCapacity = value;
+        }
+
+        public int getArenaChunkBytes() {
+            return arenaChunkBytes;
+        }
+
+        public void setArenaChunkBytes(int value) {
+            this.arenaChunkBytes = value;
+        }
+    }
+
+    public static class Search {
+        /**
+         * The shortest prefix of a word that finds items containing the
+         * word. Shorter query words only match whole words.
+         */
+        private int minPrefixLength = 2;
+
+        /**
+         * The longest prefix of a word that's indexed. Longer query words
+         * are matched by checking the items found with their first
+         * characters.
+         */
+        private int maxPrefixLength = 16;
+
+        public int getMinPrefixLength() {
+            return minPrefixLength;
+        }
+
+        public void setMinPrefixLength(int value) {
+            this.minPrefixLength = value;
+        }
+
+        public int getMaxPrefixLength() {
+            return maxPrefixLength;
+        }
+
+        public void setMaxPrefixLength(int value) {
+            this.maxPrefixLength = value;
+        }
+    }
+
+    public static class Replicas {
+        /**
+         * Whether read-only transactions go to the replicas in
+         * {@link #getUrls()}, through {@link TodoRoutingDataSource}.
+         */
+        private boolean enabled = false;
+
+        /**
+         * The JDBC URLs of the read replicas.
+         */
+        private List<String> urls = new ArrayList<String>();
+
+        /**
+         * How often replicas are checked, and their lag measured.
+         */
+        private long healthCheckIntervalMs = 1000;
+
+        /**
+         * How far a replica may fall behind the primary and still get reads.
+         */
+        private long maxLagMs = 2000;
+
+        /**
+         * How long a client keeps reading from the primary after it writes.
+         * 
+         * This should cover {@link #getMaxLagMs()} and
+         * {@link #getHealthCheckIntervalMs()}, the longest a healthy replica
+         * can take to receive a write.
+         */
+        private long stickinessMs = 5000;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean value) {
+            this.enabled = value;
+        }
+
+        public List<String> getUrls() {
+            return urls;
+        }
+
+        public void setUrls(List<String> value) {
+            this.urls = value;
+        }
+
+        public long getHealthCheckIntervalMs() {
+            return healthCheckIntervalMs;
+        }
+
+        public void setHealthCheckIntervalMs(long value) {
+            this.healthCheckIntervalMs = value;
+        }
+
+        public long getMaxLagMs() {
+            return maxLagMs;
+        }
+
+        public void setMaxLagMs(long value) {
+            this.maxLagMs = value;
+        }
+
+        public long getStickinessMs() {
+            return stickinessMs;
+        }
+
+        public void setStickinessMs(long value) {
+            this.stickinessMs = value;
+        }
+    }
+
+    public static class Sharding {
+        public static class Shard {
+            /**
+             * The JDBC URL of the shard's database.
+             */
+            private String url;
+
+            private String username = "sa";
+
+            private String password = "";
+
+            public String getUrl() {
+                return url;
+            }
+
+            public void setUrl(String value) {
+                this.url = value;
+            }
+
+            public String getUsername() {
+                return username;
+            }
+
+            public void setUsername(String value) {
+                this.username = value;
+            }
+
+            public String getPassword() {
+                return password;
+            }
+
+            public void setPassword(String value) {
+                this.password = value;
+            }
+        }
+
+        /**
+         * Whether lists are spread over the databases in {@link #getShards()},
+         * through {@link TodoShardRouter}.
+         */
+        private boolean enabled = false;
+
+        /**
+         * The shard databases.
+         * 
+         * A shard's position in this list is encoded in the IDs of items
+         * created on it, so shards can only be added at the end.
+         */
+        private List<Shard> shards = new ArrayList<Shard>();
+
+        /**
+         * The number of shards before the latest ones were added, while
+         * lists are being moved to them, or 0.
+         * 
+         * Until {@link TodoShardRebalancer} has moved a list, it's still
+         * served from the shard that held it before.
+         */
+        private int previousShardCount = 0;
+
+        /**
+         * The number of points each shard gets on the hash ring. More points
+         * spread lists more evenly.
+         */
+        private int virtualNodes = 128;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean value) {
+            this.enabled = value;
+        }
+
+        public List<Shard> getShards() {
+            return shards;
+        }
+
+        public void setShards(List<Shard> value) {
+            this.shards = value;
+        }
+
+        public int getPreviousShardCount() {
+            return previousShardCount;
+        }
+
+        public void setPreviousShardCount(int value) {
+            this.previousShardCount = value;
+        }
+
+        public int getVirtualNodes() {
+            return virtualNodes;
+        }
+
+        public void setVirtualNodes(int value) {
+            this.virtualNodes = value;
+        }
+    }
+}
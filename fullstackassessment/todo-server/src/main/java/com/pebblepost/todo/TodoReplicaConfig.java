@@ -0,0 +1,79 @@
+package com.pebblepost.todo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Splits reads and writes between the primary database and read replicas,
+ * when {@code todo.replicas.enabled} is set.
+ * 
+ * The primary is configured through the usual {@code spring.datasource}
+ * properties, and replicas are listed in {@code todo.replicas.urls}, with the
+ * same credentials. Replication itself is up to the databases. Locally, the
+ * replicas can be other H2 databases, which only get reads once something
+ * copies the primary's {@code todo_heartbeat} table to them.
+ * 
+ * @see TodoRoutingDataSource
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "todo.replicas", name = "enabled", havingValue = "true")
+public class TodoReplicaConfig {
+
+    @Bean
+    public TodoRoutingDataSource todoRoutingDataSource(
+            DataSourceProperties dataSourceProperties, TodoProperties properties) {
+        DataSource primary = dataSourceProperties.initializeDataSourceBuilder().build();
+        List<DataSource> replicas = new ArrayList<DataSource>();
+
+        for (String url : properties.getReplicas().getUrls()) {
+            replicas.add(DataSourceBuilder.create()
+                    .url(url)
+                    .username(dataSourceProperties.determineUsername())
+                    .password(dataSourceProperties.determinePassword())
+                    .build());
+        }
+
+        return new TodoRoutingDataSource(primary, replicas, properties);
+    }
+
+    /**
+     * The data source everything else uses, which only picks a database once
+     * a transaction's read-only flag is known.
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(TodoRoutingDataSource todoRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(todoRoutingDataSource);
+    }
+
+    @Bean
+    public WebMvcConfigurer replicaStickinessConfigurer(TodoProperties properties) {
+        TodoReplicaStickiness stickiness = new TodoReplicaStickiness(properties);
+
+        return new WebMvcConfigurer() {
+            @Override
+            public void addInterceptors(InterceptorRegistry registry) {
+                registry.addInterceptor(stickiness);
+            }
+
+            // Streamed responses are written on other threads.
+            @Override
+            public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+                configurer.registerCallableInterceptors(stickiness);
+            }
+        };
+    }
+}
@@ -0,0 +1,115 @@
+package com.pebblepost.todo;
+
+import java.util.concurrent.Callable;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+/**
+ * Pins requests to the primary database for a while after a client writes,
+ * so that the client reads its own writes even if replicas lag behind.
+ * 
+ * Responses to writing requests carry a {@value #HEADER_NAME} header with the
+ * time of the write, which clients send back on their following requests.
+ * Requests carrying a time younger than
+ * {@link TodoProperties.Replicas#getStickinessMs()} read from the primary
+ * too. A header, unlike a cookie, also reaches the server from clients on
+ * other origins that don't send credentials. The time is only a routing
+ * hint, so a forged one can't do more than send reads to the primary.
+ * 
+ * Async requests, like streamed responses, stay pinned until they complete,
+ * including on the threads that produce their responses.
+ */
+public class TodoReplicaStickiness implements AsyncHandlerInterceptor, CallableProcessingInterceptor {
+
+    public static final String HEADER_NAME = "X-Todo-Wrote-At";
+
+    private static final String PINNED_ATTRIBUTE = TodoReplicaStickiness.class.getName() + ".pinned";
+
+    private static final ThreadLocal<Boolean> pinned = ThreadLocal.withInitial(() -> false);
+
+    private final TodoProperties.Replicas properties;
+
+    public TodoReplicaStickiness(TodoProperties properties) {
+        this.properties = properties.getReplicas();
+    }
+
+    /**
+     * Returns whether the current request has to read from the primary.
+     */
+    public static boolean isPinned() {
+        return pinned.get();
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        Boolean requestPinned = (Boolean) request.getAttribute(PINNED_ATTRIBUTE);
+
+        // Async requests are dispatched again when they complete, and keep
+        // the decision made the first time.
+        if (requestPinned == null) {
+            long now = System.currentTimeMillis();
+
+            if (isWrite(request)) {
+                response.setHeader(HEADER_NAME, Long.toString(now));
+                requestPinned = true;
+            } else {
+                requestPinned = now - lastWrite(request) < properties.getStickinessMs();
+            }
+            request.setAttribute(PINNED_ATTRIBUTE, requestPinned);
+        }
+        pinned.set(requestPinned);
+
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(
+            HttpServletRequest request, HttpServletResponse response, Object handler, Exception exception) {
+        pinned.remove();
+    }
+
+    // Async requests leave the request thread before they complete, and
+    // stay pinned through their attribute.
+    @Override
+    public void afterConcurrentHandlingStarted(
+            HttpServletRequest request, HttpServletResponse response, Object handler) {
+        pinned.remove();
+    }
+
+    @Override
+    public <T> void preProcess(NativeWebRequest request, Callable<T> task) {
+        pinned.set(Boolean.TRUE.equals(request.getAttribute(PINNED_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST)));
+    }
+
+    @Override
+    public <T> void postProcess(NativeWebRequest request, Callable<T> task, Object concurrentResult) {
+        pinned.remove();
+    }
+
+    private static boolean isWrite(HttpServletRequest request) {
+        return !HttpMethod.GET.matches(request.getMethod())
+                && !HttpMethod.HEAD.matches(request.getMethod())
+                && !HttpMethod.OPTIONS.matches(request.getMethod());
+    }
+
+    // Returns the time of the client's last write, or 0 if it's unknown.
+    private static long lastWrite(HttpServletRequest request) {
+        String wroteAt = request.getHeader(HEADER_NAME);
+
+        if (wroteAt == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(wroteAt);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
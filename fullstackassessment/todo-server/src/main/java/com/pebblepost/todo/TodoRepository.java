@@ -1,7 +1,69 @@
 package com.pebblepost.todo;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 @Repository
-public interface TodoRepository extends JpaRepository<Todo, Long> {}
+public interface TodoRepository extends JpaRepository<Todo, Long>, TodoRepositoryCustom {
+    interface CompletedCount {
+        String getListId();
+
+        Boolean getCompleted();
+
+        Long getItemCount();
+    }
+
+    List<Todo> findByListId(String listId);
+
+    Slice<Todo> findByListIdAndIdGreaterThan(String listId, Long id, Pageable pageable);
+
+    Slice<Todo> findByListIdAndCompletedAndIdGreaterThan(
+            String listId, boolean completed, Long id, Pageable pageable);
+
+    Optional<Todo> findByListIdAndId(String listId, Long id);
+
+    List<Todo> findByListIdAndIdIn(String listId, Collection<Long> ids);
+
+    boolean existsByListIdAndId(String listId, Long id);
+
+    @Query("SELECT t.version FROM Todo t WHERE t.listId = :listId AND t.id = :id")
+    Optional<Long> findVersionByListIdAndId(@Param("listId") String listId, @Param("id") Long id);
+
+    /**
+     * Sets {@code completed} on a list's items with the given completion
+     * status with a single {@code UPDATE} statement, and increments their
+     * versions.
+     * 
+     * @return the number of updated rows
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Todo t SET t.completed = :completed, t.version = t.version + 1"
+            + " WHERE t.listId = :listId AND t.completed = :previousCompleted")
+    int bulkSetCompleted(
+            @Param("listId") String listId,
+            @Param("previousCompleted") boolean previousCompleted,
+            @Param("completed") boolean completed);
+
+    /**
+     * Deletes a list's items with the given completion status with a single
+     * {@code DELETE} statement.
+     * 
+     * @return the number of deleted rows
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("DELETE FROM Todo t WHERE t.listId = :listId AND t.completed = :completed")
+    int bulkDelete(@Param("listId") String listId, @Param("completed") boolean completed);
+
+    @Query("SELECT t.listId AS listId, t.completed AS completed, COUNT(t) AS itemCount"
+            + " FROM Todo t GROUP BY t.listId, t.completed")
+    List<CompletedCount> countGroupByListIdAndCompleted();
+}
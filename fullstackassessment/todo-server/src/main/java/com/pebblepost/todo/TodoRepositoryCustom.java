@@ -0,0 +1,45 @@
+package com.pebblepost.todo;
+
+import java.util.Optional;
+
+public interface TodoRepositoryCustom {
+    /**
+     * Sets the non-{@code null} fields of an item in a list with a single
+     * {@code UPDATE} statement, and increments its version.
+     * 
+     * @param expectedVersion if not {@code null}, only update the item if
+     *                        it's at this version
+     * @param onlyIfCompletedChanges if {@code true}, only update the item if
+     *                               {@code completed} differs from its
+     *                               current value
+     * @return the number of updated rows
+     */
+    int patch(String listId, long id, String description, Boolean completed, Long expectedVersion, boolean onlyIfCompletedChanges);
+
+    /**
+     * Replaces an item's description and completion status, and increments
+     * its version, with up to two {@code UPDATE} statements.
+     * 
+     * Each statement only matches the item if it has one of the two
+     * {@code completed} values, so the one that matched tells us the value it
+     * had, without reading it. The first statement matches items being
+     * toggled, so toggles take a single statement.
+     * 
+     * @param expectedVersion if not {@code null}, only update the item if
+     *                        it's at this version
+     * @return the item's previous {@code completed} value, or an empty result
+     *         if neither statement matched it
+     */
+    Optional<Boolean> replaceReturningPreviousCompleted(
+            String listId, long id, String description, boolean completed, Long expectedVersion);
+
+    /**
+     * Deletes an item with up to two {@code DELETE} statements, like
+     * {@link #replaceReturningPreviousCompleted}. Completed items take a
+     * single statement.
+     * 
+     * @return the deleted item's {@code completed} value, or an empty result
+     *         if neither statement matched it
+     */
+    Optional<Boolean> deleteReturningCompleted(String listId, long id);
+}
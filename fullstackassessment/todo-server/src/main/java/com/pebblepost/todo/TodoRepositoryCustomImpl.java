@@ -0,0 +1,108 @@
+package com.pebblepost.todo;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaUpdate;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+public class TodoRepositoryCustomImpl implements TodoRepositoryCustom {
+
+    private static final String REPLACE_SQL = "UPDATE todo SET destription = ?, completed = ?, version = version + 1"
+            + " WHERE list_id = ? AND id = ? AND completed = ?";
+
+    private static final String DELETE_SQL = "DELETE FROM todo WHERE list_id = ? AND id = ? AND completed = ?";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public TodoRepositoryCustomImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public int patch(String listId, long id, String description, Boolean completed, Long expectedVersion,
+            boolean onlyIfCompletedChanges) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<Todo> update = builder.createCriteriaUpdate(Todo.class);
+        Root<Todo> todo = update.from(Todo.class);
+        List<Predicate> conditions = new ArrayList<Predicate>();
+
+        conditions.add(builder.equal(todo.get("listId"), listId));
+        conditions.add(builder.equal(todo.get("id"), id));
+        if (description != null) {
+            update.set(todo.<String>get("destription"), description);
+        }
+        if (completed != null) {
+            update.set(todo.<Boolean>get("completed"), completed);
+            if (onlyIfCompletedChanges) {
+                conditions.add(builder.notEqual(todo.get("completed"), completed));
+            }
+        }
+        update.set(todo.<Long>get("version"), builder.sum(todo.<Long>get("version"), 1L));
+        if (expectedVersion != null) {
+            conditions.add(builder.equal(todo.get("version"), expectedVersion));
+        }
+        update.where(conditions.toArray(new Predicate[0]));
+
+        // Like `@Modifying(flushAutomatically = true, clearAutomatically = true)`:
+        // the bulk update bypasses the persistence context, so we write
+        // pending changes first, and drop entities it would leave stale.
+        entityManager.flush();
+
+        int updatedCount = entityManager.createQuery(update).executeUpdate();
+
+        entityManager.clear();
+
+        return updatedCount;
+    }
+
+    @Override
+    public Optional<Boolean> replaceReturningPreviousCompleted(
+            String listId, long id, String description, boolean completed, Long expectedVersion) {
+        String sql = expectedVersion != null ? REPLACE_SQL + " AND version = ?" : REPLACE_SQL;
+
+        // Toggling an item is the most common replacement, so the first
+        // statement matches an item whose `completed` value changes.
+        return previousCompleted(!completed, previousCompleted -> jdbcTemplate.update(sql, expectedVersion != null
+                ? new Object[] { description, completed, listId, id, previousCompleted, expectedVersion }
+                : new Object[] { description, completed, listId, id, previousCompleted }));
+    }
+
+    @Override
+    public Optional<Boolean> deleteReturningCompleted(String listId, long id) {
+        // Finished items are the ones usually deleted, so they're tried first.
+        return previousCompleted(true, completed -> jdbcTemplate.update(DELETE_SQL, listId, id, completed));
+    }
+
+    // Runs a statement matching items with `firstCompleted`, and if it didn't
+    // match the item, one matching the other value, to tell which value the
+    // item had. Like `patch`, the statements bypass the persistence context.
+    //
+    // Each statement runs on its own, since batches may not report how many
+    // rows each of their statements matched.
+    private Optional<Boolean> previousCompleted(boolean firstCompleted, Function<Boolean, Integer> execute) {
+        entityManager.flush();
+
+        try {
+            for (boolean completed : new boolean[] { firstCompleted, !firstCompleted }) {
+                if (execute.apply(completed) != 0) {
+                    return Optional.of(completed);
+                }
+            }
+
+            return Optional.empty();
+        } finally {
+            entityManager.clear();
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.pebblepost.todo;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Sends read-only transactions to read replicas, and everything else to the
+ * primary database.
+ * 
+ * Replicas are checked every
+ * {@link TodoProperties.Replicas#getHealthCheckIntervalMs()}. Each check
+ * writes a heartbeat to the primary, and reads back the heartbeat each
+ * replica has received, so a replica's lag is how far its heartbeat is behind
+ * the one written by the previous check. Replicas that can't be reached, that
+ * haven't received a heartbeat written by this instance yet, or that lag more
+ * than {@link TodoProperties.Replicas#getMaxLagMs()}, get no reads until they
+ * catch up, and reads go to the primary when no replica is left.
+ * 
+ * Requests pinned by {@link TodoReplicaStickiness} always use the primary, so
+ * clients see their own writes.
+ * 
+ * Routing is decided when a connection is first used, so this has to be
+ * wrapped in a {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy},
+ * which holds the connection back until the transaction's read-only flag is
+ * set.
+ */
+public class TodoRoutingDataSource extends AbstractRoutingDataSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(TodoRoutingDataSource.class);
+
+    static final String PRIMARY = "primary";
+
+    private static final String CREATE_HEARTBEAT_SQL =
+            "CREATE TABLE IF NOT EXISTS todo_heartbeat (id INT PRIMARY KEY, beat BIGINT NOT NULL)";
+
+    private static final String UPDATE_HEARTBEAT_SQL = "UPDATE todo_heartbeat SET beat = ? WHERE id = 1";
+
+    private static final String INSERT_HEARTBEAT_SQL = "INSERT INTO todo_heartbeat (id, beat) VALUES (1, ?)";
+
+    private static final String SELECT_HEARTBEAT_SQL = "SELECT beat FROM todo_heartbeat WHERE id = 1";
+
+    private static class Replica {
+        final String key;
+
+        final DataSource dataSource;
+
+        // Written by health checks, and read by every routed connection.
+        volatile boolean usable = false;
+
+        Replica(String key, DataSource dataSource) {
+            this.key = key;
+            this.dataSource = dataSource;
+        }
+    }
+
+    private final DataSource primary;
+
+    private final List<Replica> replicas = new ArrayList<Replica>();
+
+    private final TodoProperties.Replicas properties;
+
+    private final Clock clock;
+
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    // The heartbeats written by the first and the previous check, or 0 before
+    // the first one.
+    private long firstBeat = 0;
+
+    private long lastBeat = 0;
+
+    public TodoRoutingDataSource(DataSource primary, List<DataSource> replicas, TodoProperties properties) {
+        this(primary, replicas, properties, Clock.systemUTC());
+    }
+
+    TodoRoutingDataSource(DataSource primary, List<DataSource> replicas, TodoProperties properties, Clock clock) {
+        this.primary = primary;
+        this.properties = properties.getReplicas();
+        this.clock = clock;
+
+        Map<Object, Object> targets = new HashMap<Object, Object>();
+
+        targets.put(PRIMARY, primary);
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = new Replica(String.format("replica-%d", i), replicas.get(i));
+
+            this.replicas.add(replica);
+            targets.put(replica.key, replica.dataSource);
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+    }
+
+    /**
+     * Measures each replica's lag, and then writes a new heartbeat to the
+     * primary.
+     */
+    @Scheduled(fixedDelayString = "${todo.replicas.health-check-interval-ms:1000}")
+    public synchronized void checkReplicas() {
+        for (Replica replica : replicas) {
+            boolean usable;
+
+            try {
+                long beat = readHeartbeat(replica.dataSource);
+                long lag = lastBeat - beat;
+
+                // A heartbeat left by an earlier run doesn't tell how far
+                // behind the replica is.
+                usable = firstBeat != 0 && beat >= firstBeat && lag <= properties.getMaxLagMs();
+                if (!usable && replica.usable) {
+                    logger.warn("Replica {} is {} ms behind, and gets no reads until it catches up.", replica.key, lag);
+                }
+            } catch (SQLException | RuntimeException e) {
+                usable = false;
+                if (replica.usable) {
+                    logger.warn("Replica {} failed its health check, and gets no reads until it recovers.", replica.key, e);
+                }
+            }
+            replica.usable = usable;
+        }
+
+        try {
+            lastBeat = writeHeartbeat();
+            if (firstBeat == 0) {
+                firstBeat = lastBeat;
+            }
+        } catch (SQLException | RuntimeException e) {
+            // Replicas only fall further behind until the primary is back.
+            logger.warn("Couldn't write a heartbeat to the primary database.", e);
+        }
+    }
+
+    /**
+     * Closes the connection pools of the primary and the replicas.
+     */
+    public void close() throws Exception {
+        for (Object target : getResolvedDataSources().values()) {
+            if (target instanceof AutoCloseable) {
+                ((AutoCloseable) target).close();
+            }
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly() || TodoReplicaStickiness.isPinned()) {
+            return PRIMARY;
+        }
+
+        // Replicas take turns, skipping the ones that are down or behind.
+        int start = Math.floorMod(nextReplica.getAndIncrement(), Math.max(replicas.size(), 1));
+
+        for (int i = 0; i < replicas.size(); i++) {
+            Replica replica = replicas.get((start + i) % replicas.size());
+
+            if (replica.usable) {
+                return replica.key;
+            }
+        }
+
+        return PRIMARY;
+    }
+
+    // Returns a replica's heartbeat, which fails until the replica has
+    // received the first one.
+    private long readHeartbeat(DataSource replica) throws SQLException {
+        try (Connection connection = replica.getConnection();
+                Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery(SELECT_HEARTBEAT_SQL)) {
+            if (!resultSet.next()) {
+                throw new SQLException("The replica hasn't received a heartbeat yet!");
+            }
+
+            return resultSet.getLong(1);
+        }
+    }
+
+    private long writeHeartbeat() throws SQLException {
+        long beat = clock.millis();
+
+        try (Connection connection = primary.getConnection()) {
+            connection.setAutoCommit(true);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(CREATE_HEARTBEAT_SQL);
+            }
+            try (PreparedStatement update = connection.prepareStatement(UPDATE_HEARTBEAT_SQL)) {
+                update.setLong(1, beat);
+                if (update.executeUpdate() == 0) {
+                    try (PreparedStatement insert = connection.prepareStatement(INSERT_HEARTBEAT_SQL)) {
+                        insert.setLong(1, beat);
+                        insert.executeUpdate();
+                    }
+                }
+            }
+        }
+
+        return beat;
+    }
+}
@@ -0,0 +1,334 @@
+package com.pebblepost.todo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Finds items by the words in their descriptions.
+ * 
+ * Each list has an inverted index from words to the items containing them,
+ * and from every prefix of those words, between
+ * {@link TodoProperties.Search#getMinPrefixLength()} and
+ * {@link TodoProperties.Search#getMaxPrefixLength()} characters long, so that
+ * a query matches items as it's being typed. A list's index is built from the
+ * list the first time it's searched, and is then kept up to date from item
+ * changes, so lists nobody searches cost nothing.
+ * 
+ * Every word of a query has to match, as a word or a prefix of one. Matches
+ * are ranked by how rare the words they match are, and whole words count
+ * twice as much as prefixes.
+ */
+@Component
+public class TodoSearchIndex {
+
+    /**
+     * A page of item IDs, best match first.
+     */
+    public static class Hits {
+        private final List<Long> ids;
+
+        private final boolean hasMore;
+
+        Hits(List<Long> ids, boolean hasMore) {
+            this.ids = ids;
+            this.hasMore = hasMore;
+        }
+
+        public List<Long> getIds() {
+            return ids;
+        }
+
+        public boolean hasMore() {
+            return hasMore;
+        }
+    }
+
+    private final TodoProperties.Search properties;
+
+    private final ConcurrentMap<String, ListIndex> listIndexes = new ConcurrentHashMap<String, ListIndex>();
+
+    public TodoSearchIndex(TodoProperties properties) {
+        this.properties = properties.getSearch();
+    }
+
+    /**
+     * Splits text into lower-case runs of letters and digits.
+     */
+    public static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<String>();
+
+        if (text == null) {
+            return words;
+        }
+
+        String lowerCase = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+
+        for (int i = 0; i < lowerCase.length(); i++) {
+            if (Character.isLetterOrDigit(lowerCase.charAt(i))) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                words.add(lowerCase.substring(start, i));
+                start = -1;
+            }
+        }
+        if (start >= 0) {
+            words.add(lowerCase.substring(start));
+        }
+
+        return words;
+    }
+
+    /**
+     * Returns the IDs of items matching every word of {@code query}, skipping
+     * the first {@code offset} matches.
+     * 
+     * @param loader passes every item of the list to a handler, if the list
+     *               hasn't been indexed yet
+     */
+    public Hits search(
+            String listId, String query, int offset, int limit,
+            Consumer<TodoCursorRepository.RowHandler> loader) {
+        Set<String> words = new LinkedHashSet<String>(tokenize(query));
+
+        if (words.isEmpty()) {
+            return new Hits(Collections.emptyList(), false);
+        }
+
+        ListIndex index = indexFor(listId, loader);
+
+        index.lock.readLock().lock();
+        try {
+            return index.search(words, offset, limit);
+        } finally {
+            index.lock.readLock().unlock();
+        }
+    }
+
+    // Indexes are only updated once changes are committed, so that they
+    // never point to items that don't exist.
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTodoChanged(TodoChangedEvent event) {
+        ListIndex index = listIndexes.get(event.getListId());
+
+        if (index == null) {
+            return;
+        }
+
+        index.lock.writeLock().lock();
+        try {
+            if (event.getCurrent() != null) {
+                index.put(event.getCurrent().getId(), event.getCurrent().getDescription());
+            } else {
+                index.remove(event.getId());
+            }
+        } finally {
+            index.lock.writeLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTodoPatched(TodoPatchedEvent event) {
+        ListIndex index = listIndexes.get(event.getListId());
+
+        if (index == null || event.getDescription() == null) {
+            return;
+        }
+
+        index.lock.writeLock().lock();
+        try {
+            index.put(event.getId(), event.getDescription());
+        } finally {
+            index.lock.writeLock().unlock();
+        }
+    }
+
+    // Bulk changes don't say which items changed. Completing items doesn't
+    // change their descriptions, but after a bulk delete the list is indexed
+    // again on its next search.
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTodoBulkChanged(TodoBulkChangedEvent event) {
+        if (event.getDeleted()) {
+            listIndexes.remove(event.getListId());
+        }
+    }
+
+    private ListIndex indexFor(String listId, Consumer<TodoCursorRepository.RowHandler> loader) {
+        ListIndex index = listIndexes.get(listId);
+
+        if (index != null) {
+            return index;
+        }
+
+        // The new index is locked before it's published, so that searches
+        // and changes wait for it to be built. Changes committed while it's
+        // built are applied after, and applying one twice does no harm.
+        ListIndex created = new ListIndex();
+
+        created.lock.writeLock().lock();
+        try {
+            index = listIndexes.putIfAbsent(listId, created);
+            if (index != null) {
+                return index;
+            }
+            try {
+                loader.accept((id, description, completed, version) -> created.put(id, description));
+            } catch (RuntimeException e) {
+                listIndexes.remove(listId, created);
+                throw e;
+            }
+
+            return created;
+        } finally {
+            created.lock.writeLock().unlock();
+        }
+    }
+
+    private class ListIndex {
+
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        // Everything below is guarded by `lock`.
+
+        final Map<String, Set<Long>> itemsByWord = new HashMap<String, Set<Long>>();
+
+        final Map<String, Set<Long>> itemsByPrefix = new HashMap<String, Set<Long>>();
+
+        // The words of each item, to take it out of the index again.
+        final Map<Long, Set<String>> wordsById = new HashMap<Long, Set<String>>();
+
+        void put(long id, String description) {
+            remove(id);
+
+            Set<String> words = new HashSet<String>(tokenize(description));
+
+            for (String word : words) {
+                itemsByWord.computeIfAbsent(word, key -> new HashSet<Long>()).add(id);
+                for (String prefix : prefixes(word)) {
+                    itemsByPrefix.computeIfAbsent(prefix, key -> new HashSet<Long>()).add(id);
+                }
+            }
+            wordsById.put(id, words);
+        }
+
+        void remove(long id) {
+            Set<String> words = wordsById.remove(id);
+
+            if (words == null) {
+                return;
+            }
+            for (String word : words) {
+                removePosting(itemsByWord, word, id);
+                for (String prefix : prefixes(word)) {
+                    removePosting(itemsByPrefix, prefix, id);
+                }
+            }
+        }
+
+        Hits search(Set<String> words, int offset, int limit) {
+            Map<Long, Double> scores = null;
+
+            for (String word : words) {
+                Set<Long> exact = itemsByWord.getOrDefault(word, Collections.emptySet());
+                Set<Long> matches = matches(word);
+
+                if (matches.isEmpty()) {
+                    return new Hits(Collections.emptyList(), false);
+                }
+
+                double weight = Math.log(1 + (double) wordsById.size() / matches.size());
+                Map<Long, Double> wordScores = new HashMap<Long, Double>();
+
+                // Narrowing down the items matching the words so far is
+                // cheaper than going through every match of this one.
+                Iterable<Long> candidates = scores == null ? matches : scores.keySet();
+
+                for (Long id : candidates) {
+                    if (matches.contains(id)) {
+                        double score = exact.contains(id) ? 2 * weight : weight;
+
+                        wordScores.put(id, scores == null ? score : scores.get(id) + score);
+                    }
+                }
+                scores = wordScores;
+            }
+
+            List<Map.Entry<Long, Double>> ranked = new ArrayList<Map.Entry<Long, Double>>(scores.entrySet());
+
+            ranked.sort(Map.Entry.<Long, Double>comparingByValue().reversed()
+                    .thenComparing(Map.Entry.comparingByKey()));
+
+            List<Long> ids = new ArrayList<Long>(Math.max(0, Math.min(limit, ranked.size() - offset)));
+
+            for (int i = offset; i < ranked.size() && ids.size() < limit; i++) {
+                ids.add(ranked.get(i).getKey());
+            }
+
+            return new Hits(ids, offset + ids.size() < ranked.size());
+        }
+
+        // Returns the items with a word starting with `word`.
+        private Set<Long> matches(String word) {
+            if (word.length() < properties.getMinPrefixLength()) {
+                return itemsByWord.getOrDefault(word, Collections.emptySet());
+            }
+            if (word.length() <= properties.getMaxPrefixLength()) {
+                return itemsByPrefix.getOrDefault(word, Collections.emptySet());
+            }
+
+            // Longer prefixes aren't indexed, so the items with the longest
+            // indexed prefix are checked one by one.
+            Set<Long> matches = new HashSet<Long>();
+
+            for (Long id : itemsByPrefix.getOrDefault(
+                    word.substring(0, properties.getMaxPrefixLength()), Collections.emptySet())) {
+                for (String itemWord : wordsById.get(id)) {
+                    if (itemWord.startsWith(word)) {
+                        matches.add(id);
+                        break;
+                    }
+                }
+            }
+
+            return matches;
+        }
+
+        private List<String> prefixes(String word) {
+            int longest = Math.min(word.length(), properties.getMaxPrefixLength());
+            List<String> prefixes = new ArrayList<String>();
+
+            for (int length = properties.getMinPrefixLength(); length <= longest; length++) {
+                prefixes.add(word.substring(0, length));
+            }
+
+            return prefixes;
+        }
+
+        private void removePosting(Map<String, Set<Long>> postings, String key, long id) {
+            Set<Long> ids = postings.get(key);
+
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) {
+                    postings.remove(key);
+                }
+            }
+        }
+    }
+}
@@ -1,66 +1,772 @@
 package com.pebblepost.todo;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import javassist.NotFoundException;
 
-import org.hibernate.StaleStateException;
-import org.springframework.dao.EmptyResultDataAccessException;
-import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import io.micrometer.core.annotation.Timed;
+
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+/**
+ * Reads and writes the items of lists.
+ * 
+ * Every operation is timed as {@code todo.service}, tagged with the method
+ * name, so latency can be told apart from the web layer's. Writes start by
+ * locking lists that are moving between shards, see
+ * {@link TodoShardRouter#lockIfMoving(String)}.
+ */
 @Service
 public class TodoService {
 
+    /**
+     * The name of the timer recording the duration of every operation.
+     */
+    public static final String TIMER_NAME = "todo.service";
+
+    /**
+     * The name of the cache holding items by list and item ID.
+     * 
+     * The cache is configured through the {@code spring.cache.*} properties.
+     * 
+     * @see #cacheKey(String, Long)
+     */
+    public static final String TODO_CACHE = "todos";
+
+    // The key of methods taking a list ID and an item ID, in that order.
+    // Arguments are referred to by position, since SpEL only knows their
+    // names when the code is compiled with `-parameters`.
+    private static final String CACHE_KEY = "T(com.pebblepost.todo.TodoService).cacheKey(#p0, #p1)";
+
+    // How many times an update or delete looks for an item that keeps being
+    // toggled under it, before giving up with a conflict.
+    private static final int MAX_WRITE_ATTEMPTS = 3;
+
     private final TodoRepository todoRepository;
 
-    public TodoService(TodoRepository todoRepository) {
+    private final TodoCursorRepository todoCursorRepository;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    // Only present in group commit mode.
+    private final Optional<TodoWriteQueue> writeQueue;
+
+    // Only present when items aren't stored in the database.
+    private final Optional<TodoItemStore> itemStore;
+
+    private final TodoSearchIndex searchIndex;
+
+    private final TodoShardRouter shardRouter;
+
+    public TodoService(
+            TodoRepository todoRepository,
+            TodoCursorRepository todoCursorRepository,
+            ApplicationEventPublisher eventPublisher,
+            Optional<TodoWriteQueue> writeQueue,
+            Optional<TodoItemStore> itemStore,
+            TodoSearchIndex searchIndex,
+            TodoShardRouter shardRouter) {
         this.todoRepository = todoRepository;
+        this.todoCursorRepository = todoCursorRepository;
+        this.eventPublisher = eventPublisher;
+        this.writeQueue = writeQueue;
+        this.itemStore = itemStore;
+        this.searchIndex = searchIndex;
+        this.shardRouter = shardRouter;
     }
 
-    Todo createTodo(Todo newTodo) {
+    /**
+     * Returns the key of an item in {@link #TODO_CACHE}.
+     * 
+     * Item IDs are only unique within a list, as far as reads are concerned,
+     * so every cached read and eviction includes the list ID.
+     */
+    public static String cacheKey(String listId, Long id) {
+        return listId + "/" + id;
+    }
+
+    /**
+     * Creates a new item in a list.
+     * 
+     * In group commit mode, the item is only queued, and is written with the
+     * returned ID later.
+     * 
+     * @throws java.util.concurrent.RejectedExecutionException if the write
+     *                                                         queue is full
+     */
+    @Timed(TIMER_NAME)
+    @Transactional
+    public Todo createTodo(String listId, Todo newTodo) {
+        shardRouter.lockIfMoving(listId);
+
+        if (itemStore.isPresent()) {
+            checkDescriptionLength(newTodo.getDescription());
+
+            return publish(itemStore.get().create(listId, newTodo.getDescription(), newTodo.getCompleted()));
+        }
+        if (writeQueue.isPresent()) {
+            checkDescriptionLength(newTodo.getDescription());
+
+            return writeQueue.get().create(
+                    newTodoInList(listId, newTodo.getDescription(), newTodo.getCompleted()));
+        }
+
         // We don't want this method to overwrite existing Todo items,
         // so we create a copy of the entity without an ID:
-        return todoRepository.saveAndFlush(
-                new Todo(newTodo.getDescription(), newTodo.getCompleted()));
+        Todo created = todoRepository.saveAndFlush(
+                newTodoInList(listId, newTodo.getDescription(), newTodo.getCompleted()));
+
+        eventPublisher.publishEvent(TodoChangedEvent.created(snapshot(created)));
+
+        return created;
     }
 
-    public List<Todo> getTodos() {
-        return todoRepository.findAll();
+    @Timed(TIMER_NAME)
+    @Transactional(readOnly = true)
+    public List<Todo> getTodos(String listId) {
+        if (itemStore.isPresent()) {
+            return itemStore.get().findByListId(listId);
+        }
+
+        return todoRepository.findByListId(listId);
     }
 
-    public Todo getTodo(Long id) throws NotFoundException {
-        return todoRepository
-                .findById(id)
+    /**
+     * Returns up to {@code limit} items with IDs greater than {@code afterId},
+     * in ascending ID order.
+     * 
+     * Seeking by ID (rather than using an offset) lets the database jump
+     * straight to the start of the page through the primary key index, so
+     * the cost of fetching a page doesn't grow with the page's position in
+     * the list.
+     */
+    @Timed(TIMER_NAME)
+    @Transactional(readOnly = true)
+    public Slice<Todo> getTodosAfter(String listId, long afterId, int limit) {
+        if (itemStore.isPresent()) {
+            return itemStore.get().findAfter(listId, afterId, limit);
+        }
+
+        return todoRepository.findByListIdAndIdGreaterThan(
+                listId, afterId, PageRequest.of(0, limit, Sort.by("id")));
+    }
+
+    /**
+     * Returns up to {@code limit} items with IDs greater than {@code afterId},
+     * and the given completion status, in ascending ID order.
+     * 
+     * @see #getTodosAfter(String, long, int)
+     */
+    @Timed(TIMER_NAME)
+    @Transactional(readOnly = true)
+    public Slice<Todo> getTodosAfter(String listId, boolean completed, long afterId, int limit) {
+        if (itemStore.isPresent()) {
+            return findStoredAfter(listId, completed, afterId, limit);
+        }
+
+        return todoRepository.findByListIdAndCompletedAndIdGreaterThan(
+                listId, completed, afterId, PageRequest.of(0, limit, Sort.by("id")));
+    }
+
+    /**
+     * Passes every item to {@code handler}, in ascending ID order, without
+     * loading the whole list into memory.
+     */
+    @Timed(TIMER_NAME)
+    public void streamTodos(String listId, TodoCursorRepository.RowHandler handler) {
+        if (itemStore.isPresent()) {
+            itemStore.get().forEach(listId, handler);
+
+            return;
+        }
+
+        todoCursorRepository.forEach(listId, handler);
+    }
+
+    /**
+     * Returns up to {@code limit} items whose descriptions match every word
+     * of {@code query}, best match first, skipping the first {@code offset}
+     * matches.
+     * 
+     * @see TodoSearchIndex
+     */
+    // This isn't read-only, so that a list's index is built from the primary
+    // database. An index built from a lagging replica would never learn of
+    // the changes the replica was missing.
+    @Timed(TIMER_NAME)
+    @Transactional
+    public Slice<Todo> searchTodos(String listId, String query, int offset, int limit) {
+        TodoSearchIndex.Hits hits = searchIndex.search(
+                listId, query, offset, limit, handler -> streamTodos(listId, handler));
+        List<Todo> found = itemStore.isPresent()
+                ? itemStore.get().findByIds(listId, hits.getIds())
+                : todoRepository.findByListIdAndIdIn(listId, hits.getIds());
+        Map<Long, Todo> foundById = new HashMap<Long, Todo>();
+        List<Todo> items = new ArrayList<Todo>(found.size());
+
+        for (Todo item : found) {
+            foundById.put(item.getId(), item);
+        }
+        // Items deleted since they were found are left out of the page.
+        for (Long id : hits.getIds()) {
+            if (foundById.containsKey(id)) {
+                items.add(foundById.get(id));
+            }
+        }
+
+        return new SliceImpl<Todo>(items, PageRequest.of(0, Math.max(limit, 1)), hits.hasMore());
+    }
+
+    @Timed(TIMER_NAME)
+    @Cacheable(cacheNames = TODO_CACHE, key = CACHE_KEY)
+    @Transactional(readOnly = true)
+    public Todo getTodo(String listId, Long id) throws NotFoundException {
+        Optional<Todo> item = itemStore.isPresent()
+                ? itemStore.get().find(listId, id)
+                : todoRepository.findByListIdAndId(listId, id);
+
+        return item
                 .orElseThrow(
                         () -> new NotFoundException(
                                 String.format("Todo with ID %s not found in repository!", id)));
     }
 
-    public Todo updateTodo(Long id, Todo updatedTodo) {
-        return todoRepository.saveAndFlush(Todo.builder()
+    /**
+     * Replaces an item's description and completion status, whatever version
+     * it's at.
+     * 
+     * @see #updateTodo(String, Long, Todo, Long)
+     */
+    @Timed(TIMER_NAME)
+    @Transactional(rollbackFor = NotFoundException.class)
+    public Todo updateTodo(String listId, Long id, Todo updatedTodo) throws NotFoundException {
+        return updateTodo(listId, id, updatedTodo, null);
+    }
+
+    /**
+     * Replaces an item's description and completion status, without loading
+     * the item.
+     * 
+     * The item is changed with one or two statements, which also tell its
+     * previous {@code completed} value, for the counters. Unless
+     * {@code expectedVersion} is given, the new version takes one more
+     * statement to read. The cached copy is evicted by
+     * {@link TodoCacheEvictor} once the change commits.
+     * 
+     * @param expectedVersion if not {@code null}, only replace the item if
+     *                        it's at this version
+     * @throws NotFoundException                 if the list has no item with
+     *                                           this ID
+     * @throws OptimisticLockingFailureException if the item isn't at
+     *                                           {@code expectedVersion}, or
+     *                                           keeps changing while it's
+     *                                           replaced
+     */
+    @Timed(TIMER_NAME)
+    @Transactional(rollbackFor = NotFoundException.class)
+    public Todo updateTodo(String listId, Long id, Todo updatedTodo, Long expectedVersion) throws NotFoundException {
+        shardRouter.lockIfMoving(listId);
+
+        checkDescriptionLength(updatedTodo.getDescription());
+
+        if (itemStore.isPresent()) {
+            Optional<TodoChangedEvent> change = expectedVersion != null
+                    ? itemStore.get().update(
+                            listId, id, updatedTodo.getDescription(), updatedTodo.getCompleted(), expectedVersion)
+                    : itemStore.get().replace(listId, id, updatedTodo.getDescription(), updatedTodo.getCompleted());
+
+            return publish(change.orElseThrow(() -> new NotFoundException(
+                    String.format("Todo with ID %s not found in repository!", id))));
+        }
+
+        Todo updated = Todo.builder()
                 .setId(id)
+                .setListId(listId)
                 .setDescription(updatedTodo.getDescription())
                 .setCompleted(updatedTodo.getCompleted())
-                .build());
+                .build();
+
+        if (writeQueue.isPresent()) {
+            Optional<Todo> pending = writeQueue.get().getPending(listId, id);
+            Todo existing = (pending.isPresent()
+                    ? pending
+                    : todoRepository.findByListIdAndId(listId, id).map(item -> new Todo(
+                            id, listId, item.getDescription(), item.getCompleted(), item.getVersion())))
+                            .orElseThrow(() -> new NotFoundException(
+                                    String.format("Todo with ID %s not found in repository!", id)));
+
+            if (expectedVersion != null && existing.getVersion() != expectedVersion) {
+                throw new OptimisticLockingFailureException(String.format(
+                        "Todo with ID %s is no longer at version %s!", id, expectedVersion));
+            }
+            // Each queued write is given the next version, which is what gets written.
+            Todo queued = new Todo(
+                    id, listId, updated.getDescription(), updated.getCompleted(), existing.getVersion() + 1);
+
+            writeQueue.get().update(existing, queued);
+
+            return queued;
+        }
+
+        // If neither statement matches the item, it may have been toggled in
+        // between, so without an expected version we try again, a few times.
+        for (int attempt = 1; ; attempt++) {
+            Optional<Boolean> previousCompleted = todoRepository.replaceReturningPreviousCompleted(
+                    listId, id, updated.getDescription(), updated.getCompleted(), expectedVersion);
+
+            if (previousCompleted.isPresent()) {
+                long version = newVersion(listId, id, expectedVersion);
+
+                eventPublisher.publishEvent(new TodoPatchedEvent(
+                        listId, id, updated.getDescription(), updated.getCompleted(), previousCompleted.get(),
+                        version));
+
+                return new Todo(id, listId, updated.getDescription(), updated.getCompleted(), version);
+            }
+            if (!todoRepository.existsByListIdAndId(listId, id)) {
+                throw new NotFoundException(
+                        String.format("Todo with ID %s not found in repository!", id));
+            }
+            if (expectedVersion != null) {
+                throw new OptimisticLockingFailureException(String.format(
+                        "Todo with ID %s is no longer at version %s!", id, expectedVersion));
+            }
+            if (attempt == MAX_WRITE_ATTEMPTS) {
+                throw new OptimisticLockingFailureException(String.format(
+                        "Todo with ID %s kept changing while being replaced!", id));
+            }
+        }
     }
 
-    public void deleteTodo(Long id) throws NotFoundException {
-        try {
-            todoRepository.deleteById(id);
-            todoRepository.flush();
-        } catch (EmptyResultDataAccessException e) {
+    /**
+     * Changes the fields set in {@code patch}, without loading the item.
+     * 
+     * Toggling {@code completed}, the most common change, takes a single
+     * {@code UPDATE} statement. Other cases may take another statement or two
+     * to tell apart unchanged, missing, and conflicting items.
+     * 
+     * @throws OptimisticLockingFailureException if {@code patch} has a
+     *                                           version, and the item is at
+     *                                           a different one
+     */
+    @Timed(TIMER_NAME)
+    @Transactional(rollbackFor = NotFoundException.class)
+    public void patchTodo(String listId, Long id, TodoPatch patch) throws NotFoundException {
+        shardRouter.lockIfMoving(listId);
+
+        if (patch.getDescription() == null && patch.getCompleted() == null) {
+            throw new IllegalArgumentException("A patch has to set at least one field!");
+        }
+        checkDescriptionLength(patch.getDescription());
+
+        if (itemStore.isPresent()) {
+            TodoChangedEvent change = itemStore.get()
+                    .update(listId, id, patch.getDescription(), patch.getCompleted(), patch.getVersion())
+                    .orElseThrow(() -> new NotFoundException(
+                            String.format("Todo with ID %s not found in repository!", id)));
+
+            eventPublisher.publishEvent(new TodoPatchedEvent(
+                    listId, id, patch.getDescription(), patch.getCompleted(),
+                    change.getPrevious().getCompleted(), change.getCurrent().getVersion()));
+
+            return;
+        }
+
+        // If only items whose `completed` value differs get updated, an
+        // updated row tells us the previous value without reading it.
+        if (patch.getCompleted() != null
+                && todoRepository.patch(
+                        listId, id, patch.getDescription(), patch.getCompleted(), patch.getVersion(), true) == 1) {
+            eventPublisher.publishEvent(new TodoPatchedEvent(
+                    listId, id, patch.getDescription(), patch.getCompleted(), !patch.getCompleted(),
+                    newVersion(listId, id, patch.getVersion())));
+
+            return;
+        }
+        if (todoRepository.patch(
+                listId, id, patch.getDescription(), patch.getCompleted(), patch.getVersion(), false) == 1) {
+            // Either `completed` isn't being changed, or the first statement
+            // found it already had the requested value.
+            eventPublisher.publishEvent(new TodoPatchedEvent(
+                    listId, id, patch.getDescription(), patch.getCompleted(), patch.getCompleted(),
+                    newVersion(listId, id, patch.getVersion())));
+
+            return;
+        }
+        if (!todoRepository.existsByListIdAndId(listId, id)) {
             throw new NotFoundException(
-                    String.format("Todo with ID %s not found in repository!", id),
-                    e);
-        } catch (ObjectOptimisticLockingFailureException e) {
-            if (StaleStateException.class.equals(e.getCause().getClass())) {
+                    String.format("Todo with ID %s not found in repository!", id));
+        }
+
+        throw new OptimisticLockingFailureException(String.format(
+                "Todo with ID %s is no longer at version %s!", id, patch.getVersion()));
+    }
+
+    // Tells the version of an item this transaction just updated. With an
+    // expected version, it's the next one. Otherwise, our update holds the
+    // row's lock, so reading it back can't see anyone else's change.
+    private long newVersion(String listId, Long id, Long expectedVersion) {
+        if (expectedVersion != null) {
+            return expectedVersion + 1;
+        }
+
+        return todoRepository.findVersionByListIdAndId(listId, id).orElseThrow(() -> new IllegalStateException(
+                String.format("Todo with ID %s disappeared while being updated!", id)));
+    }
+
+    // We evict before deleting, so that the cache doesn't keep serving an
+    // item that a failed delete found to be gone already.
+    @Timed(TIMER_NAME)
+    @CacheEvict(cacheNames = TODO_CACHE, key = CACHE_KEY, beforeInvocation = true)
+    @Transactional(rollbackFor = NotFoundException.class)
+    public void deleteTodo(String listId, Long id) throws NotFoundException {
+        shardRouter.lockIfMoving(listId);
+
+        if (itemStore.isPresent()) {
+            publish(itemStore.get()
+                    .delete(listId, id)
+                    .orElseThrow(() -> new NotFoundException(
+                            String.format("Todo with ID %s not found in repository!", id))));
+
+            return;
+        }
+
+        // Like in `updateTodo`, the statement that deletes the item tells us
+        // its `completed` value without reading it. If neither finds the item,
+        // it may have been toggled in between, so we try again, a few times.
+        for (int attempt = 1; ; attempt++) {
+            Optional<Boolean> completed = todoRepository.deleteReturningCompleted(listId, id);
+
+            if (completed.isPresent()) {
+                eventPublisher.publishEvent(TodoChangedEvent.deleted(new Todo(id, listId, null, completed.get())));
+
+                return;
+            }
+            if (!todoRepository.existsByListIdAndId(listId, id)) {
                 throw new NotFoundException(
-                        String.format("Couldn't delete todo with ID %s! It may have already been deleted.", id),
-                        e);
-            } else {
-                throw (e);
+                        String.format("Todo with ID %s not found in repository!", id));
+            }
+            if (attempt == MAX_WRITE_ATTEMPTS) {
+                throw new OptimisticLockingFailureException(String.format(
+                        "Todo with ID %s kept changing while being deleted!", id));
+            }
+        }
+    }
+
+    /**
+     * Completes every active item of a list.
+     * 
+     * Items are changed with a single bulk {@code UPDATE} statement, without
+     * reading them, and the change is published once for the whole list
+     * rather than for each item. In group commit mode, writes queued before
+     * this are committed first.
+     * 
+     * @return the number of completed items
+     */
+    @Timed(TIMER_NAME)
+    @Transactional
+    public int completeAll(String listId) {
+        shardRouter.lockIfMoving(listId);
+
+        int count;
+
+        if (itemStore.isPresent()) {
+            count = 0;
+            for (Long id : findStoredIds(listId, false)) {
+                if (itemStore.get().update(listId, id, null, true, null).isPresent()) {
+                    count++;
+                }
+            }
+        } else {
+            count = todoRepository.bulkSetCompleted(listId, false, true);
+        }
+        if (count > 0) {
+            eventPublisher.publishEvent(new TodoBulkChangedEvent(listId, false, false, count));
+        }
+
+        return count;
+    }
+
+    /**
+     * Deletes every item of a list with the given completion status.
+     * 
+     * Like {@link #completeAll(String)}, items are deleted with a single bulk
+     * {@code DELETE} statement, and the change is published once for the
+     * whole list.
+     * 
+     * @return the number of deleted items
+     */
+    @Timed(TIMER_NAME)
+    @Transactional
+    public int deleteAll(String listId, boolean completed) {
+        shardRouter.lockIfMoving(listId);
+
+        int count;
+
+        if (itemStore.isPresent()) {
+            count = 0;
+            for (Long id : findStoredIds(listId, completed)) {
+                if (itemStore.get().delete(listId, id).isPresent()) {
+                    count++;
+                }
+            }
+        } else {
+            count = todoRepository.bulkDelete(listId, completed);
+        }
+        if (count > 0) {
+            eventPublisher.publishEvent(new TodoBulkChangedEvent(listId, completed, true, count));
+        }
+
+        return count;
+    }
+
+    /**
+     * Applies all {@code operations} in a single transaction.
+     * 
+     * Items to update or delete are loaded with a single query, and changes
+     * are flushed once at the end, so Hibernate can send them to the database
+     * in JDBC batches, rather than one statement per round trip. Operations
+     * on missing items are reported in their results, and don't stop the
+     * rest of the batch.
+     * 
+     * @throws OptimisticLockingFailureException if an item to update or
+     *                                           delete changed since it was
+     *                                           loaded, in which case none of
+     *                                           the batch is applied
+     */
+    @Timed(TIMER_NAME)
+    @Transactional
+    public List<TodoBatchResult> applyBatch(String listId, List<TodoBatchOperation> operations) {
+        shardRouter.lockIfMoving(listId);
+
+        if (itemStore.isPresent()) {
+            List<TodoBatchResult> results = new ArrayList<TodoBatchResult>(operations.size());
+
+            for (TodoBatchOperation operation : operations) {
+                results.add(applyStoredBatchOperation(listId, operation));
+            }
+
+            return results;
+        }
+
+        Map<Long, Todo> items = new HashMap<Long, Todo>();
+        List<Long> ids = operations.stream()
+                .filter(operation -> operation.getType() != TodoBatchOperation.Type.CREATE)
+                .map(TodoBatchOperation::getId)
+                .filter(id -> id != null)
+                .distinct()
+                .toList();
+
+        for (Todo item : todoRepository.findByListIdAndIdIn(listId, ids)) {
+            items.put(item.getId(), item);
+        }
+
+        List<TodoBatchResult> results = new ArrayList<TodoBatchResult>(operations.size());
+
+        for (TodoBatchOperation operation : operations) {
+            results.add(applyBatchOperation(listId, operation, items));
+        }
+        todoRepository.flush();
+
+        return results;
+    }
+
+    private TodoBatchResult applyBatchOperation(
+            String listId, TodoBatchOperation operation, Map<Long, Todo> items) {
+        if (operation.getType() == null) {
+            return TodoBatchResult.failure(HttpStatus.BAD_REQUEST, "Missing operation type!");
+        }
+        if (isDescriptionTooLong(operation.getDescription())) {
+            return TodoBatchResult.failure(HttpStatus.BAD_REQUEST, String.format(
+                    "Description is longer than %s characters!", Todo.MAX_DESCRIPTION_LENGTH_CH));
+        }
+
+        switch (operation.getType()) {
+            case CREATE: {
+                Todo created = todoRepository.save(
+                        newTodoInList(listId, operation.getDescription(), operation.getCompleted()));
+
+                items.put(created.getId(), created);
+                eventPublisher.publishEvent(TodoChangedEvent.created(snapshot(created)));
+
+                return TodoBatchResult.success(HttpStatus.CREATED, created);
             }
+            case UPDATE: {
+                Todo updated = items.get(operation.getId());
+
+                if (updated == null) {
+                    return batchItemNotFound(operation.getId());
+                }
+
+                Todo previous = snapshot(updated);
+
+                // The item is already in the persistence context, so the change
+                // is written on the final flush without another query.
+                updated.setDescription(operation.getDescription());
+                updated.setCompleted(operation.getCompleted());
+                eventPublisher.publishEvent(TodoChangedEvent.updated(previous, snapshot(updated)));
+
+                return TodoBatchResult.success(HttpStatus.OK, updated);
+            }
+            case DELETE: {
+                Todo deleted = items.remove(operation.getId());
+
+                if (deleted == null) {
+                    return batchItemNotFound(operation.getId());
+                }
+                todoRepository.delete(deleted);
+                eventPublisher.publishEvent(TodoChangedEvent.deleted(snapshot(deleted)));
+
+                return TodoBatchResult.success(HttpStatus.NO_CONTENT, null);
+            }
+            default:
+                throw new IllegalArgumentException(
+                        String.format("Unsupported batch operation type: %s", operation.getType()));
+        }
+    }
+
+    // Writes to an item store are applied one at a time, since it has
+    // nothing to batch.
+    private TodoBatchResult applyStoredBatchOperation(String listId, TodoBatchOperation operation) {
+        if (operation.getType() == null) {
+            return TodoBatchResult.failure(HttpStatus.BAD_REQUEST, "Missing operation type!");
+        }
+        if (isDescriptionTooLong(operation.getDescription())) {
+            return TodoBatchResult.failure(HttpStatus.BAD_REQUEST, String.format(
+                    "Description is longer than %s characters!", Todo.MAX_DESCRIPTION_LENGTH_CH));
+        }
+
+        switch (operation.getType()) {
+            case CREATE:
+                return TodoBatchResult.success(HttpStatus.CREATED, publish(
+                        itemStore.get().create(listId, operation.getDescription(), operation.getCompleted())));
+            case UPDATE: {
+                Optional<TodoChangedEvent> change = operation.getId() == null
+                        ? Optional.empty()
+                        : itemStore.get().replace(
+                                listId, operation.getId(), operation.getDescription(), operation.getCompleted());
+
+                return change.isPresent()
+                        ? TodoBatchResult.success(HttpStatus.OK, publish(change.get()))
+                        : batchItemNotFound(operation.getId());
+            }
+            case DELETE: {
+                Optional<TodoChangedEvent> change = operation.getId() == null
+                        ? Optional.empty()
+                        : itemStore.get().delete(listId, operation.getId());
+
+                if (change.isEmpty()) {
+                    return batchItemNotFound(operation.getId());
+                }
+                publish(change.get());
+
+                return TodoBatchResult.success(HttpStatus.NO_CONTENT, null);
+            }
+            default:
+                throw new IllegalArgumentException(
+                        String.format("Unsupported batch operation type: %s", operation.getType()));
+        }
+    }
+
+    // Publishes a change made to the item store, and returns the item's new
+    // state.
+    private Todo publish(TodoChangedEvent change) {
+        eventPublisher.publishEvent(change);
+
+        return change.getCurrent();
+    }
+
+    // The item stores only page by ID, so pages of the store are filtered
+    // until one page of matching items is found.
+    private Slice<Todo> findStoredAfter(String listId, boolean completed, long afterId, int limit) {
+        List<Todo> items = new ArrayList<Todo>(Math.min(limit, 1024));
+        Slice<Todo> page;
+        long pageAfterId = afterId;
+
+        do {
+            page = itemStore.get().findAfter(listId, pageAfterId, limit);
+            for (Todo item : page) {
+                if (item.getCompleted() != completed) {
+                    continue;
+                }
+                if (items.size() == limit) {
+                    return new SliceImpl<Todo>(items, PageRequest.of(0, limit, Sort.by("id")), true);
+                }
+                items.add(item);
+            }
+            if (page.hasContent()) {
+                pageAfterId = page.getContent().get(page.getNumberOfElements() - 1).getId();
+            }
+        } while (page.hasNext());
+
+        return new SliceImpl<Todo>(items, PageRequest.of(0, limit, Sort.by("id")), false);
+    }
+
+    private List<Long> findStoredIds(String listId, boolean completed) {
+        List<Long> ids = new ArrayList<Long>();
+
+        itemStore.get().forEach(listId, (id, description, isCompleted, version) -> {
+            if (isCompleted == completed) {
+                ids.add(id);
+            }
+        });
+
+        return ids;
+    }
+
+    private static Todo newTodoInList(String listId, String description, boolean completed) {
+        return Todo.builder()
+                .setListId(listId)
+                .setDescription(description)
+                .setCompleted(completed)
+                .build();
+    }
+
+    /**
+     * Copies an item, so that later changes to a managed entity don't show
+     * up in events that have already been published.
+     */
+    private static Todo snapshot(Todo item) {
+        return Todo.builder()
+                .setNullableId(item.getId())
+                .setListId(item.getListId())
+                .setDescription(item.getDescription())
+                .setCompleted(item.getCompleted())
+                .build();
+    }
+
+    // Patches and batch items are checked before they reach the entity, since
+    // bulk updates bypass bean validation, and a failed flush would roll back
+    // a whole batch.
+    private static boolean isDescriptionTooLong(String description) {
+        return description != null && description.length() > Todo.MAX_DESCRIPTION_LENGTH_CH;
+    }
+
+    // Patches and queued writes bypass bean validation, so they're checked up
+    // front.
+    private static void checkDescriptionLength(String description) {
+        if (isDescriptionTooLong(description)) {
+            throw new IllegalArgumentException(String.format(
+                    "Description is longer than %s characters!", Todo.MAX_DESCRIPTION_LENGTH_CH));
         }
     }
 
+    private static TodoBatchResult batchItemNotFound(Long id) {
+        return TodoBatchResult.failure(HttpStatus.NOT_FOUND,
+                String.format("Todo with ID %s not found in repository!", id));
+    }
+
 }
@@ -0,0 +1,61 @@
+package com.pebblepost.todo;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Binds calls to the services, which take a list ID as their first argument,
+ * to the shard holding the list.
+ * 
+ * This runs before transactions start, so that they get a connection to the
+ * right shard. Calls made inside a transaction stay on its shard. Calls that
+ * find their list moved away in the meantime are routed again, once.
+ */
+@Aspect
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class TodoShardAspect {
+
+    // Aspects are created while other beans are, so the router, which needs
+    // the data source, is only looked up once calls come in.
+    private final ObjectProvider<TodoShardRouter> shardRouter;
+
+    public TodoShardAspect(ObjectProvider<TodoShardRouter> shardRouter) {
+        this.shardRouter = shardRouter;
+    }
+
+    @Around("(execution(public * com.pebblepost.todo.TodoService.*(String, ..))"
+            + " || execution(public * com.pebblepost.todo.TodoChangeLog.getChanges(String, ..))"
+            + " || execution(public * com.pebblepost.todo.TodoListService.getList(String)))")
+    public Object bindToShard(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return joinPoint.proceed();
+        }
+
+        // Binding the list ID as an advice parameter would need this advice
+        // to run after Spring's own first interceptor, which exposes the
+        // match, so it's taken from the arguments instead.
+        String listId = (String) joinPoint.getArgs()[0];
+
+        try {
+            return proceedOnShard(joinPoint, shardRouter.getObject().shardFor(listId));
+        } catch (TodoListMovedException e) {
+            // The move has committed, so the list is found on its new shard.
+            return proceedOnShard(joinPoint, shardRouter.getObject().shardFor(listId));
+        }
+    }
+
+    private static Object proceedOnShard(ProceedingJoinPoint joinPoint, int shard) throws Throwable {
+        Integer previous = TodoShardRouter.bind(shard);
+
+        try {
+            return joinPoint.proceed();
+        } finally {
+            TodoShardRouter.restore(previous);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.pebblepost.todo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Moves lists to the shard they belong on, after shards were added, as
+ * {@code POST /actuator/rebalance}.
+ * 
+ * Each list is moved in a transaction on its old shard, which locks the list
+ * first. Writes to lists that may move lock them before changing anything
+ * (see {@link TodoShardRouter#lockIfMoving(String)}), so the copy doesn't
+ * miss a write in progress, and writes wait while the list is copied. Once
+ * the list is gone from the old shard, they're routed to the new one. Reads
+ * keep being served from the old shard until the move commits there.
+ * 
+ * Once this has run on one instance, {@code todo.sharding.previous-shard-count}
+ * can be dropped.
+ */
+@Endpoint(id = "rebalance")
+public class TodoShardRebalancer {
+
+    private static final Logger logger = LoggerFactory.getLogger(TodoShardRebalancer.class);
+
+    // In the order rows have to be inserted in, for their foreign keys.
+    private static final String[] TABLES = { "todo_list", "todo", "todo_change" };
+
+    private static final String[] LIST_ID_COLUMNS = { "id", "list_id", "list_id" };
+
+    private final TodoShardRouter shardRouter;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    public TodoShardRebalancer(
+            TodoShardRouter shardRouter,
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager) {
+        this.shardRouter = shardRouter;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Moves every list that isn't on the shard it belongs on.
+     */
+    @WriteOperation
+    public TodoBulkResult rebalance() {
+        int moved = 0;
+
+        for (int shard = 0; shard < shardRouter.getShardCount(); shard++) {
+            List<String> listIds = TodoShardRouter.callOnShard(
+                    shard, () -> jdbcTemplate.queryForList("SELECT id FROM todo_list", String.class));
+
+            for (String listId : listIds) {
+                int owner = shardRouter.ownerOf(listId);
+
+                if (owner != shard && moveList(listId, shard, owner)) {
+                    moved++;
+                }
+            }
+        }
+        logger.info("Moved {} lists to the shards they belong on.", moved);
+
+        return new TodoBulkResult(moved);
+    }
+
+    /**
+     * Copies a list, its items, and its change log to another shard, and
+     * then deletes them from the shard they were on.
+     * 
+     * @return {@code false} if the list had already left {@code from}
+     */
+    boolean moveList(String listId, int from, int to) {
+        return TodoShardRouter.callOnShard(from, () -> transactionTemplate.execute(status -> {
+            List<Map<String, Object>> lists = jdbcTemplate.queryForList(
+                    "SELECT * FROM todo_list WHERE id = ? FOR UPDATE", listId);
+
+            if (lists.isEmpty()) {
+                return false;
+            }
+
+            List<List<Map<String, Object>>> rows = new ArrayList<List<Map<String, Object>>>();
+
+            rows.add(lists);
+            for (int i = 1; i < TABLES.length; i++) {
+                rows.add(jdbcTemplate.queryForList(
+                        String.format("SELECT * FROM %s WHERE %s = ?", TABLES[i], LIST_ID_COLUMNS[i]), listId));
+            }
+
+            // Starts a transaction of its own, on the new shard.
+            TodoShardRouter.runOnShard(to, () -> transactionTemplate.executeWithoutResult(inner -> {
+                for (int i = 0; i < TABLES.length; i++) {
+                    insert(TABLES[i], rows.get(i));
+                }
+            }));
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if (status == STATUS_COMMITTED) {
+                        shardRouter.markMoved(listId);
+                    } else if (status == STATUS_ROLLED_BACK) {
+                        // The list stays where it was, so the copy goes.
+                        TodoShardRouter.runOnShard(
+                                to, () -> transactionTemplate.executeWithoutResult(inner -> delete(listId)));
+                    } else {
+                        logger.error("List {} may now be on both shard {} and shard {}!", listId, from, to);
+                    }
+                }
+            });
+            delete(listId);
+
+            return true;
+        }));
+    }
+
+    private void delete(String listId) {
+        for (int i = TABLES.length - 1; i >= 0; i--) {
+            jdbcTemplate.update(
+                    String.format("DELETE FROM %s WHERE %s = ?", TABLES[i], LIST_ID_COLUMNS[i]), listId);
+        }
+    }
+
+    private void insert(String table, List<Map<String, Object>> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        List<String> columns = new ArrayList<String>(rows.get(0).keySet());
+        String sql = String.format("INSERT INTO %s (%s) VALUES (%s)",
+                table, String.join(", ", columns), String.join(", ", Collections.nCopies(columns.size(), "?")));
+        List<Object[]> values = new ArrayList<Object[]>(rows.size());
+
+        for (Map<String, Object> row : rows) {
+            Object[] rowValues = new Object[columns.size()];
+
+            for (int i = 0; i < columns.size(); i++) {
+                rowValues[i] = row.get(columns.get(i));
+            }
+            values.add(rowValues);
+        }
+        jdbcTemplate.batchUpdate(sql, values);
+    }
+}
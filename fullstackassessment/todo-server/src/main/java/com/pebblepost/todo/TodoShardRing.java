@@ -0,0 +1,52 @@
+package com.pebblepost.todo;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * A consistent-hash ring that assigns list IDs to shards.
+ * 
+ * Each shard is hashed to {@code virtualNodes} points on the ring, and a list
+ * belongs to the shard owning the first point at or after the list ID's hash.
+ * Points only depend on a shard's number, so adding a shard only moves the
+ * lists that land on its points, about {@code 1 / shardCount} of them, and
+ * only to the new shard.
+ */
+public class TodoShardRing {
+
+    private final NavigableMap<Long, Integer> points = new TreeMap<Long, Integer>();
+
+    public TodoShardRing(int shardCount, int virtualNodes) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("A ring needs at least one shard!");
+        }
+        for (int shard = 0; shard < shardCount; shard++) {
+            for (int i = 0; i < virtualNodes; i++) {
+                points.put(hash(String.format("shard-%d#%d", shard, i)), shard);
+            }
+        }
+    }
+
+    public int shardFor(String listId) {
+        Map.Entry<Long, Integer> point = points.ceilingEntry(hash(listId));
+
+        return (point != null ? point : points.firstEntry()).getValue();
+    }
+
+    // MD5 spreads similar keys, like the points of one shard, evenly over
+    // the ring. It's only used for placement, so its weakness doesn't matter.
+    private static long hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes(StandardCharsets.UTF_8));
+
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Every Java runtime has to support MD5!", e);
+        }
+    }
+}
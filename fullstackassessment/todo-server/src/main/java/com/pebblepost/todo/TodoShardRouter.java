@@ -0,0 +1,216 @@
+package com.pebblepost.todo;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Decides which shard holds a list, and which shard the current thread's
+ * database connections go to.
+ * 
+ * Lists are placed on shards by a {@link TodoShardRing}. While lists are
+ * being moved to newly added shards, a list whose owner changed is served
+ * from its previous shard until it's gone from there, and writes to it lock
+ * it first, so that they can't interleave with its move. Items and change
+ * log entries get IDs with the number of the shard they're created on in
+ * their top bits, so IDs stay unique when lists move between shards, and
+ * change sequence numbers keep growing after a list moves to a newer shard.
+ * 
+ * Without sharding, there's a single shard 0, and IDs are unchanged.
+ * 
+ * @see TodoShardingConfig
+ */
+@Component
+public class TodoShardRouter {
+
+    /**
+     * The number of low ID bits numbered by each shard on its own.
+     */
+    public static final int LOCAL_ID_BITS = 48;
+
+    private static final String SELECT_LIST_COUNT_SQL = "SELECT COUNT(*) FROM todo_list WHERE id = ?";
+
+    private static final String LOCK_LIST_SQL = "SELECT id FROM todo_list WHERE id = ? FOR UPDATE";
+
+    private static final ThreadLocal<Integer> currentShard = new ThreadLocal<Integer>();
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final int shardCount;
+
+    // Null without sharding.
+    private final TodoShardRing ring;
+
+    // Only set while lists are being moved to new shards.
+    private final TodoShardRing previousRing;
+
+    // Lists known to have moved to their new shard.
+    private final Set<String> movedLists = ConcurrentHashMap.newKeySet();
+
+    public TodoShardRouter(JdbcTemplate jdbcTemplate, TodoProperties properties) {
+        TodoProperties.Sharding sharding = properties.getSharding();
+
+        this.jdbcTemplate = jdbcTemplate;
+        if (!sharding.isEnabled()) {
+            this.shardCount = 1;
+            this.ring = null;
+            this.previousRing = null;
+
+            return;
+        }
+
+        this.shardCount = sharding.getShards().size();
+        this.ring = new TodoShardRing(shardCount, sharding.getVirtualNodes());
+        this.previousRing = sharding.getPreviousShardCount() > 0
+                ? new TodoShardRing(sharding.getPreviousShardCount(), sharding.getVirtualNodes())
+                : null;
+    }
+
+    /**
+     * Returns the shard the current thread's connections go to.
+     */
+    public static int currentShard() {
+        Integer shard = currentShard.get();
+
+        return shard != null ? shard : 0;
+    }
+
+    /**
+     * Runs {@code action} with the current thread's connections going to
+     * {@code shard}.
+     * 
+     * A transaction stays on the shard it started on, so this has to be
+     * called outside of transactions, or start a new one.
+     */
+    public static <T> T callOnShard(int shard, Supplier<T> action) {
+        Integer previous = bind(shard);
+
+        try {
+            return action.get();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    public static void runOnShard(int shard, Runnable action) {
+        callOnShard(shard, () -> {
+            action.run();
+
+            return null;
+        });
+    }
+
+    /**
+     * Sends the current thread's connections to {@code shard}, and returns
+     * the shard they went to before, for {@link #restore(Integer)}.
+     */
+    static Integer bind(int shard) {
+        Integer previous = currentShard.get();
+
+        currentShard.set(shard);
+
+        return previous;
+    }
+
+    static void restore(Integer previous) {
+        if (previous != null) {
+            currentShard.set(previous);
+        } else {
+            currentShard.remove();
+        }
+    }
+
+    /**
+     * Returns an ID numbered {@code localId} by {@code shard}.
+     */
+    public static long encodeId(int shard, long localId) {
+        return ((long) shard << LOCAL_ID_BITS) | localId;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * Returns the shard a list belongs on, which new lists are created on.
+     */
+    public int ownerOf(String listId) {
+        return ring != null ? ring.shardFor(listId) : 0;
+    }
+
+    /**
+     * Returns the shard holding a list.
+     * 
+     * While lists are being moved, this may check whether the list's previous
+     * shard still has it, so it has to be called outside of transactions.
+     */
+    public int shardFor(String listId) {
+        int owner = ownerOf(listId);
+
+        if (!isMoving(listId)) {
+            return owner;
+        }
+
+        int previousOwner = previousRing.shardFor(listId);
+
+        // The list is copied to its new shard before it's deleted from the
+        // previous one, so the previous shard has it until the move commits.
+        if (callOnShard(previousOwner, () -> jdbcTemplate.queryForObject(
+                SELECT_LIST_COUNT_SQL, Integer.class, listId)) > 0) {
+            return previousOwner;
+        }
+        // Lists only ever move to their new shard, so this holds for good.
+        movedLists.add(listId);
+
+        return owner;
+    }
+
+    /**
+     * Locks a list that may be about to move to a new shard until the
+     * current transaction ends, so that it isn't moved while it's being
+     * changed.
+     * 
+     * This has to be called in the transaction writing to the list, before
+     * anything in the list is changed.
+     * 
+     * @throws TodoListMovedException if the list has left the current shard
+     *                                since the call was routed to it
+     */
+    public void lockIfMoving(String listId) {
+        if (!isMoving(listId) || currentShard() != previousRing.shardFor(listId)) {
+            return;
+        }
+        if (jdbcTemplate.queryForList(LOCK_LIST_SQL, String.class, listId).isEmpty()) {
+            throw new TodoListMovedException(listId);
+        }
+    }
+
+    /**
+     * Runs {@code action} once on every shard.
+     */
+    public void forEachShard(Runnable action) {
+        for (int shard = 0; shard < shardCount; shard++) {
+            runOnShard(shard, action);
+        }
+    }
+
+    /**
+     * Records that a list was moved to the shard it belongs on.
+     * 
+     * This has to be called only once the move has committed.
+     */
+    void markMoved(String listId) {
+        movedLists.add(listId);
+    }
+
+    // Whether a list may still be on the shard it belonged on before the
+    // latest shards were added.
+    private boolean isMoving(String listId) {
+        return previousRing != null
+                && !movedLists.contains(listId)
+                && previousRing.shardFor(listId) != ownerOf(listId);
+    }
+}
@@ -0,0 +1,124 @@
+package com.pebblepost.todo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.hibernate.tool.schema.spi.SchemaManagementToolCoordinator;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * Spreads lists, with their items and change logs, over the databases in
+ * {@code todo.sharding.shards}, when {@code todo.sharding.enabled} is set.
+ * 
+ * Every shard has the whole schema. With embedded databases, like several
+ * local H2 databases, Hibernate creates it on each of them. Lists are never
+ * split, so everything but the background jobs, which visit each shard in
+ * turn, only ever talks to one shard.
+ * 
+ * Sharding replaces {@code spring.datasource}, and can't be combined with
+ * read replicas or group commit, whose transactions span lists.
+ * 
+ * @see TodoShardRouter
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "todo.sharding", name = "enabled", havingValue = "true")
+public class TodoShardingConfig {
+
+    public TodoShardingConfig(TodoProperties properties) {
+        TodoProperties.Sharding sharding = properties.getSharding();
+
+        if (sharding.getShards().isEmpty()) {
+            throw new IllegalStateException("Sharding needs at least one shard in todo.sharding.shards!");
+        }
+        if (sharding.getPreviousShardCount() >= sharding.getShards().size()) {
+            throw new IllegalStateException(
+                    "todo.sharding.previous-shard-count has to be less than the number of shards!");
+        }
+        if (properties.getReplicas().isEnabled()) {
+            throw new IllegalStateException("Sharding can't be combined with read replicas!");
+        }
+        if (properties.getWrite().getDurability() == TodoProperties.Write.Durability.GROUP_COMMIT) {
+            throw new IllegalStateException("Sharding can't be combined with group commit!");
+        }
+    }
+
+    @Bean
+    @Primary
+    public TodoShardingDataSource dataSource(TodoProperties properties) {
+        List<DataSource> shards = new ArrayList<DataSource>();
+
+        for (TodoProperties.Sharding.Shard shard : properties.getSharding().getShards()) {
+            shards.add(DataSourceBuilder.create()
+                    .url(shard.getUrl())
+                    .username(shard.getUsername())
+                    .password(shard.getPassword())
+                    .build());
+        }
+
+        return new TodoShardingDataSource(shards);
+    }
+
+    /**
+     * Has Hibernate manage the schema of every shard, not just the first.
+     */
+    @Bean
+    public HibernatePropertiesCustomizer shardSchemaCustomizer(TodoProperties properties) {
+        int shardCount = properties.getSharding().getShards().size();
+        Integrator integrator = new Integrator() {
+            @Override
+            public void integrate(
+                    Metadata metadata,
+                    SessionFactoryImplementor sessionFactory,
+                    SessionFactoryServiceRegistry serviceRegistry) {
+                Map<?, ?> settings = serviceRegistry.getService(ConfigurationService.class).getSettings();
+
+                // Hibernate handles shard 0 itself, through the default
+                // connections.
+                for (int shard = 1; shard < shardCount; shard++) {
+                    TodoShardRouter.runOnShard(shard, () -> SchemaManagementToolCoordinator.process(
+                            metadata, serviceRegistry, settings, action -> {
+                            }));
+                }
+            }
+
+            @Override
+            public void disintegrate(
+                    SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+            }
+        };
+
+        return hibernateProperties -> hibernateProperties.put(
+                "hibernate.integrator_provider", (IntegratorProvider) () -> Collections.singletonList(integrator));
+    }
+
+    @Bean
+    public TodoShardAspect todoShardAspect(ObjectProvider<TodoShardRouter> shardRouter) {
+        return new TodoShardAspect(shardRouter);
+    }
+
+    @Bean
+    public TodoShardRebalancer todoShardRebalancer(
+            TodoShardRouter shardRouter,
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager) {
+        return new TodoShardRebalancer(shardRouter, jdbcTemplate, transactionManager);
+    }
+}
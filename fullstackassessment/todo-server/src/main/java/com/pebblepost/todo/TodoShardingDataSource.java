@@ -0,0 +1,42 @@
+package com.pebblepost.todo;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * Sends connections to the shard bound to the current thread by
+ * {@link TodoShardRouter}, or to shard 0 when none is.
+ */
+public class TodoShardingDataSource extends AbstractRoutingDataSource {
+
+    public TodoShardingDataSource(List<DataSource> shards) {
+        Map<Object, Object> targets = new HashMap<Object, Object>();
+
+        for (int shard = 0; shard < shards.size(); shard++) {
+            targets.put(shard, shards.get(shard));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(shards.get(0));
+    }
+
+    /**
+     * Closes the connection pools of the shards.
+     */
+    public void close() throws Exception {
+        for (DataSource shard : getResolvedDataSources().values()) {
+            if (shard instanceof AutoCloseable) {
+                ((AutoCloseable) shard).close();
+            }
+        }
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return TodoShardRouter.currentShard();
+    }
+}
@@ -0,0 +1,25 @@
+package com.pebblepost.todo;
+
+public class TodoStats {
+
+    private final long active;
+
+    private final long completed;
+
+    public TodoStats(long active, long completed) {
+        this.active = active;
+        this.completed = completed;
+    }
+
+    public long getActive() {
+        return active;
+    }
+
+    public long getCompleted() {
+        return completed;
+    }
+
+    public long getTotal() {
+        return active + completed;
+    }
+}
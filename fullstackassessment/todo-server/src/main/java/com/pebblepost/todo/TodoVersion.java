@@ -0,0 +1,97 @@
+package com.pebblepost.todo;
+
+import java.time.Instant;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * A version number for each to-do list, which changes whenever any of the
+ * list's items changes.
+ * 
+ * Clients can use it as an entity tag to skip re-downloading data they
+ * already have. Lists have versions of their own, so that writes to one list
+ * don't invalidate the tags of every other list.
+ * 
+ * With read replicas, a list read from a lagging replica right after a
+ * change would be served under the new tag, so versions change again once
+ * every usable replica has the change.
+ */
+@Component
+public class TodoVersion {
+
+    // Versions restart at 0 along with the application, so we tag them with
+    // the start time to keep tags from before a restart from matching.
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+
+    // Lists that never changed since the start are at version 0, and have no
+    // entry.
+    private final ConcurrentMap<String, AtomicLong> versions = new ConcurrentHashMap<String, AtomicLong>();
+
+    private final TaskScheduler taskScheduler;
+
+    private final TodoProperties.Replicas replicas;
+
+    public TodoVersion(TaskScheduler taskScheduler, TodoProperties properties) {
+        this.taskScheduler = taskScheduler;
+        this.replicas = properties.getReplicas();
+    }
+
+    public String getETag(String listId) {
+        AtomicLong version = versions.get(listId);
+
+        return String.format("\"%s-%s\"", epoch, version != null ? version.get() : 0);
+    }
+
+    @EventListener
+    public void onTodoChanged(TodoChangedEvent event) {
+        increment(event.getListId());
+    }
+
+    @EventListener
+    public void onTodoPatched(TodoPatchedEvent event) {
+        increment(event.getListId());
+    }
+
+    @EventListener
+    public void onTodoBulkChanged(TodoBulkChangedEvent event) {
+        increment(event.getListId());
+    }
+
+    private void increment(String listId) {
+        AtomicLong version = versions.computeIfAbsent(listId, key -> new AtomicLong());
+
+        version.incrementAndGet();
+
+        // Readers that fetched the new tag before the transaction committed
+        // may have seen the old data, so we bump the version again once the
+        // change is visible.
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    version.incrementAndGet();
+                    incrementOnReplicas(version);
+                }
+            });
+        } else {
+            incrementOnReplicas(version);
+        }
+    }
+
+    // A replica is only read while its lag, as of its last health check, is
+    // within the bound.
+    private void incrementOnReplicas(AtomicLong version) {
+        if (replicas.isEnabled()) {
+            taskScheduler.schedule(
+                    version::incrementAndGet,
+                    Instant.now().plusMillis(replicas.getMaxLagMs() + replicas.getHealthCheckIntervalMs()));
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package com.pebblepost.todo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Queues creates and updates from {@link TodoService}, and writes them to the
+ * database in groups, in the background.
+ * 
+ * This is enabled by setting {@code todo.write.durability} to
+ * {@code group-commit}. Writes are acknowledged as soon as they're queued, and
+ * a flusher thread commits everything queued within
+ * {@link TodoProperties.Write#getFlushIntervalMs()}, up to
+ * {@link TodoProperties.Write#getMaxGroupSize()} writes, in one transaction.
+ * Consecutive writes to the same item within a group are merged into one.
+ * 
+ * Other writes aren't queued, and wait for everything queued before them to
+ * be committed (see {@link TodoWriteQueueAspect}), so writes to an item are
+ * applied in the order they were acknowledged in. The events of queued writes
+ * are published in the transaction that writes them, and their listeners
+ * outside the database only act once it commits, so a group that's retried
+ * one write at a time isn't counted twice.
+ * 
+ * In exchange for fewer commits, acknowledged writes can be lost if the
+ * application stops abruptly, and reads can lag behind writes until the next
+ * flush. Writes that fail when they're finally written are counted as
+ * {@code todo.write.dropped}. When the queue is full, writers wait for up to
+ * {@link TodoProperties.Write#getEnqueueTimeoutMs()}, and are then rejected.
+ */
+@Component
+@ConditionalOnProperty(prefix = "todo.write", name = "durability", havingValue = "group-commit")
+public class TodoWriteQueue {
+
+    /**
+     * The name of the counter of acknowledged writes that failed to be
+     * written, tagged with their type.
+     */
+    public static final String DROPPED_COUNTER_NAME = "todo.write.dropped";
+
+    private static final Logger logger = LoggerFactory.getLogger(TodoWriteQueue.class);
+
+    // Writes of an item are merged before they're written, so rather than
+    // incrementing it, we write the version each queued write was given.
+    private static final String INSERT_SQL =
+            "INSERT INTO todo (id, list_id, destription, completed, version) VALUES (?, ?, ?, ?, ?)";
+
+    private static final String UPDATE_SQL =
+            "UPDATE todo SET destription = ?, completed = ?, version = ? WHERE list_id = ? AND id = ?";
+
+    private static class Write {
+        // Null for creates.
+        final Todo previous;
+
+        final Todo current;
+
+        // The number of writes queued up to and including this one.
+        final long ticket;
+
+        Write(Todo previous, Todo current, long ticket) {
+            this.previous = previous;
+            this.current = current;
+            this.ticket = ticket;
+        }
+
+        Write followedBy(Write next) {
+            return new Write(previous, next.current, next.ticket);
+        }
+    }
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final TodoProperties.Write properties;
+
+    private final MeterRegistry meterRegistry;
+
+    private final BlockingQueue<Write> queue;
+
+    // The latest queued state of items with writes that haven't been
+    // committed yet.
+    private final ConcurrentMap<Long, Todo> pending = new ConcurrentHashMap<Long, Todo>();
+
+    private final Thread flusher = new Thread(this::run, "todo-write-flusher");
+
+    // Held while queueing a write, so that writes are numbered in the order
+    // they're queued in, and none is queued after the flusher is told to
+    // stop.
+    private final Object enqueueLock = new Object();
+
+    // Only written while holding `enqueueLock`, so once the flusher sees it
+    // cleared, everything accepted is already in the queue.
+    private volatile boolean running = true;
+
+    // Only written while holding `enqueueLock`.
+    private volatile long queuedCount = 0;
+
+    // Guarded by `committedLock`, which is notified when it grows.
+    private long committedCount = 0;
+
+    private final Object committedLock = new Object();
+
+    public TodoWriteQueue(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            ApplicationEventPublisher eventPublisher,
+            TodoProperties properties,
+            MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.eventPublisher = eventPublisher;
+        this.properties = properties.getWrite();
+        this.meterRegistry = meterRegistry;
+        this.queue = new ArrayBlockingQueue<Write>(this.properties.getQueueCapacity());
+    }
+
+    @PostConstruct
+    public void start() {
+        flusher.start();
+    }
+
+    /**
+     * Stops accepting writes, and waits for queued ones to be written.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        synchronized (enqueueLock) {
+            running = false;
+        }
+        flusher.join();
+    }
+
+    /**
+     * Queues a new item, and returns it with the ID it will be written with.
+     * 
+     * Has to be called in a transaction, which is used to reserve the ID.
+     */
+    public Todo create(Todo newTodo) {
+        SharedSessionContractImplementor session = entityManager.unwrap(SharedSessionContractImplementor.class);
+        Long id = (Long) session.getFactory().getMetamodel()
+                .entityPersister(Todo.class)
+                .getIdentifierGenerator()
+                .generate(session, newTodo);
+        Todo created = Todo.builder()
+                .setId(id)
+                .setListId(newTodo.getListId())
+                .setDescription(newTodo.getDescription())
+                .setCompleted(newTodo.getCompleted())
+                .build();
+
+        enqueue(null, created);
+
+        return created;
+    }
+
+    /**
+     * Returns the queued state of an item, if it has writes that haven't been
+     * committed yet.
+     */
+    public Optional<Todo> getPending(String listId, Long id) {
+        return Optional.ofNullable(pending.get(id)).filter(item -> item.getListId().equals(listId));
+    }
+
+    /**
+     * Queues an update to an existing item.
+     */
+    public void update(Todo previous, Todo current) {
+        enqueue(previous, current);
+    }
+
+    /**
+     * Waits until every write queued so far has been committed, or dropped.
+     * 
+     * This has to be called outside of transactions, so that waiting doesn't
+     * hold on to a connection the flusher may need.
+     * 
+     * @throws RejectedExecutionException if the thread is interrupted while
+     *                                    waiting
+     */
+    public void awaitQueued() {
+        long ticket = queuedCount;
+
+        synchronized (committedLock) {
+            // The flusher only stops once the queue is empty, unless it's
+            // interrupted.
+            while (committedCount < ticket && flusher.isAlive()) {
+                try {
+                    committedLock.wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+
+                    throw new RejectedExecutionException("Interrupted while waiting for queued writes!", e);
+                }
+            }
+        }
+    }
+
+    private void enqueue(Todo previous, Todo current) {
+        synchronized (enqueueLock) {
+            Write write = new Write(previous, current, queuedCount + 1);
+            boolean accepted;
+
+            if (!running) {
+                throw new RejectedExecutionException("The write queue is stopping!");
+            }
+
+            // The write is pending before it's queued, so that the flusher
+            // can't finish it before it's marked as pending.
+            Todo replaced = pending.put(current.getId(), current);
+
+            try {
+                accepted = queue.offer(write, properties.getEnqueueTimeoutMs(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                accepted = false;
+            }
+
+            if (!accepted) {
+                if (replaced != null) {
+                    pending.replace(current.getId(), current, replaced);
+                } else {
+                    pending.remove(current.getId(), current);
+                }
+
+                throw new RejectedExecutionException("The write queue is full!");
+            }
+            queuedCount = write.ticket;
+        }
+    }
+
+    private void run() {
+        List<Write> group = new ArrayList<Write>(properties.getMaxGroupSize());
+
+        while (running || !queue.isEmpty()) {
+            try {
+                Write first = queue.poll(100, TimeUnit.MILLISECONDS);
+
+                if (first == null) {
+                    continue;
+                }
+
+                // Give writes arriving right behind the first one a chance to
+                // share its transaction.
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(properties.getFlushIntervalMs());
+
+                group.add(first);
+                while (group.size() < properties.getMaxGroupSize()) {
+                    Write next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+
+                    if (next == null) {
+                        break;
+                    }
+                    group.add(next);
+                    queue.drainTo(group, properties.getMaxGroupSize() - group.size());
+                }
+                commit(merge(group));
+                markCommitted(group.get(group.size() - 1).ticket);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                return;
+            } finally {
+                group.clear();
+            }
+        }
+    }
+
+    private void markCommitted(long ticket) {
+        synchronized (committedLock) {
+            committedCount = ticket;
+            committedLock.notifyAll();
+        }
+    }
+
+    private static Collection<Write> merge(List<Write> group) {
+        Map<Long, Write> merged = new LinkedHashMap<Long, Write>();
+
+        for (Write write : group) {
+            merged.merge(write.current.getId(), write, Write::followedBy);
+        }
+
+        return merged.values();
+    }
+
+    private void commit(Collection<Write> writes) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> write(writes));
+        } catch (RuntimeException e) {
+            // One bad write shouldn't take the rest of its group down with it,
+            // so we retry them one at a time.
+            for (Write write : writes) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> write(Collections.singletonList(write)));
+                } catch (RuntimeException writeException) {
+                    logger.error("Dropping queued write to to-do item {}!", write.current.getId(), writeException);
+                    Counter.builder(DROPPED_COUNTER_NAME)
+                            .description("Acknowledged writes that failed to be written")
+                            .tag("type", write.previous == null ? "create" : "update")
+                            .register(meterRegistry)
+                            .increment();
+                }
+            }
+        } finally {
+            // Items queued again in the meantime stay pending.
+            for (Write write : writes) {
+                pending.remove(write.current.getId(), write.current);
+            }
+        }
+    }
+
+    private void write(Collection<Write> writes) {
+        List<Write> creates = new ArrayList<Write>();
+        List<Write> updates = new ArrayList<Write>();
+
+        for (Write write : writes) {
+            (write.previous == null ? creates : updates).add(write);
+        }
+
+        List<Object[]> insertArgs = new ArrayList<Object[]>(creates.size());
+
+        for (Write write : creates) {
+            Todo item = write.current;
+
+            insertArgs.add(new Object[] {
+                    item.getId(), item.getListId(), item.getDescription(), item.getCompleted(), item.getVersion() });
+        }
+
+        List<Object[]> updateArgs = new ArrayList<Object[]>(updates.size());
+
+        for (Write write : updates) {
+            Todo item = write.current;
+
+            updateArgs.add(new Object[] {
+                    item.getDescription(), item.getCompleted(), item.getVersion(), item.getListId(), item.getId() });
+        }
+
+        if (!insertArgs.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_SQL, insertArgs);
+        }
+        int[] updateCounts = updateArgs.isEmpty() ? new int[0] : jdbcTemplate.batchUpdate(UPDATE_SQL, updateArgs);
+
+        for (Write write : creates) {
+            eventPublisher.publishEvent(TodoChangedEvent.created(write.current));
+        }
+        for (int i = 0; i < updates.size(); i++) {
+            // Items deleted since their update was queued have nothing left to
+            // update.
+            if (updateCounts[i] != 0) {
+                eventPublisher.publishEvent(
+                        TodoChangedEvent.updated(updates.get(i).previous, updates.get(i).current));
+            }
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.pebblepost.todo;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Has the writes of {@link TodoService} that aren't queued in group commit
+ * mode wait for everything queued before them to be committed.
+ * 
+ * Otherwise, a queued write could overwrite a later patch, or a patch or
+ * delete could miss an item whose creation is still queued. This runs before
+ * transactions start, so that waiting writers don't hold on to connections
+ * the flusher needs.
+ * 
+ * @see TodoWriteQueue
+ */
+@Aspect
+@Component
+@ConditionalOnProperty(prefix = "todo.write", name = "durability", havingValue = "group-commit")
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class TodoWriteQueueAspect {
+
+    // Aspects are created while other beans are, so the queue, which needs
+    // the data source, is only looked up once calls come in.
+    private final ObjectProvider<TodoWriteQueue> writeQueue;
+
+    public TodoWriteQueueAspect(ObjectProvider<TodoWriteQueue> writeQueue) {
+        this.writeQueue = writeQueue;
+    }
+
+    @Around("execution(public * com.pebblepost.todo.TodoService.patchTodo(..))"
+            + " || execution(public * com.pebblepost.todo.TodoService.deleteTodo(..))"
+            + " || execution(public * com.pebblepost.todo.TodoService.completeAll(..))"
+            + " || execution(public * com.pebblepost.todo.TodoService.deleteAll(..))"
+            + " || execution(public * com.pebblepost.todo.TodoService.applyBatch(..))")
+    public Object awaitQueuedWrites(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            writeQueue.getObject().awaitQueued();
+        }
+
+        return joinPoint.proceed();
+    }
+}
@@ -0,0 +1,50 @@
+package com.pebblepost.todo;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.coyote.ProtocolHandler;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * Serves requests on virtual threads, when the {@code virtual-threads} profile
+ * is active.
+ * 
+ * Requests spend most of their time waiting on the database, and with a
+ * platform thread per request, bursts run into Tomcat's thread limit long
+ * before they run out of CPU. A virtual thread gives up its carrier thread
+ * while it waits, so the number of requests in flight is limited by the
+ * connection pool instead.
+ * 
+ * Virtual threads need Java 21 or later. We build for Java 11, so the executor
+ * is looked up reflectively, and the profile fails at startup on older
+ * runtimes.
+ */
+@Configuration
+@Profile("virtual-threads")
+public class VirtualThreadConfig {
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<ProtocolHandler> virtualThreadExecutorCustomizer() {
+        // Tomcat leaves executors it didn't create running when it stops, but
+        // this one has no threads of its own to clean up.
+        ExecutorService executor = newVirtualThreadPerTaskExecutor();
+
+        return protocolHandler -> protocolHandler.setExecutor(executor);
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(String.format(
+                    "The virtual-threads profile needs Java 21 or later, but is running on Java %s!",
+                    System.getProperty("java.version")), e);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Couldn't create a virtual thread executor!", e);
+        }
+    }
+}
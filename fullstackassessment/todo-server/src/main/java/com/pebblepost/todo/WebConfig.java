@@ -1,5 +1,6 @@
 package com.pebblepost.todo;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
@@ -8,6 +9,7 @@ public class WebConfig implements WebMvcConfigurer {
         registry
                 .addMapping("/**")
                 .allowedMethods("*")
-                .allowedOrigins("*");
+                .allowedOrigins("*")
+                .exposedHeaders(HttpHeaders.LINK, TodoReplicaStickiness.HEADER_NAME);
     }
 }
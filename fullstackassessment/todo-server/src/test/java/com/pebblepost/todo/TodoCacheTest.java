@@ -0,0 +1,80 @@
+package com.pebblepost.todo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javassist.NotFoundException;
+
+@SpringBootTest
+class TodoCacheTest {
+
+    @Autowired
+    private TodoService todoService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @DirtiesContext
+    @Test
+    void getTodo_servesCachedItemsWithoutQuerying() throws NotFoundException {
+        Todo created = todoService.createTodo(TodoList.DEFAULT_ID, new Todo("Do 1"));
+
+        todoService.getTodo(TodoList.DEFAULT_ID, created.getId());
+
+        // Changed behind the service's back, so only a query would see it.
+        jdbcTemplate.update("UPDATE todo SET destription = 'Do 1 now' WHERE id = ?", created.getId());
+
+        assertEquals("Do 1", todoService.getTodo(TodoList.DEFAULT_ID, created.getId()).getDescription());
+    }
+
+    @DirtiesContext
+    @Test
+    void getTodo_doesNotServeItemsCachedForAnotherList() throws NotFoundException {
+        Todo created = todoService.createTodo(TodoList.DEFAULT_ID, new Todo("Do 1"));
+
+        todoService.getTodo(TodoList.DEFAULT_ID, created.getId());
+
+        assertThrows(NotFoundException.class, () -> todoService.getTodo("other-list", created.getId()));
+    }
+
+    @DirtiesContext
+    @Test
+    void updateTodo_evictsItemsCachedBeforeItCommits() throws NotFoundException {
+        Todo created = todoService.createTodo(TodoList.DEFAULT_ID, new Todo("Do 1"));
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            try {
+                todoService.updateTodo(TodoList.DEFAULT_ID, created.getId(), new Todo("Do 1 now", false));
+            } catch (NotFoundException e) {
+                throw new IllegalStateException(e);
+            }
+
+            // Another request reads, and caches, the item before the update
+            // commits.
+            String seen = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return todoService.getTodo(TodoList.DEFAULT_ID, created.getId()).getDescription();
+                } catch (NotFoundException e) {
+                    throw new IllegalStateException(e);
+                }
+            }).join();
+
+            assertEquals("Do 1", seen);
+        });
+
+        assertEquals("Do 1 now", todoService.getTodo(TodoList.DEFAULT_ID, created.getId()).getDescription());
+    }
+}
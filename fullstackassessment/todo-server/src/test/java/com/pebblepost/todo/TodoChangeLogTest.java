@@ -0,0 +1,80 @@
+package com.pebblepost.todo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javassist.NotFoundException;
+
+@SpringBootTest
+class TodoChangeLogTest {
+
+    @Autowired
+    private TodoService todoService;
+
+    @Autowired
+    private TodoChangeLog todoChangeLog;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @DirtiesContext
+    @Test
+    void getChanges_holdsBackChangesNumberedAfterUncommittedOnes() throws NotFoundException {
+        Todo first = todoService.createTodo(TodoList.DEFAULT_ID, new Todo("Do 1"));
+        Todo second = todoService.createTodo(TodoList.DEFAULT_ID, new Todo("Do 2"));
+        long cursor = todoChangeLog.getChanges(TodoList.DEFAULT_ID, 0, 100).getCursor();
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            update(first.getId(), "Do 1 now");
+
+            // Another writer to the list isn't held up, and commits a later
+            // entry first.
+            CompletableFuture.runAsync(() -> update(second.getId(), "Do 2 now")).join();
+
+            TodoChanges changes = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return todoChangeLog.getChanges(TodoList.DEFAULT_ID, cursor, 100);
+                } catch (NotFoundException e) {
+                    throw new IllegalStateException(e);
+                }
+            }).join();
+
+            assertTrue(changes.getItems().isEmpty());
+            assertEquals(cursor, changes.getCursor());
+        });
+
+        assertEquals(2, todoChangeLog.getChanges(TodoList.DEFAULT_ID, cursor, 100).getItems().size());
+    }
+
+    @DirtiesContext
+    @Test
+    void getChanges_requiresResyncAfterBulkChange() throws NotFoundException {
+        todoService.createTodo(TodoList.DEFAULT_ID, new Todo("Do 1"));
+        todoService.createTodo(TodoList.DEFAULT_ID, new Todo("Do 2"));
+        long cursor = todoChangeLog.getChanges(TodoList.DEFAULT_ID, 0, 100).getCursor();
+
+        assertEquals(2, todoService.completeAll(TodoList.DEFAULT_ID));
+
+        TodoChanges changes = todoChangeLog.getChanges(TodoList.DEFAULT_ID, cursor, 100);
+
+        assertTrue(changes.isResyncRequired());
+        assertTrue(todoChangeLog.getChanges(TodoList.DEFAULT_ID, changes.getCursor(), 100).getItems().isEmpty());
+    }
+
+    private void update(Long id, String description) {
+        try {
+            todoService.updateTodo(TodoList.DEFAULT_ID, id, new Todo(description));
+        } catch (NotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,15 +1,21 @@
 package com.pebblepost.todo;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.time.Instant;
 import java.util.Arrays;
 import java.util.List;
 
@@ -17,9 +23,11 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -31,6 +39,9 @@ class TodoControllerTest {
     @Autowired
     private MockMvc mockMvc;
 
+    @Autowired
+    private TodoChangeLog todoChangeLog;
+
     @DirtiesContext
     @Test
     void create_createsAnItem() throws Exception {
@@ -77,6 +88,356 @@ class TodoControllerTest {
                 .andExpect(content().json(expectedBody));
     }
 
+    @DirtiesContext
+    @Test
+    void getAll_returnsPagesAfterCursor() throws Exception {
+        Todo expected1 = createTodoEntity(new Todo("Do 1"));
+        Todo expected2 = createTodoEntity(new Todo("Do 2", true));
+        Todo expected3 = createTodoEntity(new Todo("Do 3", false));
+
+        mockMvc.perform(
+                get("/todos")
+                        .param("limit", "2")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().json(toJson(Arrays.asList(expected1, expected2))))
+                .andExpect(header().string(HttpHeaders.LINK, String.format(
+                        "<http://localhost/todos?after=%s&limit=2>; rel=\"next\"",
+                        expected2.getId())));
+
+        mockMvc.perform(
+                get("/todos")
+                        .param("after", expected2.getId().toString())
+                        .param("limit", "2")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().json(toJson(Arrays.asList(expected3))))
+                .andExpect(header().doesNotExist(HttpHeaders.LINK));
+    }
+
+    @DirtiesContext
+    @Test
+    void getAll_filtersByCompletion() throws Exception {
+        createTodoEntity(new Todo("Do 1", true));
+        Todo active1 = createTodoEntity(new Todo("Do 2", false));
+        Todo active2 = createTodoEntity(new Todo("Do 3", false));
+        Todo active3 = createTodoEntity(new Todo("Do 4", false));
+
+        mockMvc.perform(
+                // The filter is kept in the next page's link, so it has to be
+                // in the URL, rather than only among the parameters.
+                get("/todos?completed=false&limit=2")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().json(toJson(Arrays.asList(active1, active2))))
+                .andExpect(header().string(HttpHeaders.LINK, String.format(
+                        "<http://localhost/todos?completed=false&after=%s&limit=2>; rel=\"next\"",
+                        active2.getId())));
+
+        mockMvc.perform(
+                get("/todos")
+                        .param("completed", "false")
+                        .param("after", active2.getId().toString())
+                        .accept(MediaType.APPLICATION_JSON))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().json(toJson(Arrays.asList(active3))))
+                .andExpect(header().doesNotExist(HttpHeaders.LINK));
+    }
+
+    @Test
+    void getAll_rejectsNonPositiveLimit() throws Exception {
+        mockMvc.perform(
+                get("/todos")
+                        .param("limit", "0")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andDo(print())
+                .andExpect(status().isBadRequest());
+    }
+
+    @DirtiesContext
+    @Test
+    void stream_writesOneItemPerLine() throws Exception {
+        TodoDto expected1 = createTodo(new Todo("Do 1"));
+        TodoDto expected2 = createTodo(new Todo("Do 2", true));
+
+        MvcResult result = mockMvc.perform(
+                get("/todos/stream")
+                        .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string(toJson(expected1) + "\n" + toJson(expected2) + "\n"));
+    }
+
+    @DirtiesContext
+    @Test
+    void events_pushesChangesToSubscribers() throws Exception {
+        MvcResult result = mockMvc.perform(
+                get("/todos/events")
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Events are written from another thread, a line at a time, so we
+        // wait for their data.
+        TodoDto created = createTodo(new Todo("Do 1"));
+        String content = awaitContent(result, "\"description\":\"Do 1\"");
+
+        assertTrue(content.contains("event:created"), content);
+
+        mockMvc.perform(delete("/todos/{id}", created.getId()))
+                .andExpect(status().isOk());
+        content = awaitContent(result, String.format("{\"type\":\"deleted\",\"id\":%s}", created.getId()));
+
+        assertTrue(content.contains("event:deleted"), content);
+    }
+
+    @DirtiesContext
+    @Test
+    void getChanges_returnsChangesSinceCursor() throws Exception {
+        TodoDto toUpdate = createTodo(new Todo("Do 1"));
+        TodoDto toDelete = createTodo(new Todo("Do 2"));
+
+        String firstJson = mockMvc.perform(get("/todos/changes"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.resyncRequired").value(false))
+                .andExpect(jsonPath("$.items.length()").value(2))
+                .andExpect(jsonPath("$.deletedIds").isEmpty())
+                .andReturn().getResponse().getContentAsString();
+        long cursor = new ObjectMapper().readTree(firstJson).get("cursor").asLong();
+
+        mockMvc.perform(
+                put("/todos/{id}", toUpdate.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(toJson(new Todo("Do 1 now", true))))
+                .andExpect(status().isOk());
+        mockMvc.perform(delete("/todos/{id}", toDelete.getId()))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/todos/changes").param("since", Long.toString(cursor)))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()").value(1))
+                .andExpect(jsonPath("$.items[0].id").value(toUpdate.getId()))
+                .andExpect(jsonPath("$.items[0].description").value("Do 1 now"))
+                .andExpect(jsonPath("$.deletedIds.length()").value(1))
+                .andExpect(jsonPath("$.deletedIds[0]").value(toDelete.getId()));
+    }
+
+    @DirtiesContext
+    @Test
+    void getChanges_requiresResyncPastCompactedDeletions() throws Exception {
+        TodoDto toDelete = createTodo(new Todo("Do 1"));
+
+        mockMvc.perform(delete("/todos/{id}", toDelete.getId()))
+                .andExpect(status().isOk());
+        todoChangeLog.compact(Instant.now().plusSeconds(1));
+
+        mockMvc.perform(get("/todos/changes").param("since", "0"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.resyncRequired").value(true))
+                .andExpect(jsonPath("$.items").isEmpty());
+    }
+
+    @DirtiesContext
+    @Test
+    void getStats_countsItemsAcrossChanges() throws Exception {
+        Todo toComplete = createTodoEntity(new Todo("Do 1", false));
+        Todo toDelete = createTodoEntity(new Todo("Do 2", true));
+        createTodoEntity(new Todo("Do 3", false));
+
+        mockMvc.perform(
+                put("/todos/{id}", toComplete.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(toJson(new Todo("Do 1", true))))
+                .andExpect(status().isOk());
+        mockMvc.perform(delete("/todos/{id}", toDelete.getId()))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(
+                get("/todos/stats")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.active").value(1))
+                .andExpect(jsonPath("$.completed").value(1))
+                .andExpect(jsonPath("$.total").value(2));
+    }
+
+    @DirtiesContext
+    @Test
+    void search_returnsRankedPagesOfMatches() throws Exception {
+        Todo milkshake = createTodoEntity(new Todo("Make a milkshake"));
+        Todo milk = createTodoEntity(new Todo("Buy milk"));
+
+        createTodoEntity(new Todo("Buy bread"));
+
+        mockMvc.perform(
+                // The query is kept in the next page's link, so it has to be
+                // in the URL, rather than only among the parameters.
+                get("/todos/search?q=milk&limit=1")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().json(toJson(Arrays.asList(milk))))
+                .andExpect(header().string(HttpHeaders.LINK,
+                        "<http://localhost/todos/search?q=milk&offset=1&limit=1>; rel=\"next\""));
+
+        // Items created after the list was indexed are found too.
+        Todo milkJug = createTodoEntity(new Todo("Return the milk jug"));
+
+        mockMvc.perform(
+                get("/todos/search")
+                        .param("q", "MIL")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().json(toJson(Arrays.asList(milkshake, milk, milkJug))))
+                .andExpect(header().doesNotExist(HttpHeaders.LINK));
+    }
+
+    @Test
+    void search_rejectsQueriesWithoutWords() throws Exception {
+        mockMvc.perform(
+                get("/todos/search")
+                        .param("q", " ?! ")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andDo(print())
+                .andExpect(status().isBadRequest());
+    }
+
+    @DirtiesContext
+    @Test
+    void completeAllAndDeleteAll_changeItemsInBulk() throws Exception {
+        createTodoEntity(new Todo("Do 1", false));
+        createTodoEntity(new Todo("Do 2", false));
+        createTodoEntity(new Todo("Do 3", true));
+
+        mockMvc.perform(post("/todos/complete-all"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count").value(2));
+
+        mockMvc.perform(get("/todos/stats"))
+                .andExpect(jsonPath("$.active").value(0))
+                .andExpect(jsonPath("$.completed").value(3));
+
+        mockMvc.perform(delete("/todos").param("completed", "true"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count").value(3));
+
+        mockMvc.perform(get("/todos"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$").isEmpty());
+        mockMvc.perform(get("/todos/stats"))
+                .andExpect(jsonPath("$.total").value(0));
+    }
+
+    @DirtiesContext
+    @Test
+    void getAll_returnsNotModifiedForMatchingETag() throws Exception {
+        Todo existing = createTodoEntity(new Todo("Do 1"));
+        String eTag = mockMvc.perform(get("/todos"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/todos").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andDo(print())
+                .andExpect(status().isNotModified());
+        mockMvc.perform(get("/todos/{id}", existing.getId()).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andDo(print())
+                .andExpect(status().isNotModified());
+
+        createTodoEntity(new Todo("Do 2"));
+
+        mockMvc.perform(get("/todos").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2));
+    }
+
+    @DirtiesContext
+    @Test
+    void getAll_keepsETagWhenOtherListsChange() throws Exception {
+        createTodoEntity(new Todo("Do 1"));
+        String eTag = mockMvc.perform(get("/todos"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        String listJson = mockMvc.perform(
+                post("/lists")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Shared\"}"))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        String listId = new ObjectMapper().readValue(listJson, TodoListDto.class).getId();
+
+        mockMvc.perform(
+                post("/lists/{listId}/todos", listId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(toJson(new Todo("Do 2"))))
+                .andExpect(status().isCreated());
+
+        mockMvc.perform(get("/todos").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andDo(print())
+                .andExpect(status().isNotModified());
+    }
+
+    @DirtiesContext
+    @Test
+    void listRoutes_areScopedToTheirList() throws Exception {
+        String listJson = mockMvc.perform(
+                post("/lists")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Shared\"}"))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        String listId = new ObjectMapper().readValue(listJson, TodoListDto.class).getId();
+        String itemJson = mockMvc.perform(
+                post("/lists/{listId}/todos", listId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(toJson(new Todo("Do it together", false))))
+                .andDo(print())
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        Long itemId = new ObjectMapper().readValue(itemJson, TodoDto.class).getId();
+
+        mockMvc.perform(get("/lists/{listId}/todos/{id}", listId, itemId))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.description").value("Do it together"));
+        mockMvc.perform(get("/lists/{listId}/todos", listId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1));
+        mockMvc.perform(get("/todos/{id}", itemId))
+                .andDo(print())
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/todos"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$").isEmpty());
+    }
+
+    @Test
+    void create_returnsNotFoundForMissingList() throws Exception {
+        mockMvc.perform(
+                post("/lists/{listId}/todos", "no-such-list")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(toJson(new Todo("Do it", false))))
+                .andDo(print())
+                .andExpect(status().isNotFound());
+    }
+
     @Test
     void getOne_returnsNotFound() throws Exception {
         mockMvc.perform(get("/todos/18"))
@@ -99,30 +460,21 @@ class TodoControllerTest {
 
     @DirtiesContext
     @Test
-    void put_createsAnItem() throws Exception {
+    void put_returnsNotFound() throws Exception {
         Todo testTodo = new Todo("Do thing", false);
         long nonExistentId = 23;
 
-        String responseBody = mockMvc.perform(
+        mockMvc.perform(
                 put("/todos/{id}", nonExistentId)
                         .contentType(MediaType.APPLICATION_JSON)
                         .accept(MediaType.APPLICATION_JSON)
                         .content(toJson(testTodo)))
                 .andDo(print())
-                .andExpect(status().isOk())
-                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
-                .andExpect(jsonPath("$.id").exists())
-                .andExpect(jsonPath("$.description").value("Do thing"))
-                .andExpect(jsonPath("$.completed").value(false))
-                .andReturn().getResponse().getContentAsString();
-
-        ObjectMapper mapper = new ObjectMapper();
-        TodoDto result = mapper.readValue(responseBody, TodoDto.class);
-        TodoDto dbEntry = getExistingTodoById(result.getId());
+                .andExpect(status().isNotFound());
 
-        assertEquals(result.getId(), dbEntry.getId());
-        assertEquals(result.getDescription(), dbEntry.getDescription());
-        assertEquals(result.getCompleted(), dbEntry.getCompleted());
+        mockMvc.perform(get("/todos/{id}", nonExistentId))
+                .andDo(print())
+                .andExpect(status().isNotFound());
     }
 
     @DirtiesContext
@@ -153,6 +505,151 @@ class TodoControllerTest {
 
     }
 
+    @DirtiesContext
+    @Test
+    void put_returnsConflictForStaleVersion() throws Exception {
+        TodoDto existing = createTodo(new Todo("Do 1", false));
+        String stalePut = String.format(
+                "{\"description\":\"Do 1\",\"completed\":true,\"version\":%s}", existing.getVersion());
+
+        mockMvc.perform(
+                put("/todos/{id}", existing.getId())
+                        .header(HttpHeaders.IF_MATCH, String.format("\"%s\"", existing.getVersion()))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(stalePut))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.version").value(existing.getVersion() + 1));
+        mockMvc.perform(
+                put("/todos/{id}", existing.getId())
+                        .header(HttpHeaders.IF_MATCH, String.format("\"%s\"", existing.getVersion()))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(stalePut))
+                .andDo(print())
+                .andExpect(status().isConflict());
+    }
+
+    @DirtiesContext
+    @Test
+    void put_ignoresTheVersionInTheBodyAndReturnsTheNewOne() throws Exception {
+        TodoDto existing = createTodo(new Todo("Do 1", false));
+        String put = String.format(
+                "{\"description\":\"Do 1\",\"completed\":true,\"version\":%s}", existing.getVersion());
+
+        for (int i = 1; i <= 2; i++) {
+            mockMvc.perform(
+                    put("/todos/{id}", existing.getId())
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(put))
+                    .andDo(print())
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.version").value(existing.getVersion() + i));
+        }
+    }
+
+    @DirtiesContext
+    @Test
+    void applyBatch_returnsPerItemResults() throws Exception {
+        Todo existing = createTodoEntity(new Todo("Do 1", false));
+        String operations = String.format("["
+                + "{\"type\":\"create\",\"description\":\"Do 2\",\"completed\":true},"
+                + "{\"type\":\"update\",\"id\":%s,\"description\":\"Do 1\",\"completed\":true},"
+                + "{\"type\":\"delete\",\"id\":%s}]",
+                existing.getId(), existing.getId() + 1000);
+
+        mockMvc.perform(
+                post("/todos/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(MediaType.APPLICATION_JSON)
+                        .content(operations))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(jsonPath("$[0].status").value(201))
+                .andExpect(jsonPath("$[0].item.id").exists())
+                .andExpect(jsonPath("$[0].item.description").value("Do 2"))
+                .andExpect(jsonPath("$[1].status").value(200))
+                .andExpect(jsonPath("$[1].item.completed").value(true))
+                .andExpect(jsonPath("$[2].status").value(404))
+                .andExpect(jsonPath("$[2].message").exists());
+    }
+
+    @DirtiesContext
+    @Test
+    void getOne_doesNotServeStaleItemsAfterChanges() throws Exception {
+        Todo toUpdate = createTodoEntity(new Todo("Do 1", false));
+        Todo toDelete = createTodoEntity(new Todo("Do 2", false));
+
+        // Read both items, so they're cached:
+        getExistingTodoById(toUpdate.getId());
+        getExistingTodoById(toDelete.getId());
+
+        mockMvc.perform(
+                post("/todos/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(String.format(
+                                "[{\"type\":\"update\",\"id\":%s,\"description\":\"Done 1\",\"completed\":true}]",
+                                toUpdate.getId())))
+                .andExpect(status().isOk());
+        mockMvc.perform(delete("/todos/{id}", toDelete.getId()))
+                .andExpect(status().isOk());
+
+        TodoDto updated = getExistingTodoById(toUpdate.getId());
+
+        assertEquals("Done 1", updated.getDescription());
+        assertEquals(true, updated.getCompleted());
+        mockMvc.perform(get("/todos/{id}", toDelete.getId()))
+                .andDo(print())
+                .andExpect(status().isNotFound());
+    }
+
+    @DirtiesContext
+    @Test
+    void patch_updatesGivenFields() throws Exception {
+        TodoDto existing = createTodo(new Todo("Do 1", false));
+
+        mockMvc.perform(
+                patch("/todos/{id}", existing.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(String.format("{\"completed\":true,\"version\":%s}", existing.getVersion())))
+                .andDo(print())
+                .andExpect(status().isNoContent());
+
+        TodoDto dbEntry = getExistingTodoById(existing.getId());
+
+        assertEquals("Do 1", dbEntry.getDescription());
+        assertEquals(true, dbEntry.getCompleted());
+        assertEquals(existing.getVersion() + 1, dbEntry.getVersion());
+    }
+
+    @DirtiesContext
+    @Test
+    void patch_returnsConflictForStaleVersion() throws Exception {
+        TodoDto existing = createTodo(new Todo("Do 1", false));
+        String stalePatch = String.format("{\"completed\":true,\"version\":%s}", existing.getVersion());
+
+        mockMvc.perform(
+                patch("/todos/{id}", existing.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(stalePatch))
+                .andExpect(status().isNoContent());
+        mockMvc.perform(
+                patch("/todos/{id}", existing.getId())
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(stalePatch))
+                .andDo(print())
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    void patch_returnsNotFound() throws Exception {
+        mockMvc.perform(
+                patch("/todos/{id}", 404)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"completed\":true}"))
+                .andDo(print())
+                .andExpect(status().isNotFound());
+    }
+
     @Test
     void delete_returnsNotFound() throws Exception {
         long nonExistentId = 44;
@@ -192,6 +689,19 @@ class TodoControllerTest {
         return mapper.writeValueAsString(entities.stream().map(TodoDto::fromEntity).toList());
     }
 
+    private static String awaitContent(MvcResult result, String expected) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        String content = result.getResponse().getContentAsString();
+
+        while (!content.contains(expected) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            content = result.getResponse().getContentAsString();
+        }
+        assertTrue(content.contains(expected), content);
+
+        return content;
+    }
+
     private TodoDto createTodo(TodoDto obj) throws Exception {
         String responseJson = mockMvc.perform(
                 post("/todos")
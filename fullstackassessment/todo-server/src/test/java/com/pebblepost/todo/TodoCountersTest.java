@@ -0,0 +1,103 @@
+package com.pebblepost.todo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+class TodoCountersTest {
+
+    private static final String LIST_ID = "list";
+
+    private final Map<String, long[]> counts = new HashMap<String, long[]>();
+
+    // Runs while the items are being counted.
+    private Runnable whileCounting = () -> {
+    };
+
+    private final TodoCounters counters = new TodoCounters(null, null, Optional.of((TodoItemStore) Proxy.newProxyInstance(
+            TodoItemStore.class.getClassLoader(),
+            new Class<?>[] { TodoItemStore.class },
+            (proxy, method, args) -> {
+                if (!method.getName().equals("countByListIdAndCompleted")) {
+                    throw new UnsupportedOperationException(method.getName());
+                }
+                Map<String, long[]> snapshot = new HashMap<String, long[]>(counts);
+
+                whileCounting.run();
+
+                return snapshot;
+            })));
+
+    @Test
+    void reconcile_correctsCountsThatDrifted() {
+        counts.put(LIST_ID, new long[] { 2, 1 });
+        counters.reconcile();
+
+        assertStats(2, 1);
+
+        counters.onTodoBulkChanged(new TodoBulkChangedEvent(LIST_ID, false, true, 5));
+        counters.reconcile();
+
+        assertStats(2, 1);
+
+        counts.remove(LIST_ID);
+        counters.reconcile();
+
+        assertStats(0, 0);
+    }
+
+    @Test
+    void reconcile_keepsChangesAppliedWhileCounting() {
+        counts.put(LIST_ID, new long[] { 2, 0 });
+        counters.reconcile();
+
+        // The count doesn't see an item that's completed while it runs.
+        whileCounting = () -> counters.onTodoBulkChanged(new TodoBulkChangedEvent(LIST_ID, false, false, 1));
+        counters.reconcile();
+
+        assertStats(1, 1);
+    }
+
+    @Test
+    void reconcile_leavesListsWithChangesInFlight() {
+        counts.put(LIST_ID, new long[] { 2, 0 });
+        counters.reconcile();
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            counters.onTodoBulkChanged(new TodoBulkChangedEvent(LIST_ID, false, true, 1));
+
+            // The count sees the deletion before it commits.
+            counts.put(LIST_ID, new long[] { 1, 0 });
+            counters.reconcile();
+
+            assertStats(2, 0);
+
+            for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            }
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertStats(1, 0);
+
+        counters.reconcile();
+
+        assertStats(1, 0);
+    }
+
+    private void assertStats(long active, long completed) {
+        TodoStats stats = counters.getStats(LIST_ID);
+
+        assertEquals(active, stats.getActive());
+        assertEquals(completed, stats.getCompleted());
+    }
+}
@@ -0,0 +1,139 @@
+package com.pebblepost.todo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.annotation.DirtiesContext;
+
+// Other tests' contexts share the default in-memory database, whose tables
+// this context drops when it's closed.
+@SpringBootTest(
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {
+                "todo.events.dispatch-threads=1",
+                "todo.events.send-timeout-ms=500",
+                "spring.datasource.url=jdbc:h2:mem:event-broadcaster-test" })
+class TodoEventBroadcasterTest {
+
+    // Small socket buffers, so that a client that doesn't read fills them up
+    // after a few events.
+    @TestConfiguration
+    static class SmallSocketBuffersConfig {
+        @Bean
+        WebServerFactoryCustomizer<TomcatServletWebServerFactory> smallSocketBuffers() {
+            return factory -> factory.addConnectorCustomizers(
+                    connector -> connector.setProperty("socket.txBufSize", "4096"));
+        }
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private TodoService todoService;
+
+    @Autowired
+    private TodoEventBroadcaster broadcaster;
+
+    @DirtiesContext
+    @Test
+    void subscribersThatStopReadingDontHoldUpOthers() throws Exception {
+        String description = new String(new char[Todo.MAX_DESCRIPTION_LENGTH_CH]).replace('\0', 'x');
+
+        try (Socket stalled = new Socket(); Socket reading = new Socket()) {
+            stalled.setReceiveBufferSize(1024);
+            stalled.connect(new InetSocketAddress("localhost", port));
+            subscribe(stalled);
+            reading.connect(new InetSocketAddress("localhost", port));
+            subscribe(reading);
+
+            BlockingQueue<String> lines = readLines(reading);
+
+            awaitSubscriberCount(2);
+
+            // Enough events to fill the stalled client's connection, so that
+            // sending to it blocks.
+            for (int i = 0; i < 500; i++) {
+                todoService.createTodo(TodoList.DEFAULT_ID, new Todo(description));
+            }
+            todoService.createTodo(TodoList.DEFAULT_ID, new Todo("Do 1"));
+
+            assertTrue(awaitLine(lines, "\"description\":\"Do 1\"", 5000), "The reading client was held up!");
+            awaitSubscriberCount(1);
+            assertEquals(1, broadcaster.getSubscriberCount(TodoList.DEFAULT_ID));
+        }
+    }
+
+    private void subscribe(Socket socket) throws IOException {
+        OutputStream out = socket.getOutputStream();
+
+        out.write(String.format("GET /todos/events HTTP/1.1\r\n"
+                + "Host: localhost:%s\r\n"
+                + "Accept: text/event-stream\r\n"
+                + "\r\n", port).getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    private static BlockingQueue<String> readLines(Socket socket) throws IOException {
+        BlockingQueue<String> lines = new LinkedBlockingQueue<String>();
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        Thread readerThread = new Thread(() -> {
+            try {
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    lines.add(line);
+                }
+            } catch (IOException e) {
+                // The socket was closed.
+            }
+        });
+
+        readerThread.setDaemon(true);
+        readerThread.start();
+
+        return lines;
+    }
+
+    private static boolean awaitLine(BlockingQueue<String> lines, String content, long timeoutMs)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+
+        for (long left = timeoutMs; left > 0; left = deadline - System.currentTimeMillis()) {
+            String line = lines.poll(left, TimeUnit.MILLISECONDS);
+
+            if (line != null && line.contains(content)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private void awaitSubscriberCount(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (broadcaster.getSubscriberCount(TodoList.DEFAULT_ID) != count
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.pebblepost.todo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+public class TodoEventTest {
+    @Test
+    void fromChange_copiesValues() {
+        Todo current = Todo.builder()
+                .setId(1L)
+                .setListId(TodoList.DEFAULT_ID)
+                .setDescription("Do 1")
+                .setCompleted(true)
+                .build();
+        TodoEvent result = TodoEvent.fromChange(TodoChangedEvent.created(current));
+
+        assertEquals(TodoEvent.Type.CREATED, result.getType());
+        assertEquals(1, result.getId());
+        assertEquals("Do 1", result.getDescription());
+        assertEquals(true, result.getCompleted());
+    }
+
+    @Test
+    void coalesce_mergesPatchesIntoCreation() {
+        TodoEvent created = TodoEvent.fromChange(TodoChangedEvent.created(todo(1L, "Do 1", false)));
+        TodoEvent patched = TodoEvent.fromPatch(new TodoPatchedEvent(TodoList.DEFAULT_ID, 1L, null, true, false, 2L));
+
+        TodoEvent result = created.coalesce(patched);
+
+        assertEquals(TodoEvent.Type.CREATED, result.getType());
+        assertEquals("Do 1", result.getDescription());
+        assertEquals(true, result.getCompleted());
+        assertEquals(2L, result.getVersion());
+    }
+
+    @Test
+    void coalesce_dropsItemsCreatedAndDeleted() {
+        Todo todo = todo(1L, "Do 1", false);
+        TodoEvent created = TodoEvent.fromChange(TodoChangedEvent.created(todo));
+
+        assertNull(created.coalesce(TodoEvent.fromChange(TodoChangedEvent.deleted(todo))));
+    }
+
+    @Test
+    void coalesce_keepsDeletionOfUpdatedItems() {
+        Todo previous = todo(1L, "Do 1", false);
+        Todo current = todo(1L, "Do 1", true);
+        TodoEvent updated = TodoEvent.fromChange(TodoChangedEvent.updated(previous, current));
+
+        TodoEvent result = updated.coalesce(TodoEvent.fromChange(TodoChangedEvent.deleted(current)));
+
+        assertEquals(TodoEvent.Type.DELETED, result.getType());
+        assertEquals(1, result.getId());
+    }
+
+    private static Todo todo(Long id, String description, boolean completed) {
+        return Todo.builder()
+                .setId(id)
+                .setListId(TodoList.DEFAULT_ID)
+                .setDescription(description)
+                .setCompleted(completed)
+                .build();
+    }
+}
@@ -0,0 +1,62 @@
+package com.pebblepost.todo;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class TodoListControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @DirtiesContext
+    @Test
+    void create_createsAList() throws Exception {
+        String responseJson = mockMvc.perform(
+                post("/lists")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Groceries\"}")
+                        .accept(MediaType.APPLICATION_JSON))
+                .andDo(print())
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.id").exists())
+                .andExpect(jsonPath("$.name").value("Groceries"))
+                .andReturn().getResponse().getContentAsString();
+        TodoListDto created = new ObjectMapper().readValue(responseJson, TodoListDto.class);
+
+        mockMvc.perform(get("/lists/{listId}", created.getId()))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(created.getId()))
+                .andExpect(jsonPath("$.name").value("Groceries"));
+    }
+
+    @Test
+    void getOne_returnsTheDefaultList() throws Exception {
+        mockMvc.perform(get("/lists/{listId}", TodoList.DEFAULT_ID))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(TodoList.DEFAULT_ID));
+    }
+
+    @Test
+    void getOne_returnsNotFound() throws Exception {
+        mockMvc.perform(get("/lists/{listId}", "no-such-list"))
+                .andDo(print())
+                .andExpect(status().isNotFound());
+    }
+}
@@ -0,0 +1,197 @@
+package com.pebblepost.todo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import javassist.NotFoundException;
+
+@SpringBootTest(properties = {
+        "todo.storage.engine=mapped-log",
+        "todo.storage.initial-size-bytes=65536",
+        "spring.datasource.url=jdbc:h2:mem:log-store-test" })
+class TodoLogStoreTest {
+
+    @TempDir
+    static Path directory;
+
+    @Autowired
+    private TodoService todoService;
+
+    @Autowired
+    private TodoRepository todoRepository;
+
+    @Autowired
+    private TodoListRepository todoListRepository;
+
+    @DynamicPropertySource
+    static void storageProperties(DynamicPropertyRegistry registry) {
+        registry.add("todo.storage.directory", () -> directory.resolve("application").toString());
+    }
+
+    @DirtiesContext
+    @Test
+    void todoService_storesItemsInTheLog() throws Exception {
+        Todo created = todoService.createTodo(TodoList.DEFAULT_ID, new Todo("Do 1"));
+
+        todoService.updateTodo(TodoList.DEFAULT_ID, created.getId(), new Todo("Do 1 now", false));
+        todoService.patchTodo(TodoList.DEFAULT_ID, created.getId(), new TodoPatch(null, true, null));
+
+        Todo read = todoService.getTodo(TodoList.DEFAULT_ID, created.getId());
+
+        assertEquals("Do 1 now", read.getDescription());
+        assertTrue(read.getCompleted());
+        assertEquals(2, read.getVersion());
+        assertFalse(todoRepository.existsById(created.getId()));
+
+        todoService.deleteTodo(TodoList.DEFAULT_ID, created.getId());
+
+        assertThrows(NotFoundException.class, () -> todoService.getTodo(TodoList.DEFAULT_ID, created.getId()));
+    }
+
+    @Test
+    void create_rejectsMissingLists() throws Exception {
+        TodoLogStore store = openStore("missing-list");
+
+        assertThrows(DataIntegrityViolationException.class, () -> store.create("no-such-list", "Do 1", false));
+        store.close();
+    }
+
+    @Test
+    void open_recoversFromTheSnapshotAndTheLogAfterIt() throws Exception {
+        TodoLogStore store = openStore("recovery");
+        long first = store.create(TodoList.DEFAULT_ID, "Do 1", false).getCurrent().getId();
+        long second = store.create(TodoList.DEFAULT_ID, "Do 2", false).getCurrent().getId();
+
+        store.snapshot();
+        store.update(TodoList.DEFAULT_ID, first, "Do 1 now", true, null);
+        store.delete(TodoList.DEFAULT_ID, second);
+
+        long third = store.create(TodoList.DEFAULT_ID, "Do 3", false).getCurrent().getId();
+
+        // Reopening without closing is like recovering from a crash.
+        TodoLogStore recovered = openStore("recovery");
+        List<Todo> items = recovered.findByListId(TodoList.DEFAULT_ID);
+
+        assertEquals(2, items.size());
+        assertEquals(first, items.get(0).getId());
+        assertEquals("Do 1 now", items.get(0).getDescription());
+        assertEquals(1, items.get(0).getVersion());
+        assertEquals(third, items.get(1).getId());
+        assertTrue(recovered.create(TodoList.DEFAULT_ID, "Do 4", false).getCurrent().getId() > third);
+        recovered.close();
+    }
+
+    @Test
+    void open_truncatesAPartlyWrittenRecord() throws Exception {
+        TodoLogStore store = openStore("torn");
+        long first = store.create(TodoList.DEFAULT_ID, "Do 1", false).getCurrent().getId();
+
+        store.close();
+
+        // A record whose body doesn't match its checksum, right after the
+        // first one.
+        try (FileChannel log = FileChannel.open(
+                directory.resolve("torn").resolve("todo-0.log"), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(4);
+
+            log.read(header, 0);
+
+            ByteBuffer torn = ByteBuffer.allocate(8).putInt(40).putInt(12345);
+
+            torn.flip();
+            log.write(torn, 8 + header.getInt(0));
+        }
+
+        TodoLogStore recovered = openStore("torn");
+        long second = recovered.create(TodoList.DEFAULT_ID, "Do 2", false).getCurrent().getId();
+
+        recovered.close();
+
+        List<Todo> items = openStore("torn").findByListId(TodoList.DEFAULT_ID);
+
+        assertEquals(2, items.size());
+        assertEquals(first, items.get(0).getId());
+        assertEquals(second, items.get(1).getId());
+    }
+
+    @Test
+    void compact_keepsOnlyLiveItems() throws Exception {
+        TodoLogStore store = openStore("compaction");
+
+        for (int i = 0; i < 10; i++) {
+            long id = store.create(TodoList.DEFAULT_ID, "Do " + i, false).getCurrent().getId();
+
+            for (int version = 1; version <= 5; version++) {
+                store.update(TodoList.DEFAULT_ID, id, "Do " + i + " v" + version, null, null);
+            }
+            if (i % 3 == 0) {
+                store.delete(TodoList.DEFAULT_ID, id);
+            }
+        }
+
+        store.compact();
+
+        assertFalse(Files.exists(directory.resolve("compaction").resolve("todo-0.log")));
+        assertTrue(Files.exists(directory.resolve("compaction").resolve("todo-1.log")));
+
+        List<Todo> items = openStore("compaction").findByListId(TodoList.DEFAULT_ID);
+
+        assertEquals(6, items.size());
+        for (Todo item : items) {
+            assertTrue(item.getDescription().endsWith(" v5"));
+            assertEquals(5, item.getVersion());
+        }
+    }
+
+    @Test
+    void open_doesNotReuseIdsOfCompactedItemsWithoutASnapshot() throws Exception {
+        TodoLogStore store = openStore("lost-snapshot");
+        long first = store.create(TodoList.DEFAULT_ID, "Do 1", false).getCurrent().getId();
+        long second = store.create(TodoList.DEFAULT_ID, "Do 2", false).getCurrent().getId();
+
+        store.delete(TodoList.DEFAULT_ID, second);
+        store.compact();
+
+        // Crashing, and losing the snapshot, after the compaction.
+        Files.delete(directory.resolve("lost-snapshot").resolve("index.snapshot"));
+
+        TodoLogStore recovered = openStore("lost-snapshot");
+        List<Todo> items = recovered.findByListId(TodoList.DEFAULT_ID);
+
+        assertEquals(1, items.size());
+        assertEquals(first, items.get(0).getId());
+        assertTrue(recovered.create(TodoList.DEFAULT_ID, "Do 3", false).getCurrent().getId() > second);
+        recovered.close();
+    }
+
+    private TodoLogStore openStore(String name) throws Exception {
+        TodoProperties properties = new TodoProperties();
+
+        properties.getStorage().setDirectory(directory.resolve(name).toString());
+        properties.getStorage().setInitialSizeBytes(4096);
+
+        TodoLogStore store = new TodoLogStore(todoListRepository, properties);
+
+        store.open();
+
+        return store;
+    }
+}
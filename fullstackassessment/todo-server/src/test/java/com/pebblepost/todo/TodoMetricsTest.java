@@ -0,0 +1,38 @@
+package com.pebblepost.todo;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureMetrics
+class TodoMetricsTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void prometheus_exposesApiAndPersistenceMetrics() throws Exception {
+        mockMvc.perform(get("/todos/{id}", 123456))
+                .andExpect(status().isNotFound());
+
+        mockMvc.perform(get("/actuator/prometheus"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("http_server_requests_seconds_bucket")))
+                .andExpect(content().string(containsString("todo_service_seconds_count")))
+                .andExpect(content().string(containsString(
+                        "todo_not_found_total{class=\"TodoService\",method=\"getTodo\"")))
+                .andExpect(content().string(containsString("hibernate_statements_total")))
+                .andExpect(content().string(containsString("hikaricp_connections_active")))
+                .andExpect(content().string(containsString("cache_gets_total{cache=\"todos\"")));
+    }
+}
@@ -0,0 +1,210 @@
+package com.pebblepost.todo;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Slice;
+import org.springframework.test.annotation.DirtiesContext;
+
+import javassist.NotFoundException;
+
+@SpringBootTest(properties = {
+        "todo.storage.engine=off-heap",
+        "todo.storage.initial-capacity=64",
+        "spring.datasource.url=jdbc:h2:mem:off-heap-store-test" })
+class TodoOffHeapStoreTest {
+
+    @Autowired
+    private TodoService todoService;
+
+    @Autowired
+    private TodoRepository todoRepository;
+
+    @Autowired
+    private TodoListRepository todoListRepository;
+
+    @DirtiesContext
+    @Test
+    void todoService_storesItemsInMemory() throws Exception {
+        Todo created = todoService.createTodo(TodoList.DEFAULT_ID, new Todo("Do 1"));
+
+        todoService.updateTodo(TodoList.DEFAULT_ID, created.getId(), new Todo("Do 1 now", false));
+        todoService.patchTodo(TodoList.DEFAULT_ID, created.getId(), new TodoPatch(null, true, null));
+
+        Todo read = todoService.getTodo(TodoList.DEFAULT_ID, created.getId());
+
+        assertEquals("Do 1 now", read.getDescription());
+        assertTrue(read.getCompleted());
+        assertEquals(2, read.getVersion());
+        assertFalse(todoRepository.existsById(created.getId()));
+
+        todoService.deleteTodo(TodoList.DEFAULT_ID, created.getId());
+
+        assertThrows(NotFoundException.class, () -> todoService.getTodo(TodoList.DEFAULT_ID, created.getId()));
+    }
+
+    @DirtiesContext
+    @Test
+    void todoService_filtersStoredItemsByCompletion() throws Exception {
+        List<Long> completedIds = new ArrayList<Long>();
+
+        for (int i = 0; i < 10; i++) {
+            Todo created = todoService.createTodo(TodoList.DEFAULT_ID, new Todo("Do " + i, i % 3 == 0));
+
+            if (created.getCompleted()) {
+                completedIds.add(created.getId());
+            }
+        }
+
+        Slice<Todo> page1 = todoService.getTodosAfter(TodoList.DEFAULT_ID, true, 0, 3);
+        Slice<Todo> page2 = todoService.getTodosAfter(
+                TodoList.DEFAULT_ID, true, page1.getContent().get(2).getId(), 3);
+
+        assertEquals(completedIds.subList(0, 3), page1.stream().map(Todo::getId).toList());
+        assertTrue(page1.hasNext());
+        assertEquals(completedIds.subList(3, 4), page2.stream().map(Todo::getId).toList());
+        assertFalse(page2.hasNext());
+    }
+
+    @Test
+    void create_rejectsMissingLists() {
+        TodoOffHeapStore store = newStore();
+
+        assertThrows(DataIntegrityViolationException.class, () -> store.create("no-such-list", "Do 1", false));
+    }
+
+    @Test
+    void find_readsBackDescriptions() {
+        TodoOffHeapStore store = newStore();
+        String longest = "\u00e9".repeat(Todo.MAX_DESCRIPTION_LENGTH_CH);
+        long empty = store.create(TodoList.DEFAULT_ID, "", false).getCurrent().getId();
+        long missing = store.create(TodoList.DEFAULT_ID, null, false).getCurrent().getId();
+        long large = store.create(TodoList.DEFAULT_ID, longest, false).getCurrent().getId();
+
+        assertEquals("", store.find(TodoList.DEFAULT_ID, empty).get().getDescription());
+        assertNull(store.find(TodoList.DEFAULT_ID, missing).get().getDescription());
+        assertEquals(longest, store.find(TodoList.DEFAULT_ID, large).get().getDescription());
+        assertFalse(store.find("other-list", large).isPresent());
+    }
+
+    @Test
+    void update_keepsItemsFoundAfterTheStoreGrows() {
+        TodoOffHeapStore store = newStore();
+        List<Long> ids = new ArrayList<Long>();
+
+        for (int i = 0; i < 1000; i++) {
+            ids.add(store.create(TodoList.DEFAULT_ID, "Do " + i, false).getCurrent().getId());
+        }
+        for (int i = 0; i < ids.size(); i++) {
+            if (i % 2 == 0) {
+                store.delete(TodoList.DEFAULT_ID, ids.get(i));
+            } else {
+                store.update(TodoList.DEFAULT_ID, ids.get(i), "Do " + i + " longer than it was before", null, 0L);
+            }
+        }
+
+        List<Todo> items = store.findByListId(TodoList.DEFAULT_ID);
+
+        assertEquals(500, items.size());
+        for (int i = 0; i < items.size(); i++) {
+            assertEquals(ids.get(2 * i + 1), items.get(i).getId());
+            assertEquals("Do " + (2 * i + 1) + " longer than it was before", items.get(i).getDescription());
+            assertEquals(1, items.get(i).getVersion());
+        }
+    }
+
+    @Test
+    void update_rejectsStaleVersions() {
+        TodoOffHeapStore store = newStore();
+        long id = store.create(TodoList.DEFAULT_ID, "Do 1", false).getCurrent().getId();
+
+        store.update(TodoList.DEFAULT_ID, id, null, true, 0L);
+
+        assertThrows(
+                OptimisticLockingFailureException.class,
+                () -> store.update(TodoList.DEFAULT_ID, id, "Do 1 now", null, 0L));
+        assertEquals("Do 1", store.find(TodoList.DEFAULT_ID, id).get().getDescription());
+    }
+
+    @Test
+    void findAfter_pagesInIdOrder() {
+        TodoOffHeapStore store = newStore();
+        List<Long> ids = new ArrayList<Long>();
+
+        for (int i = 0; i < 5; i++) {
+            ids.add(store.create(TodoList.DEFAULT_ID, "Do " + i, false).getCurrent().getId());
+        }
+        store.delete(TodoList.DEFAULT_ID, ids.get(1));
+
+        Slice<Todo> first = store.findAfter(TodoList.DEFAULT_ID, 0, 2);
+        Slice<Todo> second = store.findAfter(TodoList.DEFAULT_ID, first.getContent().get(1).getId(), 2);
+
+        assertEquals(ids.get(0), first.getContent().get(0).getId());
+        assertEquals(ids.get(2), first.getContent().get(1).getId());
+        assertTrue(first.hasNext());
+        assertEquals(ids.get(3), second.getContent().get(0).getId());
+        assertEquals(ids.get(4), second.getContent().get(1).getId());
+        assertFalse(second.hasNext());
+    }
+
+    @Test
+    void countByListIdAndCompleted_countsActiveAndCompletedItems() {
+        TodoOffHeapStore store = newStore();
+
+        for (int i = 0; i < 200; i++) {
+            long id = store.create(TodoList.DEFAULT_ID, "Do " + i, i % 4 == 0).getCurrent().getId();
+
+            if (i % 5 == 0) {
+                store.delete(TodoList.DEFAULT_ID, id);
+            }
+        }
+
+        Map<String, long[]> counts = store.countByListIdAndCompleted();
+
+        assertArrayEquals(new long[] { 120, 40 }, counts.get(TodoList.DEFAULT_ID));
+    }
+
+    @Test
+    void countByListIdAndCompleted_followsUpdatesAndDropsEmptyLists() {
+        TodoOffHeapStore store = newStore();
+        long first = store.create(TodoList.DEFAULT_ID, "Do 1", false).getCurrent().getId();
+        long second = store.create(TodoList.DEFAULT_ID, "Do 2", false).getCurrent().getId();
+
+        store.update(TodoList.DEFAULT_ID, first, null, true, null);
+
+        assertArrayEquals(new long[] { 1, 1 }, store.countByListIdAndCompleted().get(TodoList.DEFAULT_ID));
+
+        store.delete(TodoList.DEFAULT_ID, first);
+        store.delete(TodoList.DEFAULT_ID, second);
+
+        assertTrue(store.countByListIdAndCompleted().isEmpty());
+        assertTrue(store.findByListId(TodoList.DEFAULT_ID).isEmpty());
+
+        long third = store.create(TodoList.DEFAULT_ID, "Do 3", true).getCurrent().getId();
+
+        assertArrayEquals(new long[] { 0, 1 }, store.countByListIdAndCompleted().get(TodoList.DEFAULT_ID));
+        assertEquals("Do 3", store.find(TodoList.DEFAULT_ID, third).get().getDescription());
+    }
+
+    private TodoOffHeapStore newStore() {
+        TodoProperties properties = new TodoProperties();
+
+        properties.getStorage().setInitialCapacity(64);
+        properties.getStorage().setArenaChunkBytes(4096);
+
+        return new TodoOffHeapStore(todoListRepository, properties);
+    }
+}
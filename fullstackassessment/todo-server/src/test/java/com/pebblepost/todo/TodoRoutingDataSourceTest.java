@@ -0,0 +1,258 @@
+package com.pebblepost.todo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.ServletWebRequest;
+
+class TodoRoutingDataSourceTest {
+
+    private static final AtomicInteger databaseCount = new AtomicInteger();
+
+    private final TestClock clock = new TestClock();
+
+    private final TodoProperties properties = new TodoProperties();
+
+    private DataSource primary;
+
+    private DataSource replica0;
+
+    private DataSource replica1;
+
+    private TodoRoutingDataSource routingDataSource;
+
+    private DataSource dataSource;
+
+    @BeforeEach
+    public void setup() {
+        String prefix = String.format("routing-%d", databaseCount.incrementAndGet());
+
+        primary = database(prefix, "primary");
+        replica0 = database(prefix, "replica0");
+        replica1 = database(prefix, "replica1");
+        properties.getReplicas().setMaxLagMs(500);
+        properties.getReplicas().setStickinessMs(5000);
+        routingDataSource = new TodoRoutingDataSource(
+                primary, Arrays.asList(replica0, replica1), properties, clock);
+        routingDataSource.afterPropertiesSet();
+        dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        for (DataSource database : Arrays.asList(primary, replica0, replica1)) {
+            new JdbcTemplate(database).execute("SHUTDOWN");
+        }
+    }
+
+    @Test
+    void reads_goToThePrimaryUntilReplicasHaveAHeartbeat() {
+        routingDataSource.checkReplicas();
+
+        assertEquals("primary", read(true));
+    }
+
+    @Test
+    void reads_goToThePrimaryUntilReplicasHaveAHeartbeatFromThisInstance() {
+        clock.millis = 1000;
+        routingDataSource.checkReplicas();
+        replicate(replica0);
+        replicate(replica1);
+
+        // A new instance finds the heartbeat the previous one left.
+        routingDataSource = new TodoRoutingDataSource(
+                primary, Arrays.asList(replica0, replica1), properties, clock);
+        routingDataSource.afterPropertiesSet();
+        dataSource = new LazyConnectionDataSourceProxy(routingDataSource);
+        clock.millis = 1100;
+        routingDataSource.checkReplicas();
+        clock.millis = 1200;
+        routingDataSource.checkReplicas();
+
+        assertEquals("primary", read(true));
+
+        replicate(replica0);
+        clock.millis = 1300;
+        routingDataSource.checkReplicas();
+
+        assertEquals("replica0", read(true));
+    }
+
+    @Test
+    void reads_areSpreadOverHealthyReplicas() {
+        makeReplicasHealthy();
+
+        assertEquals(new HashSet<String>(Arrays.asList("replica0", "replica1")), readTwice());
+        assertEquals("primary", read(false));
+    }
+
+    @Test
+    void reads_skipLaggingReplicas() {
+        makeReplicasHealthy();
+
+        clock.millis = 3000;
+        replicate(replica0);
+        routingDataSource.checkReplicas();
+
+        // replica1 is still at the heartbeat from 1000 ms, and the last check
+        // wrote one at 2000 ms.
+        assertEquals(new HashSet<String>(Arrays.asList("replica0")), readTwice());
+
+        new JdbcTemplate(replica0).execute("DROP TABLE todo_heartbeat");
+        routingDataSource.checkReplicas();
+
+        assertEquals("primary", read(true));
+    }
+
+    @Test
+    void reads_stayOnThePrimaryAfterAClientWrites() {
+        TodoReplicaStickiness stickiness = new TodoReplicaStickiness(properties);
+        MockHttpServletResponse writeResponse = new MockHttpServletResponse();
+        MockHttpServletRequest read = new MockHttpServletRequest("GET", "/todos");
+
+        makeReplicasHealthy();
+        stickiness.preHandle(new MockHttpServletRequest("POST", "/todos"), writeResponse, null);
+        assertEquals("primary", read(true));
+        stickiness.afterCompletion(null, null, null, null);
+
+        read.addHeader(
+                TodoReplicaStickiness.HEADER_NAME, writeResponse.getHeader(TodoReplicaStickiness.HEADER_NAME));
+        stickiness.preHandle(read, new MockHttpServletResponse(), null);
+        assertEquals("primary", read(true));
+        stickiness.afterCompletion(null, null, null, null);
+
+        MockHttpServletRequest staleRead = new MockHttpServletRequest("GET", "/todos");
+
+        staleRead.addHeader(TodoReplicaStickiness.HEADER_NAME, "0");
+        stickiness.preHandle(staleRead, new MockHttpServletResponse(), null);
+        assertEquals(2, readTwice().size());
+        stickiness.afterCompletion(null, null, null, null);
+    }
+
+    @Test
+    void reads_stayOnThePrimaryUntilAnAsyncRequestCompletes() throws Exception {
+        TodoReplicaStickiness stickiness = new TodoReplicaStickiness(properties);
+        MockHttpServletRequest read = new MockHttpServletRequest("GET", "/todos/stream");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        makeReplicasHealthy();
+        read.addHeader(TodoReplicaStickiness.HEADER_NAME, Long.toString(System.currentTimeMillis()));
+        stickiness.preHandle(read, response, null);
+        stickiness.afterConcurrentHandlingStarted(read, response, null);
+
+        // The response is produced on another thread.
+        Callable<String> task = () -> read(true);
+        String asyncRead = CompletableFuture.supplyAsync(() -> {
+            ServletWebRequest webRequest = new ServletWebRequest(read, response);
+
+            stickiness.preProcess(webRequest, task);
+            try {
+                return task.call();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            } finally {
+                stickiness.postProcess(webRequest, task, null);
+            }
+        }).get();
+
+        assertEquals("primary", asyncRead);
+
+        // The request is dispatched again once the response is done, even
+        // after the time in the header has gone by.
+        properties.getReplicas().setStickinessMs(0);
+        stickiness.preHandle(read, response, null);
+        assertEquals("primary", read(true));
+        stickiness.afterCompletion(read, response, null, null);
+        assertEquals(2, readTwice().size());
+    }
+
+    // Checks the replicas twice, with every heartbeat replicated.
+    private void makeReplicasHealthy() {
+        clock.millis = 1000;
+        routingDataSource.checkReplicas();
+        replicate(replica0);
+        replicate(replica1);
+        clock.millis = 2000;
+        routingDataSource.checkReplicas();
+    }
+
+    // Copies the primary's heartbeat, as replication would.
+    private void replicate(DataSource replica) {
+        Long beat = new JdbcTemplate(primary).queryForObject("SELECT beat FROM todo_heartbeat WHERE id = 1", Long.class);
+        JdbcTemplate replicaTemplate = new JdbcTemplate(replica);
+
+        replicaTemplate.execute("CREATE TABLE IF NOT EXISTS todo_heartbeat (id INT PRIMARY KEY, beat BIGINT NOT NULL)");
+        replicaTemplate.update("MERGE INTO todo_heartbeat (id, beat) KEY (id) VALUES (1, ?)", beat);
+    }
+
+    private Set<String> readTwice() {
+        return new HashSet<String>(Arrays.asList(read(true), read(true)));
+    }
+
+    // Returns the name of the database a transaction reads from.
+    private String read(boolean readOnly) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+
+        transactionTemplate.setReadOnly(readOnly);
+
+        return transactionTemplate.execute(
+                status -> new JdbcTemplate(dataSource).queryForObject("SELECT name FROM server", String.class));
+    }
+
+    private static DataSource database(String prefix, String name) {
+        DataSource database = new DriverManagerDataSource(
+                String.format("jdbc:h2:mem:%s-%s;DB_CLOSE_DELAY=-1", prefix, name), "sa", "");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+
+        jdbcTemplate.execute("CREATE TABLE server (name VARCHAR(16))");
+        jdbcTemplate.update("INSERT INTO server (name) VALUES (?)", name);
+
+        return database;
+    }
+
+    private static class TestClock extends Clock {
+        long millis;
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+    }
+}
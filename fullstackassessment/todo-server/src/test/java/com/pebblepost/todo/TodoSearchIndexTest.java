@@ -0,0 +1,107 @@
+package com.pebblepost.todo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+
+class TodoSearchIndexTest {
+
+    private final TodoSearchIndex searchIndex = new TodoSearchIndex(new TodoProperties());
+
+    @Test
+    void tokenize_splitsOnPunctuationAndLowerCases() {
+        assertEquals(
+                Arrays.asList("buy", "milk", "2", "liters", "caf\u00e9"),
+                TodoSearchIndex.tokenize("Buy MILK, 2 liters (Caf\u00c9)!"));
+    }
+
+    @Test
+    void search_matchesPrefixesOfEveryWord() {
+        List<Todo> items = Arrays.asList(
+                todo(1L, "Buy milk"),
+                todo(2L, "Buy bread"),
+                todo(3L, "Milkshake with friends"));
+
+        assertEquals(Arrays.asList(1L, 3L), search(items, "mil"));
+        assertEquals(Arrays.asList(1L), search(items, "bu mil"));
+        assertEquals(Collections.emptyList(), search(items, "buy cheese"));
+    }
+
+    @Test
+    void search_ranksWholeWordsAboveLongerWords() {
+        List<Todo> items = Arrays.asList(
+                todo(1L, "Milkshake"),
+                todo(2L, "Milk"));
+
+        assertEquals(Arrays.asList(2L, 1L), search(items, "milk"));
+    }
+
+    @Test
+    void search_matchesWordsLongerThanTheLongestPrefix() {
+        List<Todo> items = Arrays.asList(
+                todo(1L, "Internationalization"),
+                todo(2L, "Internationally"));
+
+        assertEquals(Arrays.asList(1L), search(items, "internationalizati"));
+    }
+
+    @Test
+    void search_followsChanges() {
+        List<Todo> items = Arrays.asList(todo(1L, "Buy milk"), todo(2L, "Buy bread"));
+
+        search(items, "buy");
+        searchIndex.onTodoChanged(TodoChangedEvent.created(todo(3L, "Buy eggs")));
+        searchIndex.onTodoChanged(TodoChangedEvent.updated(todo(1L, "Buy milk"), todo(1L, "Walk the dog")));
+        searchIndex.onTodoChanged(TodoChangedEvent.deleted(todo(2L, "Buy bread")));
+        searchIndex.onTodoPatched(new TodoPatchedEvent(TodoList.DEFAULT_ID, 3L, "Buy more eggs", null, null, 1L));
+
+        assertEquals(Arrays.asList(3L), search(items, "buy"));
+        assertEquals(Arrays.asList(3L), search(items, "more"));
+        assertEquals(Arrays.asList(1L), search(items, "dog"));
+    }
+
+    @Test
+    void search_pagesThroughMatches() {
+        List<Todo> items = Arrays.asList(todo(1L, "Do 1"), todo(2L, "Do 2"), todo(3L, "Do 3"));
+        TodoSearchIndex.Hits first = searchIndex.search(TodoList.DEFAULT_ID, "do", 0, 2, loaderOf(items));
+        TodoSearchIndex.Hits second = searchIndex.search(TodoList.DEFAULT_ID, "do", 2, 2, loaderOf(items));
+
+        assertEquals(Arrays.asList(1L, 2L), first.getIds());
+        assertTrue(first.hasMore());
+        assertEquals(Arrays.asList(3L), second.getIds());
+        assertFalse(second.hasMore());
+    }
+
+    private List<Long> search(List<Todo> items, String query) {
+        return searchIndex.search(TodoList.DEFAULT_ID, query, 0, 100, loaderOf(items)).getIds();
+    }
+
+    private static Consumer<TodoCursorRepository.RowHandler> loaderOf(List<Todo> items) {
+        return handler -> {
+            for (Todo item : items) {
+                try {
+                    handler.handle(item.getId(), item.getDescription(), item.getCompleted(), item.getVersion());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    private static Todo todo(Long id, String description) {
+        return Todo.builder()
+                .setId(id)
+                .setListId(TodoList.DEFAULT_ID)
+                .setDescription(description)
+                .build();
+    }
+}
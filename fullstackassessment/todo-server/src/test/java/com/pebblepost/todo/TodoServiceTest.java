@@ -1,35 +1,64 @@
 package com.pebblepost.todo;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import javax.validation.ConstraintViolationException;
 import javassist.NotFoundException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Slice;
+import org.springframework.jdbc.core.JdbcTemplate;
 
 @DataJpaTest
 class TodoServiceTest {
+    private static final String LIST_ID = TodoList.DEFAULT_ID;
+
     @Autowired
     private TodoRepository todoRepository;
 
+    @Autowired
+    private TodoListRepository todoListRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     private TodoService todoService;
 
     @BeforeEach
     public void setup() {
-        todoService = new TodoService(todoRepository);
+        todoListRepository.save(new TodoList(LIST_ID, ""));
+        todoService = new TodoService(
+                todoRepository,
+                new TodoCursorRepository(jdbcTemplate, new TodoProperties()),
+                eventPublisher,
+                Optional.empty(),
+                Optional.empty(),
+                new TodoSearchIndex(new TodoProperties()),
+                new TodoShardRouter(jdbcTemplate, new TodoProperties()));
     }
 
     @Test
     void createTodo_generatesAnId() {
-        Todo result = todoService.createTodo(new Todo("Do 1"));
+        Todo result = todoService.createTodo(LIST_ID, new Todo("Do 1"));
 
         assertNotNull(result.getId());
         assertEquals("Do 1", result.getDescription());
@@ -41,7 +70,7 @@ class TodoServiceTest {
         // Business requirements can clarify whether creating a to-do item
         // with an empty descriptions should be allowed. Since we don't
         // have access to clarify this at present, we allow such items.
-        Todo result = todoService.createTodo(new Todo("", true));
+        Todo result = todoService.createTodo(LIST_ID, new Todo("", true));
 
         assertNotNull(result.getId());
         assertEquals("", result.getDescription());
@@ -53,7 +82,7 @@ class TodoServiceTest {
      */
     @Test
     void createTodo_acceptsUnspecifiedDescription() {
-        Todo result = todoService.createTodo(new Todo());
+        Todo result = todoService.createTodo(LIST_ID, new Todo());
 
         assertNotNull(result.getId());
         assertEquals("", result.getDescription());
@@ -63,9 +92,9 @@ class TodoServiceTest {
     void createTodo_ignoresId() {
         // Try to create 2 to-do items with the same ID, and make sure we
         // get 2 items.
-        Todo result1 = todoService.createTodo(new Todo("Do 1"));
+        Todo result1 = todoService.createTodo(LIST_ID, new Todo("Do 1"));
         Long id1 = result1.getId();
-        Todo result2 = todoService.createTodo(Todo.builder()
+        Todo result2 = todoService.createTodo(LIST_ID, Todo.builder()
                 .setId(id1)
                 .setDescription("Do 2")
                 .setCompleted(true)
@@ -84,20 +113,20 @@ class TodoServiceTest {
     void createTodo_failsOnDescriptionBeyondMaxSize() {
         assertThrows(
                 ConstraintViolationException.class,
-                () -> todoService.createTodo(
+                () -> todoService.createTodo(LIST_ID,
                         new Todo("a".repeat(Todo.MAX_DESCRIPTION_LENGTH_CH + 1))));
     }
 
     @Test
     void getTodos_worksOnEmptyDataStore() {
-        assertTrue(todoService.getTodos().isEmpty());
+        assertTrue(todoService.getTodos(LIST_ID).isEmpty());
     }
 
     @Test
     void getTodos_returnsItems() {
-        todoService.createTodo(new Todo("Do 1"));
-        todoService.createTodo(new Todo("Do 2", true));
-        todoService.createTodo(new Todo("Do 3", false));
+        todoService.createTodo(LIST_ID, new Todo("Do 1"));
+        todoService.createTodo(LIST_ID, new Todo("Do 2", true));
+        todoService.createTodo(LIST_ID, new Todo("Do 3", false));
 
         Map<String, Todo> expectedItems = new HashMap<String, Todo>();
 
@@ -105,7 +134,7 @@ class TodoServiceTest {
         expectedItems.put("Do 2", new Todo("Do 2", true));
         expectedItems.put("Do 3", new Todo("Do 3", false));
 
-        for (Todo item : todoService.getTodos()) {
+        for (Todo item : todoService.getTodos(LIST_ID)) {
             Todo expectedItem = expectedItems.get(item.getDescription());
 
             if (expectedItem != null) {
@@ -126,12 +155,62 @@ class TodoServiceTest {
         }
     }
 
+    @Test
+    void getTodosAfter_returnsPagesInIdOrder() {
+        Todo todo1 = todoService.createTodo(LIST_ID, new Todo("Do 1"));
+        Todo todo2 = todoService.createTodo(LIST_ID, new Todo("Do 2", true));
+        Todo todo3 = todoService.createTodo(LIST_ID, new Todo("Do 3", false));
+
+        Slice<Todo> page1 = todoService.getTodosAfter(LIST_ID, 0, 2);
+        Slice<Todo> page2 = todoService.getTodosAfter(LIST_ID, todo2.getId(), 2);
+
+        assertEquals(List.of(todo1.getId(), todo2.getId()),
+                page1.stream().map(Todo::getId).toList());
+        assertTrue(page1.hasNext());
+        assertEquals(List.of(todo3.getId()),
+                page2.stream().map(Todo::getId).toList());
+        assertFalse(page2.hasNext());
+    }
+
+    @Test
+    void getTodosAfter_filtersByCompletion() {
+        Todo todo1 = todoService.createTodo(LIST_ID, new Todo("Do 1", true));
+        todoService.createTodo(LIST_ID, new Todo("Do 2", false));
+        Todo todo3 = todoService.createTodo(LIST_ID, new Todo("Do 3", true));
+        Todo todo4 = todoService.createTodo(LIST_ID, new Todo("Do 4", true));
+
+        Slice<Todo> page1 = todoService.getTodosAfter(LIST_ID, true, 0, 2);
+        Slice<Todo> page2 = todoService.getTodosAfter(LIST_ID, true, todo3.getId(), 2);
+
+        assertEquals(List.of(todo1.getId(), todo3.getId()),
+                page1.stream().map(Todo::getId).toList());
+        assertTrue(page1.hasNext());
+        assertEquals(List.of(todo4.getId()),
+                page2.stream().map(Todo::getId).toList());
+        assertFalse(page2.hasNext());
+    }
+
+    @Test
+    void streamTodos_passesEveryItemInIdOrder() {
+        Todo todo1 = todoService.createTodo(LIST_ID, new Todo("Do 1"));
+        Todo todo2 = todoService.createTodo(LIST_ID, new Todo("Do 2", true));
+        List<String> rows = new ArrayList<String>();
+
+        todoService.streamTodos(LIST_ID, (id, description, completed, version) -> rows.add(
+                String.format("%s %s %s %s", id, description, completed, version)));
+
+        assertEquals(
+                List.of(String.format("%s Do 1 false 0", todo1.getId()),
+                        String.format("%s Do 2 true 0", todo2.getId())),
+                rows);
+    }
+
     @Test
     void getTodo_returnsAnItem() throws Exception {
-        Todo testTodo = todoService.createTodo(new Todo("Do thing 1", true));
+        Todo testTodo = todoService.createTodo(LIST_ID, new Todo("Do thing 1", true));
         Long id = testTodo.getId();
 
-        Todo result = todoService.getTodo(id);
+        Todo result = todoService.getTodo(LIST_ID, id);
 
         assertNotNull(id);
         assertEquals("Do thing 1", result.getDescription());
@@ -140,60 +219,247 @@ class TodoServiceTest {
 
     @Test
     void getTodo_throwsOnNonExistentId() {
-        assertThrows(NotFoundException.class, () -> System.out.println(todoService.getTodo(1L)));
+        assertThrows(NotFoundException.class, () -> System.out.println(todoService.getTodo(LIST_ID, 1L)));
     }
 
     @Test
-    void updateTodo_createsAnEntityForNonExistentId() throws Exception {
-        Todo result = todoService.updateTodo(7L, new Todo("Do 1", true));
+    void getTodo_isScopedToItsList() throws Exception {
+        todoListRepository.save(new TodoList("other", "Other list"));
 
-        // The ID may change when creating a new entity:
-        assertNotNull(result.getId());
-        assertEquals("Do 1", result.getDescription());
-        assertEquals(true, result.getCompleted());
-        assertEquals(result, todoService.getTodo(result.getId()));
+        Todo otherTodo = todoService.createTodo("other", new Todo("Do 1"));
+        Long otherId = otherTodo.getId();
+
+        assertEquals(otherTodo, todoService.getTodo("other", otherId));
+        assertThrows(NotFoundException.class, () -> todoService.getTodo(LIST_ID, otherId));
+        assertThrows(NotFoundException.class, () -> todoService.deleteTodo(LIST_ID, otherId));
+        assertTrue(todoService.getTodos(LIST_ID).isEmpty());
+    }
+
+    @Test
+    void updateTodo_throwsOnNonExistentId() {
+        assertThrows(NotFoundException.class, () -> todoService.updateTodo(LIST_ID, 7L, new Todo("Do 1", true)));
+        assertTrue(todoService.getTodos(LIST_ID).isEmpty());
     }
 
     @Test
     void updateTodo_updatesDescription() throws Exception {
-        Todo initial = todoService.createTodo(new Todo("Do thing", false));
+        Todo initial = todoService.createTodo(LIST_ID, new Todo("Do thing", false));
         Long id = initial.getId();
 
-        Todo result = todoService.updateTodo(initial.getId(), new Todo("Do the other thing", false));
+        Todo result = todoService.updateTodo(LIST_ID, initial.getId(), new Todo("Do the other thing", false));
+        Todo stored = todoService.getTodo(LIST_ID, id);
 
         assertEquals(id, result.getId());
         assertEquals("Do the other thing", result.getDescription());
         assertEquals(false, result.getCompleted());
-        assertEquals(result, todoService.getTodo(id));
+        assertEquals("Do the other thing", stored.getDescription());
+        assertEquals(false, stored.getCompleted());
+        assertEquals(initial.getVersion() + 1, stored.getVersion());
     }
 
     @Test
     void updateTodo_updatesCompleted() throws Exception {
-        Todo initial = todoService.createTodo(new Todo("Do 1", false));
+        Todo initial = todoService.createTodo(LIST_ID, new Todo("Do 1", false));
         Long id = initial.getId();
 
-        Todo result = todoService.updateTodo(initial.getId(), new Todo("Do 2", true));
+        Todo result = todoService.updateTodo(LIST_ID, initial.getId(), new Todo("Do 2", true));
+        Todo stored = todoService.getTodo(LIST_ID, id);
 
         assertEquals(id, result.getId());
         assertEquals("Do 2", result.getDescription());
         assertEquals(true, result.getCompleted());
-        assertEquals(result, todoService.getTodo(id));
+        assertEquals("Do 2", stored.getDescription());
+        assertEquals(true, stored.getCompleted());
+        assertEquals(initial.getVersion() + 1, stored.getVersion());
+    }
+
+    @Test
+    void patchTodo_changesOnlyGivenFields() throws Exception {
+        Todo initial = todoService.createTodo(LIST_ID, new Todo("Do 1", false));
+        Long id = initial.getId();
+
+        todoService.patchTodo(LIST_ID, id, new TodoPatch(null, true, null));
+        todoService.patchTodo(LIST_ID, id, new TodoPatch("Do 2", null, null));
+
+        Todo result = todoRepository.findById(id).get();
+
+        assertEquals("Do 2", result.getDescription());
+        assertEquals(true, result.getCompleted());
+        assertEquals(initial.getVersion() + 2, result.getVersion());
+    }
+
+    @Test
+    void patchTodo_acceptsUnchangedCompleted() throws Exception {
+        Todo initial = todoService.createTodo(LIST_ID, new Todo("Do 1", true));
+
+        todoService.patchTodo(LIST_ID, initial.getId(), new TodoPatch("Do 2", true, initial.getVersion()));
+
+        Todo result = todoRepository.findById(initial.getId()).get();
+
+        assertEquals("Do 2", result.getDescription());
+        assertEquals(true, result.getCompleted());
+    }
+
+    @Test
+    void patchTodo_throwsOnStaleVersion() throws Exception {
+        Todo initial = todoService.createTodo(LIST_ID, new Todo("Do 1", false));
+        long staleVersion = initial.getVersion();
+
+        todoService.patchTodo(LIST_ID, initial.getId(), new TodoPatch(null, true, staleVersion));
+
+        assertThrows(
+                OptimisticLockingFailureException.class,
+                () -> todoService.patchTodo(LIST_ID, initial.getId(), new TodoPatch(null, false, staleVersion)));
+    }
+
+    @Test
+    void patchTodo_throwsOnNonExistentId() {
+        assertThrows(
+                NotFoundException.class,
+                () -> todoService.patchTodo(LIST_ID, 404L, new TodoPatch(null, true, null)));
+    }
+
+    @Test
+    void applyBatch_appliesMixedOperations() throws Exception {
+        Todo toUpdate = todoService.createTodo(LIST_ID, new Todo("Do 1", false));
+        Todo toDelete = todoService.createTodo(LIST_ID, new Todo("Do 2", false));
+
+        List<TodoBatchResult> results = todoService.applyBatch(LIST_ID, List.of(
+                new TodoBatchOperation(TodoBatchOperation.Type.CREATE, null, "Do 3", true),
+                new TodoBatchOperation(TodoBatchOperation.Type.UPDATE, toUpdate.getId(), "Do 1 again", true),
+                new TodoBatchOperation(TodoBatchOperation.Type.DELETE, toDelete.getId(), null, false)));
+
+        assertEquals(3, results.size());
+        assertEquals(201, results.get(0).getStatus());
+        assertEquals("Do 3", results.get(0).getItem().getDescription());
+        assertEquals(200, results.get(1).getStatus());
+        assertEquals(204, results.get(2).getStatus());
+
+        Todo created = todoService.getTodo(LIST_ID, results.get(0).getItem().getId());
+        Todo updated = todoService.getTodo(LIST_ID, toUpdate.getId());
+
+        assertEquals(true, created.getCompleted());
+        assertEquals("Do 1 again", updated.getDescription());
+        assertEquals(true, updated.getCompleted());
+        assertThrows(NotFoundException.class, () -> todoService.getTodo(LIST_ID, toDelete.getId()));
+    }
+
+    @Test
+    void applyBatch_failsOnItemsChangedWhileItRuns() {
+        Todo existing = todoService.createTodo(LIST_ID, new Todo("Do 1", false));
+        // Someone else changes the item after the batch loaded it.
+        TodoService racingService = new TodoService(
+                todoRepository,
+                new TodoCursorRepository(jdbcTemplate, new TodoProperties()),
+                event -> {
+                    if (event instanceof TodoChangedEvent
+                            && ((TodoChangedEvent) event).getType() == TodoChangedEvent.Type.UPDATED) {
+                        jdbcTemplate.update("UPDATE todo SET version = version + 1 WHERE id = ?", existing.getId());
+                    }
+                },
+                Optional.empty(),
+                Optional.empty(),
+                new TodoSearchIndex(new TodoProperties()),
+                new TodoShardRouter(jdbcTemplate, new TodoProperties()));
+
+        todoRepository.flush();
+
+        assertThrows(OptimisticLockingFailureException.class, () -> racingService.applyBatch(LIST_ID, List.of(
+                new TodoBatchOperation(TodoBatchOperation.Type.UPDATE, existing.getId(), "Do 2", true))));
+    }
+
+    @Test
+    void applyBatch_reportsMissingAndInvalidItems() {
+        Todo existing = todoService.createTodo(LIST_ID, new Todo("Do 1", false));
+
+        List<TodoBatchResult> results = todoService.applyBatch(LIST_ID, List.of(
+                new TodoBatchOperation(TodoBatchOperation.Type.UPDATE, 404L, "Do 2", true),
+                new TodoBatchOperation(TodoBatchOperation.Type.DELETE, 404L, null, false),
+                new TodoBatchOperation(TodoBatchOperation.Type.CREATE, null,
+                        "a".repeat(Todo.MAX_DESCRIPTION_LENGTH_CH + 1), false),
+                new TodoBatchOperation(TodoBatchOperation.Type.UPDATE, existing.getId(), "Do 3", true)));
+
+        assertEquals(404, results.get(0).getStatus());
+        assertEquals(404, results.get(1).getStatus());
+        assertEquals(400, results.get(2).getStatus());
+        assertEquals(200, results.get(3).getStatus());
+        assertEquals(1, todoService.getTodos(LIST_ID).size());
     }
 
     @Test
     void deleteTodo_throwsOnNonExistentId() {
-        assertThrows(NotFoundException.class, () -> todoService.deleteTodo(13L));
+        assertThrows(NotFoundException.class, () -> todoService.deleteTodo(LIST_ID, 13L));
     }
 
     @Test
     void deleteTodo_deletesAnItem() throws Exception {
-        Todo testTodo = todoService.createTodo(new Todo("The thing to do"));
+        Todo testTodo = todoService.createTodo(LIST_ID, new Todo("The thing to do"));
         Long id = testTodo.getId();
 
-        todoService.deleteTodo(id);
+        todoService.deleteTodo(LIST_ID, id);
 
         assertNotNull(id);
         assertEquals(id, testTodo.getId());
-        assertThrows(NotFoundException.class, () -> todoService.getTodo(id));
+        assertThrows(NotFoundException.class, () -> todoService.getTodo(LIST_ID, id));
+    }
+
+    @Test
+    void updateAndDelete_giveUpOnItemsThatKeepChanging() throws Exception {
+        Long id = todoService.createTodo(LIST_ID, new Todo("Do 1", false)).getId();
+        // Neither statement ever finds the item, as if it was toggled every
+        // time in between.
+        TodoRepository togglingRepository = (TodoRepository) Proxy.newProxyInstance(
+                TodoRepository.class.getClassLoader(),
+                new Class<?>[] { TodoRepository.class },
+                (proxy, method, args) -> {
+                    if (method.getName().equals("replaceReturningPreviousCompleted")
+                            || method.getName().equals("deleteReturningCompleted")) {
+                        return Optional.empty();
+                    }
+                    try {
+                        return method.invoke(todoRepository, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+        TodoService togglingService = new TodoService(
+                togglingRepository,
+                new TodoCursorRepository(jdbcTemplate, new TodoProperties()),
+                eventPublisher,
+                Optional.empty(),
+                Optional.empty(),
+                new TodoSearchIndex(new TodoProperties()),
+                new TodoShardRouter(jdbcTemplate, new TodoProperties()));
+
+        assertThrows(OptimisticLockingFailureException.class,
+                () -> togglingService.updateTodo(LIST_ID, id, new Todo("Do 2", true)));
+        assertThrows(OptimisticLockingFailureException.class, () -> togglingService.deleteTodo(LIST_ID, id));
+    }
+
+    @Test
+    void completeAll_completesOnlyActiveItems() throws Exception {
+        Todo active = todoService.createTodo(LIST_ID, new Todo("Do 1", false));
+        Todo completed = todoService.createTodo(LIST_ID, new Todo("Do 2", true));
+
+        assertEquals(1, todoService.completeAll(LIST_ID));
+
+        Todo read = todoService.getTodo(LIST_ID, active.getId());
+
+        assertTrue(read.getCompleted());
+        assertEquals(1, read.getVersion());
+        assertEquals(0, todoService.getTodo(LIST_ID, completed.getId()).getVersion());
+        assertEquals(0, todoService.completeAll(LIST_ID));
+    }
+
+    @Test
+    void deleteAll_deletesOnlyItemsWithTheGivenStatus() throws Exception {
+        Todo active = todoService.createTodo(LIST_ID, new Todo("Do 1", false));
+        Todo completed1 = todoService.createTodo(LIST_ID, new Todo("Do 2", true));
+        Todo completed2 = todoService.createTodo(LIST_ID, new Todo("Do 3", true));
+
+        assertEquals(2, todoService.deleteAll(LIST_ID, true));
+        assertThrows(NotFoundException.class, () -> todoService.getTodo(LIST_ID, completed1.getId()));
+        assertThrows(NotFoundException.class, () -> todoService.getTodo(LIST_ID, completed2.getId()));
+        assertEquals("Do 1", todoService.getTodo(LIST_ID, active.getId()).getDescription());
     }
 }
@@ -0,0 +1,47 @@
+package com.pebblepost.todo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+class TodoShardRingTest {
+
+    private static final int KEY_COUNT = 10000;
+
+    @Test
+    void shardFor_spreadsKeysEvenly() {
+        TodoShardRing ring = new TodoShardRing(4, 128);
+        int[] counts = new int[4];
+
+        for (int i = 0; i < KEY_COUNT; i++) {
+            counts[ring.shardFor(UUID.randomUUID().toString())]++;
+        }
+
+        for (int count : counts) {
+            assertTrue(count > KEY_COUNT / 4 * 0.8 && count < KEY_COUNT / 4 * 1.2,
+                    String.format("%d of %d keys on one shard", count, KEY_COUNT));
+        }
+    }
+
+    @Test
+    void shardFor_onlyMovesKeysToAddedShard() {
+        TodoShardRing before = new TodoShardRing(3, 128);
+        TodoShardRing after = new TodoShardRing(4, 128);
+        int moved = 0;
+
+        for (int i = 0; i < KEY_COUNT; i++) {
+            String key = UUID.randomUUID().toString();
+
+            if (before.shardFor(key) != after.shardFor(key)) {
+                assertEquals(3, after.shardFor(key));
+                moved++;
+            }
+        }
+
+        assertTrue(moved > KEY_COUNT / 4 * 0.8 && moved < KEY_COUNT / 4 * 1.2,
+                String.format("%d of %d keys moved", moved, KEY_COUNT));
+    }
+}
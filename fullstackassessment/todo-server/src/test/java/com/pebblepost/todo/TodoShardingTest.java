@@ -0,0 +1,126 @@
+package com.pebblepost.todo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javassist.NotFoundException;
+
+@SpringBootTest(properties = {
+        "todo.sharding.enabled=true",
+        "todo.sharding.shards[0].url=jdbc:h2:mem:sharding-test-0;DB_CLOSE_DELAY=-1",
+        "todo.sharding.shards[1].url=jdbc:h2:mem:sharding-test-1;DB_CLOSE_DELAY=-1",
+        "todo.sharding.shards[2].url=jdbc:h2:mem:sharding-test-2;DB_CLOSE_DELAY=-1",
+        "todo.sharding.previous-shard-count=2" })
+class TodoShardingTest {
+
+    @Autowired
+    private TodoService todoService;
+
+    @Autowired
+    private TodoListService todoListService;
+
+    @Autowired
+    private TodoShardRouter shardRouter;
+
+    @Autowired
+    private TodoShardRebalancer shardRebalancer;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @DirtiesContext
+    @Test
+    void createTodo_isStoredOnTheShardOwningTheList() throws NotFoundException {
+        TodoList list = todoListService.createList("Sharded");
+        int owner = shardRouter.ownerOf(list.getId());
+
+        Todo created = todoService.createTodo(list.getId(), new Todo("Do 1"));
+
+        assertEquals(owner, shardOfId(created.getId()));
+        assertEquals(1, countItems(owner, created.getId()));
+        assertEquals("Do 1", todoService.getTodo(list.getId(), created.getId()).getDescription());
+    }
+
+    @DirtiesContext
+    @Test
+    void rebalance_movesListsToAddedShards() throws NotFoundException {
+        String listId = movedListId();
+        TodoShardRing previousRing = new TodoShardRing(2, 128);
+        int previousOwner = previousRing.shardFor(listId);
+
+        // A list created before the third shard was added.
+        TodoShardRouter.runOnShard(previousOwner, () -> jdbcTemplate.update(
+                "INSERT INTO todo_list (id, name, change_horizon) VALUES (?, '', 0)", listId));
+
+        Todo created = todoService.createTodo(listId, new Todo("Do 1"));
+
+        assertEquals(previousOwner, shardOfId(created.getId()));
+        assertEquals(1, countItems(previousOwner, created.getId()));
+
+        // The default list may have to move too.
+        boolean defaultListMoves =
+                shardRouter.ownerOf(TodoList.DEFAULT_ID) != previousRing.shardFor(TodoList.DEFAULT_ID);
+
+        assertEquals(defaultListMoves ? 2 : 1, shardRebalancer.rebalance().getCount());
+
+        assertEquals(0, countItems(previousOwner, created.getId()));
+        assertEquals(1, countItems(2, created.getId()));
+        assertEquals(2, shardRouter.shardFor(listId));
+        assertEquals("Do 1", todoService.getTodo(listId, created.getId()).getDescription());
+    }
+
+    @DirtiesContext
+    @Test
+    void createTodo_failsOnTheShardAListMovedAwayFrom() throws NotFoundException {
+        String listId = movedListId();
+        int previousOwner = new TodoShardRing(2, 128).shardFor(listId);
+
+        // A list that has just been moved to the third shard.
+        TodoShardRouter.runOnShard(2, () -> jdbcTemplate.update(
+                "INSERT INTO todo_list (id, name, change_horizon) VALUES (?, '', 0)", listId));
+
+        // A write routed to the list's previous shard before the move.
+        assertThrows(TodoListMovedException.class, () -> TodoShardRouter.runOnShard(previousOwner,
+                () -> new TransactionTemplate(transactionManager).executeWithoutResult(
+                        status -> todoService.createTodo(listId, new Todo("Do 1")))));
+
+        Todo created = todoService.createTodo(listId, new Todo("Do 1"));
+
+        assertEquals(1, countItems(2, created.getId()));
+        assertEquals(0, countItems(previousOwner, created.getId()));
+    }
+
+    // Returns a list ID that moves to the added shard.
+    private String movedListId() {
+        while (true) {
+            String listId = UUID.randomUUID().toString();
+
+            if (shardRouter.ownerOf(listId) == 2) {
+                return listId;
+            }
+        }
+    }
+
+    // Items are numbered with the shard they're created on in their top bits.
+    private static int shardOfId(long id) {
+        return (int) (id >>> TodoShardRouter.LOCAL_ID_BITS);
+    }
+
+    private int countItems(int shard, Long id) {
+        return TodoShardRouter.callOnShard(shard, () -> jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM todo WHERE id = ?", Integer.class, id));
+    }
+}
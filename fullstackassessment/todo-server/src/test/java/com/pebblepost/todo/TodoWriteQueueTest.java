@@ -0,0 +1,113 @@
+package com.pebblepost.todo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Optional;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+
+// Other tests' contexts share the default in-memory database, whose tables
+// this context drops when it's closed.
+@SpringBootTest(properties = {
+        "todo.write.durability=group-commit",
+        "spring.datasource.url=jdbc:h2:mem:write-queue-test" })
+class TodoWriteQueueTest {
+
+    @Autowired
+    private TodoService todoService;
+
+    @Autowired
+    private TodoRepository todoRepository;
+
+    @Autowired
+    private TodoWriteQueue todoWriteQueue;
+
+    @DirtiesContext
+    @Test
+    void createTodo_isWrittenInTheBackground() throws Exception {
+        Todo created = todoService.createTodo(TodoList.DEFAULT_ID, new Todo("Do 1"));
+
+        Todo written = awaitWritten(created.getId());
+
+        assertEquals("Do 1", written.getDescription());
+        assertEquals(TodoList.DEFAULT_ID, written.getListId());
+    }
+
+    @DirtiesContext
+    @Test
+    void updateTodo_mergesUpdatesOfQueuedItems() throws Exception {
+        Todo created = todoService.createTodo(TodoList.DEFAULT_ID, new Todo("Do 1"));
+
+        todoService.updateTodo(TodoList.DEFAULT_ID, created.getId(), new Todo("Do 1 now", false));
+        todoService.updateTodo(TodoList.DEFAULT_ID, created.getId(), new Todo("Do 1 now", true));
+
+        Todo written = awaitWritten(created.getId());
+
+        assertEquals("Do 1 now", written.getDescription());
+        assertTrue(written.getCompleted());
+    }
+
+    @DirtiesContext
+    @Test
+    void updateTodo_writesTheVersionsItReturns() throws Exception {
+        Todo created = todoService.createTodo(TodoList.DEFAULT_ID, new Todo("Do 1"));
+
+        awaitWritten(created.getId());
+
+        // Both updates are merged into one write.
+        todoService.updateTodo(TodoList.DEFAULT_ID, created.getId(), new Todo("Do 1 now", false));
+        Todo updated = todoService.updateTodo(TodoList.DEFAULT_ID, created.getId(), new Todo("Do 1 now", true));
+
+        assertEquals(created.getVersion() + 2, updated.getVersion());
+        assertEquals(updated.getVersion(), awaitWritten(created.getId()).getVersion());
+
+        todoService.patchTodo(TodoList.DEFAULT_ID, created.getId(), new TodoPatch("Do 1", null, updated.getVersion()));
+
+        assertEquals("Do 1", awaitWritten(created.getId()).getDescription());
+    }
+
+    @DirtiesContext
+    @Test
+    void patchTodo_isAppliedAfterQueuedWrites() throws Exception {
+        Todo created = todoService.createTodo(TodoList.DEFAULT_ID, new Todo("Do 1"));
+
+        todoService.updateTodo(TodoList.DEFAULT_ID, created.getId(), new Todo("Do 1 now", false));
+        todoService.patchTodo(TodoList.DEFAULT_ID, created.getId(), new TodoPatch(null, true, null));
+
+        Todo written = awaitWritten(created.getId());
+
+        assertEquals("Do 1 now", written.getDescription());
+        assertTrue(written.getCompleted());
+    }
+
+    @DirtiesContext
+    @Test
+    void deleteTodo_isAppliedAfterQueuedWrites() throws Exception {
+        Todo created = todoService.createTodo(TodoList.DEFAULT_ID, new Todo("Do 1"));
+
+        todoService.deleteTodo(TodoList.DEFAULT_ID, created.getId());
+
+        assertFalse(todoWriteQueue.getPending(TodoList.DEFAULT_ID, created.getId()).isPresent());
+        assertFalse(todoRepository.findByListIdAndId(TodoList.DEFAULT_ID, created.getId()).isPresent());
+    }
+
+    private Todo awaitWritten(Long id) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (todoWriteQueue.getPending(TodoList.DEFAULT_ID, id).isPresent()
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        Optional<Todo> written = todoRepository.findByListIdAndId(TodoList.DEFAULT_ID, id);
+
+        assertTrue(written.isPresent());
+
+        return written.get();
+    }
+}